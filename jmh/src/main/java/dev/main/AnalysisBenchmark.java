@@ -0,0 +1,93 @@
+package dev.main;
+
+import java.awt.Rectangle;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Whole-map fills, find/replace and the analyses behind the overlays and exports
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AnalysisBenchmark {
+    
+    @Param({"256", "1024", "4096"})
+    public int size;
+    
+    private MapData data;
+    private TileMap map;
+    private long[] blocked;
+    private Rectangle all;
+    private int fillValue;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        data = SyntheticMaps.create(size, size, 3, 0.45, 42, TileStorage.Type.DENSE);
+        map = new TileMap(data);
+        blocked = data.combinedSolid();
+        all = new Rectangle(0, 0, size, size);
+    }
+    
+    @Benchmark
+    public TileMap fill() {
+        fillValue ^= 1;
+        map.fill(data.layers.get(2), all, fillValue);
+        return map;
+    }
+    
+    // Replaces and restores, so every invocation rewrites the same tiles
+    @Benchmark
+    public int replace() {
+        TileStorage[] storages = data.storages();
+        int mask = TileReplacer.allLayers(storages.length);
+        int there = TileReplacer.replace(storages, 1, 2, mask, all, false).total();
+        int back = TileReplacer.replace(storages, 2, 1, mask, all, false).total();
+        return there + back;
+    }
+    
+    @Benchmark
+    public long[] combinedSolid() {
+        return data.combinedSolid();
+    }
+    
+    @Benchmark
+    public Connectivity connectivity() {
+        Connectivity connectivity = new Connectivity(size, size);
+        connectivity.rebuild(blocked);
+        return connectivity;
+    }
+    
+    @Benchmark
+    public DistanceField distanceField() {
+        return DistanceField.compute(blocked, size, size);
+    }
+    
+    @Benchmark
+    public LayerStats statistics() {
+        return new LayerStats(data.layers.get(0).getStorage());
+    }
+    
+    @Benchmark
+    public List<Rectangle> collisionRectangles() {
+        return CollisionCompiler.rectangles(data.layers.get(0).getStorage());
+    }
+    
+    @Benchmark
+    public MapData snapshot() {
+        return map.snapshot();
+    }
+}
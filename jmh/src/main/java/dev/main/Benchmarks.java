@@ -0,0 +1,24 @@
+package dev.main;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Entry point of benchmarks.jar: plain JMH, except that results go to
+// jmh-result.json as JSON unless -rf / -rff say otherwise, so runs from different
+// releases can be compared by tools
+public class Benchmarks {
+    
+    public static void main(String[] args) throws Exception {
+        List<String> options = new ArrayList<>(Arrays.asList(args));
+        if (!options.contains("-rf")) {
+            options.add("-rf");
+            options.add("json");
+        }
+        if (!options.contains("-rff")) {
+            options.add("-rff");
+            options.add("jmh-result.json");
+        }
+        org.openjdk.jmh.Main.main(options.toArray(new String[0]));
+    }
+}
@@ -0,0 +1,161 @@
+package dev.main;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// Brush strokes through the TileMap model the way the editor applies them: one
+// transaction per frame of samples, an undo entry holding the old values, and a
+// listener that sees one ChangeSet per transaction
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EditBenchmark {
+    private static final int STROKE_TILES = 256;
+    private static final int SAMPLES_PER_FRAME = 8;
+    
+    @Param({"256", "2048"})
+    public int size;
+    
+    private TileMap map;
+    private MapLayer layer;
+    private int value;
+    
+    @Setup(Level.Trial)
+    public void setUp(Blackhole blackhole) {
+        MapData data = SyntheticMaps.create(size, size, 3, 0.45, 42, TileStorage.Type.DENSE);
+        map = new TileMap(data);
+        layer = data.layers.get(1);
+        map.addListener(blackhole::consume);
+    }
+    
+    // One stroke of STROKE_TILES tiles across the map, recorded for undo
+    private Stroke paint() {
+        Stroke stroke = new Stroke();
+        value ^= 1;
+        int step = Math.max(1, (size - 1) / STROKE_TILES);
+        for (int frame = 0; frame < STROKE_TILES; frame += SAMPLES_PER_FRAME) {
+            map.begin();
+            for (int i = frame; i < frame + SAMPLES_PER_FRAME; i++) {
+                int row = i * step % size, col = (i * step + i) % size;
+                stroke.add(row, col, map.set(layer, row, col, value));
+            }
+            map.end();
+        }
+        map.push(stroke);
+        return stroke;
+    }
+    
+    private class Stroke implements TileMap.Edit {
+        final int[] tiles = new int[STROKE_TILES * 3];
+        int length;
+        
+        void add(int row, int col, int oldValue) {
+            tiles[length++] = row;
+            tiles[length++] = col;
+            tiles[length++] = oldValue;
+        }
+        
+        @Override
+        public void undo() {
+            for (int i = length - 3; i >= 0; i -= 3) {
+                map.set(layer, tiles[i], tiles[i + 1], tiles[i + 2]);
+            }
+        }
+    }
+    
+    @Benchmark
+    public Stroke brushStroke() {
+        Stroke stroke = paint();
+        map.clearHistory();
+        return stroke;
+    }
+    
+    @Benchmark
+    public boolean strokeAndUndo() {
+        paint();
+        return map.undo();
+    }
+    
+    @Benchmark
+    public int singleTile() {
+        value ^= 1;
+        return map.set(layer, size / 2, size / 2, value);
+    }
+    
+    // A mouse drag painted through PaintStroke, with the derived data the editor
+    // maintains on every transaction: statistics, solid grids and connectivity
+    @State(Scope.Thread)
+    public static class Drag {
+        private static final double TILE_PIXELS = 16;
+        
+        @Param({"256", "2048"})
+        public int size;
+        
+        private TileMap map;
+        private MapLayer layer;
+        private int value;
+        private final int[] samples = new int[STROKE_TILES * 2 * 2]; // two samples per tile
+        
+        @Setup(Level.Trial)
+        public void setUp() {
+            MapData data = SyntheticMaps.create(size, size, 3, 0.45, 42, TileStorage.Type.DENSE);
+            map = new TileMap(data);
+            layer = data.layers.get(1);
+            DerivedData derived = new DerivedData(map, () -> { });
+            for (MapLayer mapLayer : data.layers) {
+                derived.stats(mapLayer);
+                derived.solidGrid(mapLayer);
+            }
+            derived.trackConnectivity(true);
+            map.addListener(derived::mapChanged);
+            
+            // A diagonal drag through the middle, in map pixels
+            double start = (size - STROKE_TILES / 2) / 2 * TILE_PIXELS;
+            for (int i = 0; i < samples.length / 2; i++) {
+                samples[i * 2] = (int) (start + i * TILE_PIXELS / 2);
+                samples[i * 2 + 1] = (int) (start + i * TILE_PIXELS / 4);
+            }
+        }
+        
+        // Applies the samples perFrame at a time, one transaction each
+        PaintStroke drag(int perFrame) {
+            value ^= 1;
+            PaintStroke stroke = new PaintStroke(map, layer, value);
+            int[] frame = new int[perFrame * 2];
+            for (int first = 0; first < samples.length / 2; first += perFrame) {
+                int count = Math.min(perFrame, samples.length / 2 - first);
+                System.arraycopy(samples, first * 2, frame, 0, count * 2);
+                stroke.apply(frame, count, TILE_PIXELS);
+            }
+            map.clearHistory();
+            return stroke;
+        }
+    }
+    
+    // Every mouse sample applied as it arrives: one transaction per sample
+    @Benchmark
+    public PaintStroke dragPerSample(Drag drag) {
+        return drag.drag(1);
+    }
+    
+    // The samples of a frame applied together, as the editor does
+    @Benchmark
+    public PaintStroke dragCoalesced(Drag drag) {
+        return drag.drag(SAMPLES_PER_FRAME);
+    }
+}
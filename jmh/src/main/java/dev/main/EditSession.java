@@ -0,0 +1,127 @@
+package dev.main;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// A recorded edit session for ReplayHarness, one operation per line:
+//   stroke <layer> <value> <row> <col> [<row> <col> ...]   tiles in painting order
+//   fill <layer> <col> <row> <width> <height> <value>
+//   replace <from> <to>                                  whole map, all layers
+//   undo <count>
+//   render <col> <row> <width> <height> <tilePixels>     view in tiles; tilePixels may be fractional
+// Blank lines and lines starting with '#' are ignored.
+final class EditSession {
+    
+    static final class Op {
+        final String name;
+        final double[] args;
+        
+        Op(String name, double... args) {
+            this.name = name;
+            this.args = args;
+        }
+        
+        int arg(int index) {
+            return (int) args[index];
+        }
+        
+        @Override
+        public String toString() {
+            StringBuilder line = new StringBuilder(name);
+            for (double arg : args) {
+                line.append(' ');
+                if (arg == Math.rint(arg)) line.append((long) arg);
+                else line.append(arg);
+            }
+            return line.toString();
+        }
+    }
+    
+    final List<Op> ops;
+    
+    EditSession(List<Op> ops) {
+        this.ops = ops;
+    }
+    
+    static EditSession read(Path file) throws IOException {
+        List<Op> ops = new ArrayList<>();
+        int number = 0;
+        for (String line : Files.readAllLines(file)) {
+            number++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            String[] tokens = line.split("\\s+");
+            try {
+                double[] args = new double[tokens.length - 1];
+                for (int i = 1; i < tokens.length; i++) {
+                    args[i - 1] = Double.parseDouble(tokens[i]);
+                }
+                ops.add(new Op(tokens[0], args));
+            } catch (NumberFormatException e) {
+                throw new IOException(file + ":" + number + ": bad number in '" + line + "'");
+            }
+        }
+        return new EditSession(ops);
+    }
+    
+    void write(Path file) throws IOException {
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(file))) {
+            for (Op op : ops) {
+                writer.println(op);
+            }
+        }
+    }
+    
+    // A session like a user's: mostly strokes, some fills, undos and view changes, the
+    // odd find/replace. Replaces swap values 1 and 2 when every layer holds 2 (maxValue),
+    // otherwise they clear 1 to 0 and undo it. The same arguments always give the same session.
+    static EditSession generate(int width, int height, int layers, int maxValue, int count, long seed) {
+        Random random = new Random(seed);
+        List<Op> ops = new ArrayList<>();
+        double[] zooms = {64, 16, 2, 0.5};
+        while (ops.size() < count) {
+            int kind = random.nextInt(100);
+            if (kind < 60) {
+                // Random walk with 8-neighbour steps, as a drag would sample it
+                int length = 16 + random.nextInt(80);
+                double[] args = new double[2 + length * 2];
+                args[0] = random.nextInt(layers);
+                args[1] = random.nextInt(2);
+                int row = random.nextInt(height), col = random.nextInt(width);
+                for (int i = 0; i < length; i++) {
+                    row = Math.max(0, Math.min(height - 1, row + random.nextInt(3) - 1));
+                    col = Math.max(0, Math.min(width - 1, col + random.nextInt(3) - 1));
+                    args[2 + i * 2] = row;
+                    args[3 + i * 2] = col;
+                }
+                ops.add(new Op("stroke", args));
+            } else if (kind < 75) {
+                int w = 1 + random.nextInt(Math.min(64, width)), h = 1 + random.nextInt(Math.min(64, height));
+                ops.add(new Op("fill", random.nextInt(layers), random.nextInt(width - w + 1),
+                    random.nextInt(height - h + 1), w, h, random.nextInt(2)));
+            } else if (kind < 77) {
+                if (maxValue >= 2) {
+                    ops.add(new Op("replace", 1, 2));
+                    ops.add(new Op("replace", 2, 1));
+                } else {
+                    ops.add(new Op("replace", 1, 0));
+                    ops.add(new Op("undo", 1));
+                }
+            } else if (kind < 87) {
+                ops.add(new Op("undo", 1 + random.nextInt(3)));
+            } else {
+                double tilePixels = zooms[random.nextInt(zooms.length)];
+                int w = Math.min(width, (int) Math.ceil(1280 / tilePixels));
+                int h = Math.min(height, (int) Math.ceil(800 / tilePixels));
+                ops.add(new Op("render", random.nextInt(width - w + 1), random.nextInt(height - h + 1), w, h,
+                    tilePixels));
+            }
+        }
+        return new EditSession(new ArrayList<>(ops.subList(0, count)));
+    }
+}
@@ -0,0 +1,76 @@
+package dev.main;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// TXT and JSON save and load of the three-layer benchmark map
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MapFilesBenchmark {
+    
+    @Param({"64", "256", "1024"})
+    public int size;
+    
+    private MapData map;
+    private File dir, txt, json, out;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        map = SyntheticMaps.create(size, size, 3, 0.45, 42, TileStorage.Type.DENSE);
+        dir = Files.createTempDirectory("tilemap-bench").toFile();
+        txt = new File(dir, "map.txt");
+        json = new File(dir, "map.json");
+        out = new File(dir, "out");
+        MapFiles.writeTxt(map, txt);
+        MapFiles.writeJson(map, json);
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+    
+    @Benchmark
+    public File saveTxt() throws IOException {
+        MapFiles.writeTxt(map, out);
+        return out;
+    }
+    
+    @Benchmark
+    public File saveJson() throws IOException {
+        MapFiles.writeJson(map, out);
+        return out;
+    }
+    
+    @Benchmark
+    public MapData loadTxt() throws IOException {
+        return MapFiles.readTxt(txt);
+    }
+    
+    @Benchmark
+    public MapData loadJson() throws IOException {
+        return MapFiles.readJson(json);
+    }
+}
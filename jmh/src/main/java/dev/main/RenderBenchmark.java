@@ -0,0 +1,199 @@
+package dev.main;
+
+import java.awt.Color;
+import java.awt.EventQueue;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Headless painting into an off-screen image. MapPanel and MiniMapPanel live inside
+// the editor frame, which cannot be created without a display, but both paint
+// through MapRenderer, so this measures what they draw: the 1280 x 800 map view
+// centred on the map (tiles with and without overlays, or chunk pictures when
+// zoomed out) and the minimap, plus the grid and chunk rasterizing on their own.
+// Views drawn from chunks are measured once every chunk under them has landed.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RenderBenchmark {
+    private static final int TILE_SIZE = 64;
+    
+    @Param({"1024", "4096"})
+    public int size;
+    
+    private MapData data;
+    private BufferedImage view;
+    private Graphics2D g;
+    private GridRenderer grid;
+    private TileMap map;
+    private DerivedData derived;
+    private MapRenderer renderer;
+    private final MapRenderer.View mapView = new MapRenderer.View();
+    private final Semaphore landings = new Semaphore(0);
+    
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        data = SyntheticMaps.create(size, size, 3, 0.45, 42, TileStorage.Type.DENSE);
+        view = new BufferedImage(1280, 800, BufferedImage.TYPE_INT_RGB);
+        g = view.createGraphics();
+        grid = new GridRenderer();
+        grid.setSpacing(1, 8);
+        EventQueue.invokeAndWait(() -> {
+            map = new TileMap(data);
+            derived = new DerivedData(map, landings::release);
+            renderer = new MapRenderer(map, derived);
+            renderer.grid().setSpacing(1, 8);
+        });
+        settle(() -> paintMap(2, false));
+        settle(this::paintMiniMap);
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        EventQueue.invokeAndWait(derived::dispose);
+        g.dispose();
+    }
+    
+    // Paints again after each landing until no chunk under the view is missing
+    private void settle(Runnable paint) throws Exception {
+        while (true) {
+            EventQueue.invokeAndWait(paint);
+            if (renderer.chunksMissing() == 0) break;
+            landings.acquire();
+        }
+    }
+    
+    // The view centred on the map at tilePixels, in panel pixels like MapPanel
+    private void paintMap(double tilePixels, boolean overlays) {
+        mapView.zoom = tilePixels / TILE_SIZE;
+        mapView.showAutoTiles = overlays;
+        derived.trackConnectivity(overlays);
+        int x = (int) Math.max(0, (size * tilePixels - view.getWidth()) / 2);
+        int y = (int) Math.max(0, (size * tilePixels - view.getHeight()) / 2);
+        Graphics2D panel = (Graphics2D) g.create();
+        panel.setColor(Color.WHITE);
+        panel.fillRect(0, 0, view.getWidth(), view.getHeight());
+        panel.translate(-x, -y);
+        panel.clipRect(x, y, view.getWidth(), view.getHeight());
+        renderer.paintMap(panel, mapView);
+        panel.dispose();
+    }
+    
+    private void paintMiniMap() {
+        Graphics2D panel = (Graphics2D) g.create();
+        panel.setColor(Color.WHITE);
+        panel.fillRect(0, 0, 210, 210);
+        panel.translate(5, 5);
+        renderer.paintMiniMap(panel, mapView, 200);
+        panel.dispose();
+    }
+    
+    @Benchmark
+    public BufferedImage mapAt16Pixels() throws Exception {
+        EventQueue.invokeAndWait(() -> paintMap(16, false));
+        return view;
+    }
+    
+    // Auto-tile outlines and isolated areas over the tiles
+    @Benchmark
+    public BufferedImage mapOverlaysAt16Pixels() throws Exception {
+        EventQueue.invokeAndWait(() -> paintMap(16, true));
+        return view;
+    }
+    
+    // Zoomed out far enough to draw from chunk pictures
+    @Benchmark
+    public BufferedImage mapAt2Pixels() throws Exception {
+        EventQueue.invokeAndWait(() -> paintMap(2, false));
+        return view;
+    }
+    
+    @Benchmark
+    public BufferedImage miniMap() throws Exception {
+        EventQueue.invokeAndWait(this::paintMiniMap);
+        return view;
+    }
+    
+    private BufferedImage paintGrid(double tilePixels) {
+        Graphics2D scaled = (Graphics2D) g.create();
+        double zoom = tilePixels / TILE_SIZE;
+        scaled.scale(zoom, zoom);
+        Rectangle area = new Rectangle(0, 0, (int) Math.ceil(view.getWidth() / zoom),
+            (int) Math.ceil(view.getHeight() / zoom));
+        grid.paint(scaled, area, TILE_SIZE, tilePixels);
+        scaled.dispose();
+        return view;
+    }
+    
+    @Benchmark
+    public BufferedImage gridAt16Pixels() {
+        return paintGrid(16);
+    }
+    
+    @Benchmark
+    public BufferedImage gridAt64Pixels() {
+        return paintGrid(64);
+    }
+    
+    // Every chunk of the level the minimap draws (the whole map in one chunk),
+    // from request until the last one landed and was drawn
+    @Benchmark
+    public BufferedImage minimapChunks() throws Exception {
+        return rasterizeLevel(-1);
+    }
+    
+    // Every chunk of the level a 1/8 zoom view draws
+    @Benchmark
+    public BufferedImage zoomedOutChunks() throws Exception {
+        return rasterizeLevel(3);
+    }
+    
+    // Chunk bookkeeping is EDT-only, as in the editor; the benchmark thread waits
+    private BufferedImage rasterizeLevel(int requestedLevel) throws InterruptedException, InvocationTargetException {
+        MapLayer layer = data.layers.get(0);
+        CountDownLatch[] landed = new CountDownLatch[1];
+        ChunkRasterizer rasterizer = new ChunkRasterizer(map, layer, layer.getSolidColor(),
+            layer.getColor(), () -> landed[0].countDown(), new ChunkRasterizer.Budget(Integer.MAX_VALUE));
+        int level = requestedLevel < 0 ? rasterizer.maxLevel() : Math.min(requestedLevel, rasterizer.maxLevel());
+        int chunks = (size + ChunkRasterizer.chunkTiles(level) - 1) / ChunkRasterizer.chunkTiles(level);
+        landed[0] = new CountDownLatch(chunks * chunks);
+        EventQueue.invokeAndWait(() -> {
+            for (int cy = 0; cy < chunks; cy++) {
+                for (int cx = 0; cx < chunks; cx++) {
+                    rasterizer.chunk(level, cx, cy);
+                }
+            }
+        });
+        landed[0].await();
+        EventQueue.invokeAndWait(() -> {
+            for (int cy = 0; cy < chunks; cy++) {
+                for (int cx = 0; cx < chunks; cx++) {
+                    g.drawImage(rasterizer.chunk(level, cx, cy), cx * ChunkRasterizer.CHUNK_PIXELS,
+                        cy * ChunkRasterizer.CHUNK_PIXELS, null);
+                }
+            }
+            rasterizer.dispose();
+        });
+        return view;
+    }
+}
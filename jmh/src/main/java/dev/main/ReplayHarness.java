@@ -0,0 +1,334 @@
+package dev.main;
+
+import java.awt.Color;
+import java.awt.EventQueue;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.Semaphore;
+
+// Replays an edit session headlessly against the TileMap model, the editor's
+// DerivedData (statistics, solid grids, chunk pictures, connectivity) and its
+// renderers, and reports p50 / p99 latency per operation. Model operations run on
+// the EDT as in the editor; a render includes waiting for its chunks. With
+// --thresholds it is a regression gate: any "<op>.p50" / "<op>.p99" limit
+// (milliseconds) that is exceeded fails the run with exit code 1. Bad arguments
+// exit with 2 and a run that breaks down (unreadable map, failing operation) with 3.
+//
+//   ReplayHarness [--map file | --size N --layers L --density D --storage type]
+//                 [--session file | --ops N] [--seed S] [--save-session file]
+//                 [--thresholds file] [--out result.json]
+public class ReplayHarness {
+    private static final int SAMPLES_PER_FRAME = 8; // stroke tiles applied per frame, as in the editor
+    private static final int VIEW_WIDTH = 1280, VIEW_HEIGHT = 800;
+    
+    private final TileMap map;
+    private final DerivedData derived;
+    private final MapRenderer renderer;
+    private final MapRenderer.View mapView = new MapRenderer.View();
+    private final BufferedImage view = new BufferedImage(VIEW_WIDTH, VIEW_HEIGHT, BufferedImage.TYPE_INT_RGB);
+    private final Semaphore landings = new Semaphore(0);
+    private final Map<String, List<Long>> latencies = new TreeMap<>(); // nanoseconds
+    
+    // Call on the EDT. Everything the editor can keep derived is built up front, so
+    // every edit pays for maintaining all of it
+    private ReplayHarness(MapData data) {
+        map = new TileMap(data);
+        derived = new DerivedData(map, landings::release);
+        derived.autoTiler();
+        for (MapLayer layer : data.layers) {
+            derived.stats(layer);
+            derived.solidGrid(layer);
+            derived.rasterizer(layer);
+        }
+        derived.trackConnectivity(true);
+        map.addListener(derived::mapChanged);
+        renderer = new MapRenderer(map, derived);
+    }
+    
+    private void record(String op, long nanos) {
+        latencies.computeIfAbsent(op, k -> new ArrayList<>()).add(nanos);
+    }
+    
+    // Runs work on the EDT and records how long it took there
+    private void timed(String op, Runnable work) throws Exception {
+        EventQueue.invokeAndWait(() -> {
+            long start = System.nanoTime();
+            work.run();
+            record(op, System.nanoTime() - start);
+        });
+    }
+    
+    private void replay(EditSession session) throws Exception {
+        for (EditSession.Op op : session.ops) {
+            switch (op.name) {
+                case "stroke":
+                    stroke(op);
+                    break;
+                case "fill":
+                    fill(op);
+                    break;
+                case "replace":
+                    replace(op.arg(0), op.arg(1));
+                    break;
+                case "undo":
+                    for (int i = 0; i < op.arg(0); i++) {
+                        timed("undo", map::undo);
+                    }
+                    break;
+                case "render":
+                    render(new Rectangle(op.arg(0), op.arg(1), op.arg(2), op.arg(3)), op.args[4]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown operation: " + op.name);
+            }
+        }
+    }
+    
+    // One frame per SAMPLES_PER_FRAME tiles, one undo entry for the stroke
+    private void stroke(EditSession.Op op) throws Exception {
+        MapLayer layer = map.getLayers().get(op.arg(0));
+        int value = op.arg(1);
+        int tiles = (op.args.length - 2) / 2;
+        int[] undo = new int[tiles * 3];
+        int[] size = new int[1];
+        EventQueue.invokeAndWait(() -> map.push(() -> {
+            for (int i = size[0] - 3; i >= 0; i -= 3) {
+                map.set(layer, undo[i], undo[i + 1], undo[i + 2]);
+            }
+        }));
+        for (int frame = 0; frame < tiles; frame += SAMPLES_PER_FRAME) {
+            int first = frame;
+            timed("stroke", () -> map.transaction(() -> {
+                for (int i = first; i < Math.min(tiles, first + SAMPLES_PER_FRAME); i++) {
+                    int row = op.arg(2 + i * 2), col = op.arg(3 + i * 2);
+                    int oldValue = map.set(layer, row, col, value);
+                    if (oldValue == value) continue;
+                    undo[size[0]++] = row;
+                    undo[size[0]++] = col;
+                    undo[size[0]++] = oldValue;
+                }
+            }));
+        }
+    }
+    
+    private void fill(EditSession.Op op) throws Exception {
+        MapLayer layer = map.getLayers().get(op.arg(0));
+        Rectangle region = new Rectangle(op.arg(1), op.arg(2), op.arg(3), op.arg(4));
+        timed("fill", () -> {
+            int[] oldValues = new int[region.width * region.height];
+            map.readRegion(layer, region, oldValues);
+            map.push(() -> map.writeRegion(layer, region, oldValues));
+            map.fill(layer, region, op.arg(5));
+        });
+    }
+    
+    private void replace(int from, int to) throws Exception {
+        timed("replace", () -> {
+            TileStorage[] storages = map.toMapData().storages();
+            Rectangle all = new Rectangle(0, 0, map.getWidth(), map.getHeight());
+            TileReplacer.Result[] counted = new TileReplacer.Result[1];
+            map.write(all, () -> counted[0] = TileReplacer.replace(storages, from, to,
+                TileReplacer.allLayers(storages.length), all, true));
+            TileReplacer.Result result = counted[0];
+            map.push(() -> {
+                map.write(all, () -> TileReplacer.revert(storages, result, from));
+                map.transaction(() -> map.getLayers().forEach(layer -> map.regionChanged(layer, all)));
+            });
+            map.transaction(() -> map.getLayers().forEach(layer -> map.regionChanged(layer, all)));
+        });
+    }
+    
+    // Paints the view through the editor's renderer; zoomed far out, until every
+    // chunk under it has landed
+    private void render(Rectangle tiles, double tilePixels) throws Exception {
+        long start = System.nanoTime();
+        landings.drainPermits();
+        while (true) {
+            EventQueue.invokeAndWait(() -> paint(tiles, tilePixels));
+            if (renderer.chunksMissing() == 0) break;
+            landings.acquire();
+        }
+        record("render", System.nanoTime() - start);
+    }
+    
+    // The tiles at tilePixels, in panel pixels like MapPanel
+    private void paint(Rectangle tiles, double tilePixels) {
+        mapView.zoom = tilePixels / MapRenderer.TILE_SIZE;
+        int x = (int) Math.floor(tiles.x * tilePixels);
+        int y = (int) Math.floor(tiles.y * tilePixels);
+        Graphics2D g = view.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, VIEW_WIDTH, VIEW_HEIGHT);
+        g.translate(-x, -y);
+        g.clipRect(x, y, Math.min(VIEW_WIDTH, (int) Math.ceil(tiles.width * tilePixels)),
+            Math.min(VIEW_HEIGHT, (int) Math.ceil(tiles.height * tilePixels)));
+        renderer.paintMap(g, mapView);
+        g.dispose();
+    }
+    
+    private void dispose() throws Exception {
+        EventQueue.invokeAndWait(derived::dispose);
+    }
+    
+    // count, p50, p99 and max in milliseconds per operation
+    private Map<String, double[]> summary() {
+        Map<String, double[]> summary = new LinkedHashMap<>();
+        for (Map.Entry<String, List<Long>> op : latencies.entrySet()) {
+            long[] sorted = op.getValue().stream().mapToLong(Long::longValue).sorted().toArray();
+            summary.put(op.getKey(), new double[] {sorted.length, percentile(sorted, 50) / 1e6,
+                percentile(sorted, 99) / 1e6, sorted[sorted.length - 1] / 1e6});
+        }
+        return summary;
+    }
+    
+    // Nearest rank
+    private static long percentile(long[] sorted, int percent) {
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+    
+    private static Map<String, double[]> run(MapData data, EditSession session) throws Exception {
+        ReplayHarness[] harness = new ReplayHarness[1];
+        EventQueue.invokeAndWait(() -> harness[0] = new ReplayHarness(data));
+        try {
+            harness[0].replay(session);
+            return harness[0].summary();
+        } finally {
+            harness[0].dispose();
+        }
+    }
+    
+    public static void main(String[] args) {
+        int status;
+        try {
+            status = replay(args);
+        } catch (Exception e) {
+            e.printStackTrace();
+            status = 3;
+        }
+        System.exit(status); // the rasterizer pool and the EDT would keep the JVM alive
+    }
+    
+    // 0, or 1 when a threshold was exceeded
+    private static int replay(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) usage("unexpected argument " + args[i]);
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        if (args.length % 2 != 0) usage("missing value for " + args[args.length - 1]);
+        long seed = Long.parseLong(options.getOrDefault("seed", "1"));
+        
+        // Fresh copies for the warm-up and the measured pass, so both start from the same map
+        MapData[] maps = new MapData[2];
+        for (int i = 0; i < maps.length; i++) {
+            if (options.containsKey("map")) {
+                maps[i] = MapFiles.read(Paths.get(options.get("map")).toFile());
+            } else {
+                int size = Integer.parseInt(options.getOrDefault("size", "2048"));
+                maps[i] = SyntheticMaps.create(size, size, Integer.parseInt(options.getOrDefault("layers", "3")),
+                    Double.parseDouble(options.getOrDefault("density", "0.45")), seed,
+                    MapFiles.parseStorage(options.getOrDefault("storage", "dense")));
+            }
+        }
+        MapData data = maps[1];
+        EditSession session = options.containsKey("session")
+            ? EditSession.read(Paths.get(options.get("session")))
+            : EditSession.generate(data.width, data.height, data.layers.size(), maxValue(data),
+                Integer.parseInt(options.getOrDefault("ops", "400")), seed);
+        if (options.containsKey("save-session")) {
+            session.write(Paths.get(options.get("save-session")));
+        }
+        
+        System.out.printf("Replaying %d ops on %d x %d, %d layers%n", session.ops.size(), data.width, data.height,
+            data.layers.size());
+        run(maps[0], session);
+        Map<String, double[]> summary = run(data, session);
+        
+        System.out.printf("%-10s %8s %10s %10s %10s%n", "op", "count", "p50 ms", "p99 ms", "max ms");
+        for (Map.Entry<String, double[]> op : summary.entrySet()) {
+            double[] s = op.getValue();
+            System.out.printf("%-10s %8d %10.3f %10.3f %10.3f%n", op.getKey(), (long) s[0], s[1], s[2], s[3]);
+        }
+        if (options.containsKey("out")) {
+            writeJson(Paths.get(options.get("out")), data, session, summary);
+        }
+        if (options.containsKey("thresholds")) {
+            List<String> failures = check(summary, Paths.get(options.get("thresholds")));
+            failures.forEach(failure -> System.out.println("REGRESSION " + failure));
+            if (!failures.isEmpty()) return 1;
+            System.out.println("All thresholds met");
+        }
+        return 0;
+    }
+    
+    // Highest tile value every layer can hold, for the generated replaces
+    private static int maxValue(MapData data) {
+        for (MapLayer layer : data.layers) {
+            if (!layer.getStorage().canStore(2)) return 1;
+        }
+        return 2;
+    }
+    
+    private static List<String> check(Map<String, double[]> summary, Path file) throws IOException {
+        Properties thresholds = new Properties();
+        try (Reader reader = new FileReader(file.toFile())) {
+            thresholds.load(reader);
+        }
+        List<String> failures = new ArrayList<>();
+        for (String key : new TreeMap<>(thresholds).keySet().toArray(new String[0])) {
+            int dot = key.lastIndexOf('.');
+            String op = key.substring(0, dot), statistic = key.substring(dot + 1);
+            int column = Arrays.asList("count", "p50", "p99", "max").indexOf(statistic);
+            double limit = Double.parseDouble(thresholds.getProperty(key));
+            double[] measured = summary.get(op);
+            if (column < 1) {
+                failures.add(key + ": unknown statistic (use p50, p99 or max)");
+            } else if (measured == null) {
+                failures.add(key + ": operation not in the session");
+            } else if (measured[column] > limit) {
+                failures.add(String.format("%s: %.3f ms > %.3f ms", key, measured[column], limit));
+            }
+        }
+        return failures;
+    }
+    
+    private static void writeJson(Path file, MapData data, EditSession session, Map<String, double[]> summary)
+            throws IOException {
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(file))) {
+            writer.printf(Locale.ROOT, "{%n  \"width\": %d,%n  \"height\": %d,%n  \"layers\": %d,%n  \"ops\": %d,%n",
+                data.width, data.height, data.layers.size(), session.ops.size());
+            writer.printf("  \"latency\": {%n");
+            int i = 0;
+            for (Map.Entry<String, double[]> op : summary.entrySet()) {
+                double[] s = op.getValue();
+                writer.printf(Locale.ROOT, "    \"%s\": {\"count\": %d, \"p50\": %.4f, \"p99\": %.4f, \"max\": %.4f}%s%n",
+                    op.getKey(), (long) s[0], s[1], s[2], s[3], ++i < summary.size() ? "," : "");
+            }
+            writer.printf("  }%n}%n");
+        }
+    }
+    
+    private static void usage(String problem) {
+        System.err.println(problem);
+        System.err.println("usage: ReplayHarness [--map file | --size N --layers L --density D --storage type]"
+            + " [--session file | --ops N] [--seed S] [--save-session file] [--thresholds file] [--out file]");
+        System.exit(2);
+    }
+}
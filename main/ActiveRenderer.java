@@ -0,0 +1,107 @@
+package dev.main;
+
+import java.awt.DisplayMode;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.Rectangle;
+import java.awt.image.VolatileImage;
+import javax.swing.JComponent;
+import javax.swing.Timer;
+
+// Active rendering for one component. Repaint requests only mark the frame dirty;
+// a timer running at the display refresh rate renders a dirty frame once into a
+// VolatileImage back buffer covering the visible part of the component and copies
+// it to the screen. However many changes arrive between two ticks, they cost one
+// render, and paints the system asks for (uncovering, scrolling back) reuse the
+// buffer. The buffer is redrawn whenever its contents were lost.
+public class ActiveRenderer {
+    private static final int FALLBACK_HZ = 60;
+    
+    // Draws the component, in its own coordinates, within the clip of g
+    public interface Scene {
+        void render(Graphics2D g);
+    }
+    
+    private final JComponent component;
+    private final Scene scene;
+    private final Timer timer;
+    private VolatileImage buffer;
+    private Rectangle bufferArea;  // visible rect the buffer was rendered for
+    private boolean dirty = true;
+    
+    public ActiveRenderer(JComponent component, Scene scene) {
+        this.component = component;
+        this.scene = scene;
+        timer = new Timer(1000 / refreshRate(), e -> tick());
+        timer.setCoalesce(true);
+    }
+    
+    private static int refreshRate() {
+        if (GraphicsEnvironment.isHeadless()) return FALLBACK_HZ;
+        DisplayMode mode = GraphicsEnvironment.getLocalGraphicsEnvironment()
+            .getDefaultScreenDevice().getDisplayMode();
+        int hz = mode.getRefreshRate();
+        return hz == DisplayMode.REFRESH_RATE_UNKNOWN ? FALLBACK_HZ : hz;
+    }
+    
+    public void start() {
+        dirty = true;
+        timer.start();
+    }
+    
+    public void stop() {
+        timer.stop();
+        if (buffer != null) {
+            buffer.flush();
+            buffer = null;
+        }
+    }
+    
+    // Something on screen changed; it is drawn on the next frame
+    public void invalidate() {
+        dirty = true;
+    }
+    
+    private void tick() {
+        if (dirty && component.isShowing()) {
+            component.paintImmediately(component.getVisibleRect());
+        }
+    }
+    
+    // Called from paintComponent: copies the buffer to g, rendering it first if
+    // the frame is dirty, the view moved or the buffer was lost
+    public void paint(Graphics g) {
+        Rectangle area = component.getVisibleRect();
+        GraphicsConfiguration config = component.getGraphicsConfiguration();
+        if (area.isEmpty() || config == null) return;
+        do {
+            if (buffer == null || buffer.getWidth() != area.width || buffer.getHeight() != area.height) {
+                if (buffer != null) buffer.flush();
+                buffer = config.createCompatibleVolatileImage(area.width, area.height);
+                dirty = true;
+            }
+            int status = buffer.validate(config);
+            if (status == VolatileImage.IMAGE_INCOMPATIBLE) {
+                buffer.flush();
+                buffer = config.createCompatibleVolatileImage(area.width, area.height);
+                dirty = true;
+            } else if (status == VolatileImage.IMAGE_RESTORED) {
+                dirty = true;
+            }
+            if (dirty || !area.equals(bufferArea)) {
+                Graphics2D bufferGraphics = buffer.createGraphics();
+                bufferGraphics.setColor(component.getBackground());
+                bufferGraphics.fillRect(0, 0, area.width, area.height);
+                bufferGraphics.translate(-area.x, -area.y);
+                bufferGraphics.clipRect(area.x, area.y, area.width, area.height);
+                scene.render(bufferGraphics);
+                bufferGraphics.dispose();
+                bufferArea = area;
+                dirty = false;
+            }
+            g.drawImage(buffer, area.x, area.y, null);
+        } while (buffer.contentsLost());
+    }
+}
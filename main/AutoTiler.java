@@ -0,0 +1,122 @@
+package dev.main;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+// Derived 47-tile "blob" IDs for the solid tiles of one layer. Each solid tile gets
+// an ID from its 8-neighbourhood (corners only count when both adjacent edges are
+// solid); walkable tiles get NONE. Outside the map counts as solid so borders blend.
+public class AutoTiler {
+    public static final int NONE = -1;
+    public static final int TILE_COUNT = 47;
+    
+    // Neighbour bits, clockwise from north
+    public static final int N = 1, NE = 2, E = 4, SE = 8, S = 16, SW = 32, W = 64, NW = 128;
+    
+    private static final byte[] MASK_TO_ID = new byte[256];
+    private static final int[] ID_TO_MASK = new int[TILE_COUNT];
+    
+    static {
+        // Number the reduced masks in ascending order; there are exactly 47 of them
+        int next = 0;
+        int[] idForReduced = new int[256];
+        Arrays.fill(idForReduced, -1);
+        for (int mask = 0; mask < 256; mask++) {
+            int reduced = reduce(mask);
+            if (idForReduced[reduced] < 0) {
+                idForReduced[reduced] = next;
+                ID_TO_MASK[next] = reduced;
+                next++;
+            }
+        }
+        for (int mask = 0; mask < 256; mask++) {
+            MASK_TO_ID[mask] = (byte) idForReduced[reduce(mask)];
+        }
+    }
+    
+    private TileStorage source; // shared with the editor
+    private int width, height;
+    private byte[] ids;     // row-major, NONE for walkable tiles
+    
+    public AutoTiler() {
+        ids = new byte[0];
+    }
+    
+    private static int reduce(int mask) {
+        if ((mask & N) == 0 || (mask & E) == 0) mask &= ~NE;
+        if ((mask & S) == 0 || (mask & E) == 0) mask &= ~SE;
+        if ((mask & S) == 0 || (mask & W) == 0) mask &= ~SW;
+        if ((mask & N) == 0 || (mask & W) == 0) mask &= ~NW;
+        return mask;
+    }
+    
+    // Neighbour mask (after corner reduction) that an ID was derived from
+    public static int maskForId(int id) {
+        return ID_TO_MASK[id];
+    }
+    
+    // Full recompute, parallel over rows; used after load, resize and bulk edits
+    public void rebuild(TileStorage source) {
+        this.source = source;
+        this.width = source.getWidth();
+        this.height = source.getHeight();
+        if (ids.length != width * height) {
+            ids = new byte[width * height];
+        }
+        IntStream.range(0, height).parallel().forEach(row -> {
+            for (int col = 0; col < width; col++) {
+                ids[row * width + col] = (byte) compute(row, col);
+            }
+        });
+    }
+    
+    // Recompute the tiles in region plus their neighbours; a single tile costs 9 lookups
+    public void update(Rectangle region) {
+        int startRow = Math.max(0, region.y - 1);
+        int endRow = Math.min(height, region.y + region.height + 1);
+        int startCol = Math.max(0, region.x - 1);
+        int endCol = Math.min(width, region.x + region.width + 1);
+        
+        IntStream rows = IntStream.range(startRow, endRow);
+        if ((long) (endRow - startRow) * (endCol - startCol) > 4096) {
+            rows = rows.parallel();
+        }
+        rows.forEach(row -> {
+            for (int col = startCol; col < endCol; col++) {
+                ids[row * width + col] = (byte) compute(row, col);
+            }
+        });
+    }
+    
+    public void update(int row, int col) {
+        update(new Rectangle(col, row, 1, 1));
+    }
+    
+    public int getId(int row, int col) {
+        return ids[row * width + col];
+    }
+    
+    private int compute(int row, int col) {
+        if (source.get(row, col) != 1) {
+            return NONE;
+        }
+        int mask = 0;
+        if (isSolid(row - 1, col)) mask |= N;
+        if (isSolid(row - 1, col + 1)) mask |= NE;
+        if (isSolid(row, col + 1)) mask |= E;
+        if (isSolid(row + 1, col + 1)) mask |= SE;
+        if (isSolid(row + 1, col)) mask |= S;
+        if (isSolid(row + 1, col - 1)) mask |= SW;
+        if (isSolid(row, col - 1)) mask |= W;
+        if (isSolid(row - 1, col - 1)) mask |= NW;
+        return MASK_TO_ID[mask];
+    }
+    
+    private boolean isSolid(int row, int col) {
+        if (row < 0 || row >= height || col < 0 || col >= width) {
+            return true;
+        }
+        return source.get(row, col) == 1;
+    }
+}
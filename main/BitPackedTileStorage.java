@@ -0,0 +1,112 @@
+package dev.main;
+
+// One bit per tile for layers that only hold 0 (walkable) and 1 (solid).
+// Each row has its own words, so rows never share a long between threads.
+public class BitPackedTileStorage implements TileStorage {
+    private int width, height;
+    private long[][] rows;
+    
+    public BitPackedTileStorage(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.rows = new long[height][words(width)];
+    }
+    
+    private static int words(int width) {
+        return (width + 63) >>> 6;
+    }
+    
+    @Override
+    public Type getType() {
+        return Type.BIT_PACKED;
+    }
+    
+    @Override
+    public int getWidth() {
+        return width;
+    }
+    
+    @Override
+    public int getHeight() {
+        return height;
+    }
+    
+    @Override
+    public int get(int row, int col) {
+        return (int) (rows[row][col >>> 6] >>> col) & 1;
+    }
+    
+    @Override
+    public void set(int row, int col, int value) {
+        if (value == 1) {
+            rows[row][col >>> 6] |= 1L << col;
+        } else if (value == 0) {
+            rows[row][col >>> 6] &= ~(1L << col);
+        } else {
+            throw new IllegalArgumentException("Bit-packed layers only hold 0 and 1, got " + value);
+        }
+    }
+    
+    // Direct access to a row's bits, bit c of word c / 64 is column c
+    public long[] rowBits(int row) {
+        return rows[row];
+    }
+    
+    @Override
+    public void readRow(int row, int[] dst) {
+        long[] bits = rows[row];
+        for (int c = 0; c < width; c++) {
+            dst[c] = (int) (bits[c >>> 6] >>> c) & 1;
+        }
+    }
+    
+    @Override
+    public void writeRow(int row, int[] src) {
+        long[] bits = new long[words(width)];
+        for (int c = 0; c < width; c++) {
+            int value = src[c];
+            if (value == 1) {
+                bits[c >>> 6] |= 1L << c;
+            } else if (value != 0) {
+                throw new IllegalArgumentException("Bit-packed layers only hold 0 and 1, got " + value);
+            }
+        }
+        rows[row] = bits;
+    }
+    
+    @Override
+    public boolean canStore(int value) {
+        return value == 0 || value == 1;
+    }
+    
+    @Override
+    public void resize(int newWidth, int newHeight, int offsetCol, int offsetRow) {
+        long[][] newRows = new long[newHeight][];
+        int newWords = words(newWidth);
+        for (int r = Math.max(0, -offsetRow); r < Math.min(height, newHeight - offsetRow); r++) {
+            long[] oldBits = rows[r];
+            long[] bits = new long[newWords];
+            for (int c = Math.max(0, -offsetCol); c < Math.min(width, newWidth - offsetCol); c++) {
+                if ((oldBits[c >>> 6] & (1L << c)) != 0) {
+                    int nc = c + offsetCol;
+                    bits[nc >>> 6] |= 1L << nc;
+                }
+            }
+            newRows[r + offsetRow] = bits;
+            rows[r] = null;
+        }
+        for (int row = 0; row < newHeight; row++) {
+            if (newRows[row] == null) {
+                newRows[row] = new long[newWords];
+            }
+        }
+        rows = newRows;
+        width = newWidth;
+        height = newHeight;
+    }
+    
+    @Override
+    public long memoryBytes() {
+        return 16L + height * (16L + 8L * words(width));
+    }
+}
@@ -0,0 +1,264 @@
+package dev.main;
+
+import java.awt.Color;
+import java.awt.EventQueue;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Zoomed-out pictures of one layer, cut into CHUNK_PIXELS square chunks per level
+// and rasterized on background threads. On level L one pixel covers 2^L x 2^L
+// tiles and is the average of their colours (solid colour, walkable colour or
+// clear), premultiplied so the average is a proper blend. A chunk is rasterized
+// when first asked for; until it lands chunk() returns null and the caller draws
+// a placeholder. Edits redo only the touched pixels of cached chunks, into a copy
+// that replaces the image when done, so the EDT never draws a half-written chunk.
+// Cached chunks count against a Budget shared by the rasterizers of all layers.
+// Chunk bookkeeping is EDT-only; workers get immutable jobs and read the tiles
+// through TileMap.tryReadRegion, never the live storage.
+public class ChunkRasterizer {
+    public static final int CHUNK_PIXELS = 128;
+    
+    private static final ExecutorService WORKERS = Executors.newFixedThreadPool(
+        Math.max(1, Runtime.getRuntime().availableProcessors() - 1), task -> {
+            Thread thread = new Thread(task, "chunk-rasterizer");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    
+    // Chunk images of every rasterizer created with it, 64 KB each; beyond maxChunks
+    // the least recently drawn are dropped, whichever layer they belong to. EDT only.
+    public static class Budget {
+        private final int maxChunks;
+        private final Map<Chunk, ChunkRasterizer> chunks = new LinkedHashMap<>(64, 0.75f, true);
+        
+        public Budget(int maxChunks) {
+            this.maxChunks = maxChunks;
+        }
+        
+        private void drawn(Chunk chunk) {
+            chunks.get(chunk);
+        }
+        
+        private void add(Chunk chunk, ChunkRasterizer owner) {
+            chunks.put(chunk, owner);
+            Iterator<Map.Entry<Chunk, ChunkRasterizer>> oldest = chunks.entrySet().iterator();
+            while (chunks.size() > maxChunks && oldest.hasNext()) {
+                Map.Entry<Chunk, ChunkRasterizer> entry = oldest.next();
+                entry.getKey().dropped = true;
+                entry.getValue().chunks.remove(key(entry.getKey().level, entry.getKey().cx, entry.getKey().cy));
+                oldest.remove();
+            }
+        }
+        
+        private void remove(Chunk chunk) {
+            chunks.remove(chunk);
+        }
+    }
+    
+    private static class Chunk {
+        final int level, cx, cy;
+        BufferedImage image;   // null until first rasterized
+        Rectangle pending;     // chunk pixels still to redo, null when none
+        boolean running;
+        volatile boolean dropped;
+        
+        Chunk(int level, int cx, int cy) {
+            this.level = level;
+            this.cx = cx;
+            this.cy = cy;
+        }
+    }
+    
+    private final TileMap tileMap;
+    private final MapLayer layer;
+    private final TileStorage storage; // the layer's storage when created
+    private final int width, height;
+    private final int solid, walkable; // opaque ARGB
+    private final Runnable landed;     // run on the EDT after a chunk image changed
+    private final Budget budget;
+    private final Map<Long, Chunk> chunks = new HashMap<>();
+    private volatile boolean disposed;
+    
+    public ChunkRasterizer(TileMap tileMap, MapLayer layer, Color solidColor, Color walkableColor,
+                           Runnable landed, Budget budget) {
+        this.tileMap = tileMap;
+        this.layer = layer;
+        storage = layer.getStorage();
+        width = storage.getWidth();
+        height = storage.getHeight();
+        solid = solidColor.getRGB() | 0xFF000000;
+        walkable = walkableColor.getRGB() | 0xFF000000;
+        this.landed = landed;
+        this.budget = budget;
+    }
+    
+    // False once the layer was resized, replaced or recoloured and needs a new rasterizer
+    public boolean matches(TileStorage storage, Color solidColor, Color walkableColor) {
+        return storage == this.storage && storage.getWidth() == width && storage.getHeight() == height
+            && (solidColor.getRGB() | 0xFF000000) == solid && (walkableColor.getRGB() | 0xFF000000) == walkable;
+    }
+    
+    // Levels up to the one whose single chunk covers the map
+    public int maxLevel() {
+        int level = 0;
+        while ((long) CHUNK_PIXELS << level < Math.max(width, height)) level++;
+        return level;
+    }
+    
+    // Level where one pixel covers about 1 / tilePixels tiles
+    public int levelFor(double tilePixels) {
+        int level = (int) Math.floor(Math.log(1 / tilePixels) / Math.log(2));
+        return Math.max(0, Math.min(maxLevel(), level));
+    }
+    
+    // Tiles along one side of a chunk on level
+    public static int chunkTiles(int level) {
+        return CHUNK_PIXELS << level;
+    }
+    
+    // Image of a chunk, or null while it is still being rasterized; asks for it if new
+    public BufferedImage chunk(int level, int cx, int cy) {
+        long key = key(level, cx, cy);
+        Chunk chunk = chunks.get(key);
+        if (chunk == null) {
+            chunk = new Chunk(level, cx, cy);
+            chunk.pending = new Rectangle(0, 0, CHUNK_PIXELS, CHUNK_PIXELS);
+            chunks.put(key, chunk);
+            submit(chunk);
+            budget.add(chunk, this);
+        } else {
+            budget.drawn(chunk);
+        }
+        return chunk.image;
+    }
+    
+    private static long key(int level, int cx, int cy) {
+        return (long) level << 48 | (long) cy << 24 | cx;
+    }
+    
+    // Tiles inside region were rewritten; cached chunks over it are redone there
+    public void regionChanged(Rectangle region) {
+        Rectangle area = region.intersection(new Rectangle(0, 0, width, height));
+        if (area.isEmpty()) return;
+        for (Chunk chunk : chunks.values()) {
+            int level = chunk.level;
+            int originX = chunk.cx * CHUNK_PIXELS, originY = chunk.cy * CHUNK_PIXELS;
+            int x0 = (area.x >> level) - originX;
+            int y0 = (area.y >> level) - originY;
+            int x1 = ((area.x + area.width - 1) >> level) - originX;
+            int y1 = ((area.y + area.height - 1) >> level) - originY;
+            Rectangle pixels = new Rectangle(x0, y0, x1 - x0 + 1, y1 - y0 + 1)
+                .intersection(new Rectangle(0, 0, CHUNK_PIXELS, CHUNK_PIXELS));
+            if (pixels.isEmpty()) continue;
+            chunk.pending = chunk.pending == null ? pixels : chunk.pending.union(pixels);
+            if (!chunk.running) submit(chunk);
+        }
+    }
+    
+    // Stops outstanding work; the rasterizer is not used again
+    public void dispose() {
+        disposed = true;
+        for (Chunk chunk : chunks.values()) {
+            chunk.dropped = true;
+            budget.remove(chunk);
+        }
+        chunks.clear();
+    }
+    
+    private void submit(Chunk chunk) {
+        Rectangle pixels = chunk.pending;
+        BufferedImage base = chunk.image;
+        chunk.pending = null;
+        chunk.running = true;
+        WORKERS.execute(() -> {
+            if (disposed || chunk.dropped) return;
+            BufferedImage image = copy(base);
+            int[] data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            boolean rasterized = rasterize(chunk, pixels, data);
+            EventQueue.invokeLater(() -> {
+                chunk.running = false;
+                if (disposed || chunk.dropped) return;
+                if (!rasterized) {
+                    // The layer was resized or removed; the structural change disposes this
+                    // rasterizer, so the pixels stay pending rather than being retried
+                    chunk.pending = chunk.pending == null ? pixels : chunk.pending.union(pixels);
+                    return;
+                }
+                chunk.image = image;
+                landed.run();
+                if (chunk.pending != null) submit(chunk);
+            });
+        });
+    }
+    
+    private static BufferedImage copy(BufferedImage base) {
+        BufferedImage image = new BufferedImage(CHUNK_PIXELS, CHUNK_PIXELS, BufferedImage.TYPE_INT_ARGB_PRE);
+        if (base != null) {
+            int[] from = ((DataBufferInt) base.getRaster().getDataBuffer()).getData();
+            int[] to = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            System.arraycopy(from, 0, to, 0, from.length);
+        }
+        return image;
+    }
+    
+    // Averages the tiles under each pixel of the chunk inside pixels; false when the
+    // layer is no longer on the map at its old size
+    private boolean rasterize(Chunk chunk, Rectangle pixels, int[] data) {
+        int level = chunk.level;
+        int side = 1 << level;
+        int firstCol = (chunk.cx * CHUNK_PIXELS + pixels.x) << level;
+        int endCol = Math.min(width, (chunk.cx * CHUNK_PIXELS + pixels.x + pixels.width) << level);
+        int span = Math.max(0, endCol - firstCol);
+        int[] values = new int[span * side]; // the rows under one pixel row, row-major
+        int[] solidCount = new int[pixels.width];
+        int[] walkableCount = new int[pixels.width];
+        int[] total = new int[pixels.width];
+        
+        for (int py = pixels.y; py < pixels.y + pixels.height; py++) {
+            Arrays.fill(solidCount, 0);
+            Arrays.fill(walkableCount, 0);
+            Arrays.fill(total, 0);
+            int firstRow = (chunk.cy * CHUNK_PIXELS + py) << level;
+            int endRow = Math.min(height, firstRow + side);
+            if (span > 0 && endRow > firstRow && !tileMap.tryReadRegion(layer,
+                    new Rectangle(firstCol, firstRow, span, endRow - firstRow), values)) {
+                return false;
+            }
+            for (int row = firstRow; row < endRow && span > 0; row++) {
+                int offset = (row - firstRow) * span;
+                for (int i = 0; i < span; i++) {
+                    int px = i >> level;
+                    int value = values[offset + i];
+                    total[px]++;
+                    if (value == 1) solidCount[px]++;
+                    else if (value != 0) walkableCount[px]++;
+                }
+            }
+            for (int px = 0; px < pixels.width; px++) {
+                data[py * CHUNK_PIXELS + pixels.x + px] = total[px] == 0 ? 0
+                    : blend(solidCount[px], walkableCount[px], total[px]);
+            }
+        }
+        return true;
+    }
+    
+    private int blend(int solidCount, int walkableCount, int total) {
+        int half = total / 2;
+        int argb = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+            int channel = (((solid >>> shift) & 0xFF) * solidCount
+                + ((walkable >>> shift) & 0xFF) * walkableCount + half) / total;
+            argb |= channel << shift;
+        }
+        return argb;
+    }
+}
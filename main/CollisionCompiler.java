@@ -0,0 +1,211 @@
+package dev.main;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Turns the solid (1) tiles of a layer into collision geometry for the game:
+// a small set of axis-aligned rectangles (greedy meshing) and, optionally, the
+// polygon outlines of each solid area. Everything is in tile units.
+// Rectangles are meshed per row band in parallel and then stitched across band
+// borders; outlines are traced over a corner grid that is also filled in bands.
+public final class CollisionCompiler {
+    
+    // Closed outline through tile corners; outer outlines run clockwise on screen
+    // (y down), holes counter-clockwise. Only corner points are kept.
+    public static class Outline {
+        public final int[] points; // x0, y0, x1, y1, ...
+        public final boolean hole;
+        
+        Outline(int[] points, boolean hole) {
+            this.points = points;
+            this.hole = hole;
+        }
+        
+        public int pointCount() {
+            return points.length / 2;
+        }
+    }
+    
+    // Corner grid edge directions, clockwise starting east
+    private static final int EAST = 0, SOUTH = 1, WEST = 2, NORTH = 3;
+    
+    private CollisionCompiler() {
+    }
+    
+    // ---------------------------------------------------------------------
+    // Greedy rectangles
+    // ---------------------------------------------------------------------
+    
+    public static List<Rectangle> rectangles(TileStorage layer) {
+        int width = layer.getWidth();
+        int height = layer.getHeight();
+        int bands = RowBands.bandCount(height);
+        List<List<Rectangle>> byBand = new ArrayList<>(bands);
+        for (int i = 0; i < bands; i++) {
+            byBand.add(null);
+        }
+        
+        RowBands.forEach(height, (rowStart, rowEnd) -> {
+            byBand.set(rowStart / RowBands.BAND_ROWS, meshBand(layer, rowStart, rowEnd));
+        });
+        
+        // Stitch: a rectangle that starts on a band border continues one that ends
+        // there if both cover exactly the same columns
+        List<Rectangle> result = new ArrayList<>();
+        Map<Long, Rectangle> open = new HashMap<>();
+        for (int band = 0; band < bands; band++) {
+            int bandStart = band * RowBands.BAND_ROWS;
+            int bandEnd = Math.min(height, bandStart + RowBands.BAND_ROWS);
+            Map<Long, Rectangle> nextOpen = new HashMap<>();
+            for (Rectangle rect : byBand.get(band)) {
+                long key = (long) rect.x << 32 | rect.width;
+                Rectangle above = rect.y == bandStart ? open.get(key) : null;
+                if (above != null) {
+                    above.height += rect.height;
+                    rect = above;
+                } else {
+                    result.add(rect);
+                }
+                if (rect.y + rect.height == bandEnd) {
+                    nextOpen.put(key, rect);
+                }
+            }
+            open = nextOpen;
+        }
+        return result;
+    }
+    
+    // Row-major greedy meshing inside one band: widest run first, then grow downwards
+    private static List<Rectangle> meshBand(TileStorage layer, int rowStart, int rowEnd) {
+        int width = layer.getWidth();
+        int rows = rowEnd - rowStart;
+        int[][] tiles = new int[rows][width];
+        for (int r = 0; r < rows; r++) {
+            layer.readRow(rowStart + r, tiles[r]);
+        }
+        boolean[] used = new boolean[rows * width];
+        List<Rectangle> rects = new ArrayList<>();
+        
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < width; c++) {
+                if (tiles[r][c] != 1 || used[r * width + c]) continue;
+                
+                int end = c + 1;
+                while (end < width && tiles[r][end] == 1 && !used[r * width + end]) {
+                    end++;
+                }
+                int bottom = r + 1;
+                while (bottom < rows && spanFree(tiles[bottom], used, bottom * width, c, end)) {
+                    bottom++;
+                }
+                for (int i = r; i < bottom; i++) {
+                    for (int j = c; j < end; j++) {
+                        used[i * width + j] = true;
+                    }
+                }
+                rects.add(new Rectangle(c, rowStart + r, end - c, bottom - r));
+                c = end - 1;
+            }
+        }
+        return rects;
+    }
+    
+    private static boolean spanFree(int[] row, boolean[] used, int offset, int from, int to) {
+        for (int j = from; j < to; j++) {
+            if (row[j] != 1 || used[offset + j]) return false;
+        }
+        return true;
+    }
+    
+    // ---------------------------------------------------------------------
+    // Outlines
+    // ---------------------------------------------------------------------
+    
+    public static List<Outline> outlines(TileStorage layer) {
+        int width = layer.getWidth();
+        int height = layer.getHeight();
+        int stride = width + 1;
+        
+        // Outgoing boundary edges per corner as a direction bit mask. Each corner only
+        // looks at its four surrounding tiles, so corner rows can be filled independently.
+        byte[] edges = new byte[stride * (height + 1)];
+        RowBands.forEach(height + 1, (rowStart, rowEnd) -> {
+            int[] above = new int[width];
+            int[] below = new int[width];
+            for (int vy = rowStart; vy < rowEnd; vy++) {
+                if (vy > 0) layer.readRow(vy - 1, above);
+                if (vy < height) layer.readRow(vy, below);
+                for (int vx = 0; vx <= width; vx++) {
+                    boolean tl = vy > 0 && vx > 0 && above[vx - 1] == 1;
+                    boolean tr = vy > 0 && vx < width && above[vx] == 1;
+                    boolean bl = vy < height && vx > 0 && below[vx - 1] == 1;
+                    boolean br = vy < height && vx < width && below[vx] == 1;
+                    int mask = 0;
+                    if (br && !tr) mask |= 1 << EAST;   // top edge of the tile below-right
+                    if (bl && !br) mask |= 1 << SOUTH;  // right edge of the tile below-left
+                    if (tl && !bl) mask |= 1 << WEST;   // bottom edge of the tile above-left
+                    if (tr && !tl) mask |= 1 << NORTH;  // left edge of the tile above-right
+                    edges[vy * stride + vx] = (byte) mask;
+                }
+            }
+        });
+        
+        // Walk the edges with the solid side on the right. Where two solid tiles only
+        // touch diagonally, turning right keeps them as separate outlines.
+        List<Outline> outlines = new ArrayList<>();
+        int[] step = {1, stride, -1, -stride};
+        int[] points = new int[64];
+        for (int start = 0; start < edges.length; start++) {
+            if (edges[start] == 0) continue;
+            
+            int dir = Integer.numberOfTrailingZeros(edges[start]);
+            int count = 0;
+            points = addPoint(points, count++, start, stride);
+            int vertex = start;
+            while (true) {
+                edges[vertex] &= ~(1 << dir);
+                vertex += step[dir];
+                if (vertex == start) break;
+                
+                int mask = edges[vertex];
+                int right = (dir + 1) & 3;
+                int left = (dir + 3) & 3;
+                int next = (mask & (1 << right)) != 0 ? right : (mask & (1 << dir)) != 0 ? dir : left;
+                if (next != dir) {
+                    points = addPoint(points, count++, vertex, stride);
+                }
+                dir = next;
+            }
+            
+            int[] outline = new int[count * 2];
+            System.arraycopy(points, 0, outline, 0, outline.length);
+            outlines.add(new Outline(outline, signedArea(outline) < 0));
+        }
+        return outlines;
+    }
+    
+    private static int[] addPoint(int[] points, int index, int vertex, int stride) {
+        if (index * 2 + 2 > points.length) {
+            int[] grown = new int[points.length * 2];
+            System.arraycopy(points, 0, grown, 0, points.length);
+            points = grown;
+        }
+        points[index * 2] = vertex % stride;
+        points[index * 2 + 1] = vertex / stride;
+        return points;
+    }
+    
+    // Twice the shoelace area; positive for clockwise outlines in screen coordinates
+    private static long signedArea(int[] points) {
+        long area = 0;
+        int n = points.length / 2;
+        for (int i = 0; i < n; i++) {
+            int j = (i + 1) % n;
+            area += (long) points[i * 2] * points[j * 2 + 1] - (long) points[j * 2] * points[i * 2 + 1];
+        }
+        return area;
+    }
+}
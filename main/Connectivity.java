@@ -0,0 +1,361 @@
+package dev.main;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+// Connected walkable regions of a map. Tiles are 4-connected, which gives the same
+// reachability as the path finder's eight-way moves without corner cutting.
+// A full rebuild labels row bands in parallel with union-find and then joins the
+// bands across their borders. Single-tile edits are applied incrementally:
+// opening a tile unions the regions around it; closing one runs interleaved
+// searches from its open neighbours and stops as soon as they all meet, so the
+// cost is bounded by the smaller pieces of a split rather than the whole map.
+// Every edit is counted and stamps the regions it touched, so a caller that looked
+// at the regions before can tell which of them changed since.
+public class Connectivity {
+    private final int width, height;
+    private int[] labels;       // region id per tile, -1 for solid
+    private int[] regionParent; // union-find over region ids
+    private int[] regionSize;   // valid at roots
+    private int regionIds;      // ids handed out so far
+    private int regionCount;    // live regions
+    private long[] regionChangedAt; // per region id: edit count of its last change in size or tiles
+    private long changes;       // edits and rebuilds so far
+    private long rebuiltAt;     // edit count of the last rebuild
+    private Rectangle relabelled; // tiles split off into new regions since the last takeRelabelled()
+    
+    // Split search state, reused between edits
+    private int[] marks;        // epoch * 4 + search index
+    private int epoch;
+    
+    public Connectivity(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+    
+    // Full parallel labelling; blocked is a row-major bitset in SolidGrid layout
+    public void rebuild(long[] blocked) {
+        int words = SolidGrid.wordsPerRow(width);
+        labels = new int[width * height];
+        marks = null;
+        
+        // Bands: union-find where every link points to a smaller tile index, so each
+        // band only ever touches its own tiles
+        RowBands.forEach(height, (rowStart, rowEnd) -> {
+            for (int r = rowStart; r < rowEnd; r++) {
+                for (int c = 0; c < width; c++) {
+                    int i = r * width + c;
+                    if ((blocked[r * words + (c >>> 6)] & (1L << (c & 63))) != 0) {
+                        labels[i] = -1;
+                        continue;
+                    }
+                    labels[i] = i;
+                    if (c > 0 && labels[i - 1] >= 0) union(labels, i - 1, i);
+                    if (r > rowStart && labels[i - width] >= 0) union(labels, i - width, i);
+                }
+            }
+        });
+        
+        // Join across band borders
+        for (int r = RowBands.BAND_ROWS; r < height; r += RowBands.BAND_ROWS) {
+            for (int c = 0; c < width; c++) {
+                int i = r * width + c;
+                if (labels[i] >= 0 && labels[i - width] >= 0) union(labels, i - width, i);
+            }
+        }
+        
+        // Point every tile straight at its root. Other bands may read a tile while it
+        // is rewritten, but the old parent and the root both lead to the same root.
+        RowBands.forEach(height, (rowStart, rowEnd) -> {
+            for (int i = rowStart * width; i < rowEnd * width; i++) {
+                if (labels[i] >= 0) {
+                    int root = i;
+                    while (labels[root] != root) root = labels[root];
+                    labels[i] = root;
+                }
+            }
+        });
+        
+        // Roots are the smallest tile of their region, so they are renamed first
+        rebuiltAt = ++changes;
+        relabelled = null;
+        regionParent = new int[64];
+        regionSize = new int[64];
+        regionChangedAt = new long[64];
+        regionIds = 0;
+        for (int i = 0; i < labels.length; i++) {
+            int root = labels[i];
+            if (root < 0) continue;
+            if (root == i) {
+                labels[i] = newRegion(0);
+            } else {
+                labels[i] = labels[root];
+            }
+            regionSize[labels[i]]++;
+        }
+        regionCount = regionIds;
+    }
+    
+    private static void union(int[] parent, int a, int b) {
+        int ra = findTile(parent, a);
+        int rb = findTile(parent, b);
+        if (ra == rb) return;
+        if (ra < rb) parent[rb] = ra;
+        else parent[ra] = rb;
+    }
+    
+    private static int findTile(int[] parent, int i) {
+        int root = i;
+        while (parent[root] != root) root = parent[root];
+        while (parent[i] != root) {
+            int next = parent[i];
+            parent[i] = root;
+            i = next;
+        }
+        return root;
+    }
+    
+    private int newRegion(int size) {
+        if (regionIds == regionParent.length) {
+            regionParent = Arrays.copyOf(regionParent, regionIds * 2);
+            regionSize = Arrays.copyOf(regionSize, regionIds * 2);
+            regionChangedAt = Arrays.copyOf(regionChangedAt, regionIds * 2);
+        }
+        regionParent[regionIds] = regionIds;
+        regionSize[regionIds] = size;
+        regionChangedAt[regionIds] = changes;
+        return regionIds++;
+    }
+    
+    private int findRegion(int id) {
+        int root = id;
+        while (regionParent[root] != root) root = regionParent[root];
+        while (regionParent[id] != root) {
+            int next = regionParent[id];
+            regionParent[id] = root;
+            id = next;
+        }
+        return root;
+    }
+    
+    public int getWidth() {
+        return width;
+    }
+    
+    public int getHeight() {
+        return height;
+    }
+    
+    // Region of a tile, or -1 when it is solid
+    public int regionOf(int row, int col) {
+        int label = labels[row * width + col];
+        return label < 0 ? -1 : findRegion(label);
+    }
+    
+    public int regionSize(int region) {
+        return regionSize[findRegion(region)];
+    }
+    
+    public int regionCount() {
+        return regionCount;
+    }
+    
+    // The region with the most tiles, or -1 when everything is solid
+    public int largestRegion() {
+        int best = -1;
+        for (int id = 0; id < regionIds; id++) {
+            if (regionParent[id] == id && regionSize[id] > 0 && (best < 0 || regionSize[id] > regionSize[best])) {
+                best = id;
+            }
+        }
+        return best;
+    }
+    
+    // Edits and rebuilds so far
+    public long changeCount() {
+        return changes;
+    }
+    
+    // True if the region holding id grew, shrank, merged or split after the given
+    // change count, or all regions were relabelled since
+    public boolean regionChangedSince(int id, long count) {
+        return rebuiltAt > count || regionChangedAt[findRegion(id)] > count;
+    }
+    
+    public boolean rebuiltSince(long count) {
+        return rebuiltAt > count;
+    }
+    
+    // Region id an older id now belongs to; ids stay valid until the next rebuild
+    public int currentRegion(int id) {
+        return findRegion(id);
+    }
+    
+    // Bounds of the tiles that splits moved to new regions since the last call, or null
+    public Rectangle takeRelabelled() {
+        Rectangle bounds = relabelled;
+        relabelled = null;
+        return bounds;
+    }
+    
+    public void setSolid(int row, int col, boolean solid) {
+        int i = row * width + col;
+        if ((labels[i] < 0) == solid) return;
+        changes++;
+        if (solid) {
+            close(row, col);
+        } else {
+            open(row, col);
+        }
+    }
+    
+    private void open(int row, int col) {
+        int i = row * width + col;
+        int region = -1;
+        for (int k = 0; k < 4; k++) {
+            int n = neighbour(row, col, k);
+            if (n < 0 || labels[n] < 0) continue;
+            int other = findRegion(labels[n]);
+            if (region < 0) {
+                region = other;
+            } else if (other != region) {
+                // Keep the bigger region as root
+                if (regionSize[other] > regionSize[region]) {
+                    int t = region;
+                    region = other;
+                    other = t;
+                }
+                regionParent[other] = region;
+                regionSize[region] += regionSize[other];
+                regionCount--;
+            }
+        }
+        if (region < 0) {
+            region = newRegion(0);
+            regionCount++;
+        }
+        labels[i] = region;
+        regionSize[region]++;
+        regionChangedAt[region] = changes;
+    }
+    
+    private void close(int row, int col) {
+        int i = row * width + col;
+        int region = findRegion(labels[i]);
+        labels[i] = -1;
+        regionSize[region]--;
+        regionChangedAt[region] = changes;
+        if (regionSize[region] == 0) {
+            regionCount--;
+            return;
+        }
+        
+        int[] starts = new int[4];
+        int searches = 0;
+        for (int k = 0; k < 4; k++) {
+            int n = neighbour(row, col, k);
+            if (n >= 0 && labels[n] >= 0) starts[searches++] = n;
+        }
+        if (searches < 2) return;
+        
+        if (marks == null) {
+            marks = new int[labels.length];
+            epoch = 0;
+        }
+        if (++epoch > Integer.MAX_VALUE / 4) {
+            Arrays.fill(marks, 0);
+            epoch = 1;
+        }
+        
+        // One breadth-first search per open neighbour, advanced in turns. Searches that
+        // meet are grouped; a group that runs out of tiles while others are still going
+        // is a piece cut off by the closed tile and gets a region of its own.
+        int[][] queues = new int[searches][];
+        int[] heads = new int[searches];
+        int[] tails = new int[searches];
+        int[] group = new int[searches];
+        boolean[] done = new boolean[searches];
+        for (int s = 0; s < searches; s++) {
+            queues[s] = new int[16];
+            queues[s][tails[s]++] = starts[s];
+            marks[starts[s]] = epoch * 4 + s;
+            group[s] = s;
+        }
+        int groups = searches;
+        
+        while (groups > 1) {
+            for (int s = 0; s < searches && groups > 1; s++) {
+                if (done[s] || heads[s] == tails[s]) continue;
+                int cell = queues[s][heads[s]++];
+                int r = cell / width;
+                int c = cell % width;
+                for (int k = 0; k < 4; k++) {
+                    int n = neighbour(r, c, k);
+                    if (n < 0 || labels[n] < 0) continue;
+                    int mark = marks[n];
+                    if (mark / 4 == epoch) {
+                        int a = groupOf(group, s);
+                        int b = groupOf(group, mark % 4);
+                        if (a != b) {
+                            group[b] = a;
+                            groups--;
+                        }
+                        continue;
+                    }
+                    marks[n] = epoch * 4 + s;
+                    if (tails[s] == queues[s].length) {
+                        queues[s] = Arrays.copyOf(queues[s], tails[s] * 2);
+                    }
+                    queues[s][tails[s]++] = n;
+                }
+            }
+            if (groups == 1) break;
+            
+            // Split off every group whose searches are all exhausted
+            for (int s = 0; s < searches && groups > 1; s++) {
+                if (done[s] || groupOf(group, s) != s) continue;
+                boolean exhausted = true;
+                for (int t = 0; t < searches; t++) {
+                    if (groupOf(group, t) == s && heads[t] < tails[t]) exhausted = false;
+                }
+                if (!exhausted) continue;
+                
+                int piece = newRegion(0);
+                int minRow = height, maxRow = -1, minCol = width, maxCol = -1;
+                for (int t = 0; t < searches; t++) {
+                    if (groupOf(group, t) != s) continue;
+                    for (int q = 0; q < tails[t]; q++) {
+                        int cell = queues[t][q];
+                        labels[cell] = piece;
+                        minRow = Math.min(minRow, cell / width);
+                        maxRow = Math.max(maxRow, cell / width);
+                        minCol = Math.min(minCol, cell % width);
+                        maxCol = Math.max(maxCol, cell % width);
+                    }
+                    regionSize[piece] += tails[t];
+                    done[t] = true;
+                }
+                regionSize[region] -= regionSize[piece];
+                Rectangle moved = new Rectangle(minCol, minRow, maxCol - minCol + 1, maxRow - minRow + 1);
+                relabelled = relabelled == null ? moved : relabelled.union(moved);
+                regionCount++;
+                groups--;
+            }
+        }
+    }
+    
+    private static int groupOf(int[] group, int s) {
+        while (group[s] != s) s = group[s];
+        return s;
+    }
+    
+    // Tile index of the k-th 4-neighbour, or -1 outside the map
+    private int neighbour(int row, int col, int k) {
+        switch (k) {
+            case 0: return row > 0 ? (row - 1) * width + col : -1;
+            case 1: return col < width - 1 ? row * width + col + 1 : -1;
+            case 2: return row < height - 1 ? (row + 1) * width + col : -1;
+            default: return col > 0 ? row * width + col - 1 : -1;
+        }
+    }
+}
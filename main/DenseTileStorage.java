@@ -0,0 +1,108 @@
+package dev.main;
+
+import java.util.Arrays;
+
+// One int per tile, one array per row
+public class DenseTileStorage implements TileStorage {
+    private int width, height;
+    private int[][] rows;
+    
+    public DenseTileStorage(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.rows = new int[height][width];
+    }
+    
+    @Override
+    public Type getType() {
+        return Type.DENSE;
+    }
+    
+    @Override
+    public int getWidth() {
+        return width;
+    }
+    
+    @Override
+    public int getHeight() {
+        return height;
+    }
+    
+    @Override
+    public int get(int row, int col) {
+        return rows[row][col];
+    }
+    
+    @Override
+    public void set(int row, int col, int value) {
+        rows[row][col] = value;
+    }
+    
+    @Override
+    public void readRow(int row, int[] dst) {
+        System.arraycopy(rows[row], 0, dst, 0, width);
+    }
+    
+    @Override
+    public void writeRow(int row, int[] src) {
+        System.arraycopy(src, 0, rows[row], 0, width);
+    }
+    
+    @Override
+    public void readSpan(int row, int col, int[] dst, int length) {
+        System.arraycopy(rows[row], col, dst, 0, length);
+    }
+    
+    @Override
+    public void writeSpan(int row, int col, int[] src, int length) {
+        System.arraycopy(src, 0, rows[row], col, length);
+    }
+    
+    @Override
+    public boolean canStore(int value) {
+        return true;
+    }
+    
+    // Kept rows are moved with one System.arraycopy each (or reused untouched when
+    // the width does not change) and each old row is released as soon as it has
+    // been copied, so the layer is never held twice.
+    @Override
+    public void resize(int newWidth, int newHeight, int offsetCol, int offsetRow) {
+        int keepRowStart = Math.max(0, -offsetRow);
+        int keepRowEnd = Math.min(height, newHeight - offsetRow);
+        int keepColStart = Math.max(0, -offsetCol);
+        int keepColEnd = Math.min(width, newWidth - offsetCol);
+        int[][] newRows = new int[newHeight][];
+        
+        for (int r = keepRowStart; r < keepRowEnd; r++) {
+            int[] oldRow = rows[r];
+            if (newWidth == width && offsetCol == 0) {
+                newRows[r + offsetRow] = oldRow;
+            } else if (keepColStart < keepColEnd) {
+                int[] newRow = new int[newWidth];
+                System.arraycopy(oldRow, keepColStart, newRow, keepColStart + offsetCol, keepColEnd - keepColStart);
+                newRows[r + offsetRow] = newRow;
+            }
+            rows[r] = null;
+        }
+        for (int row = 0; row < newHeight; row++) {
+            if (newRows[row] == null) {
+                newRows[row] = new int[newWidth];
+            }
+        }
+        rows = newRows;
+        width = newWidth;
+        height = newHeight;
+    }
+    
+    @Override
+    public long memoryBytes() {
+        return 16L + height * (16L + 4L * width);
+    }
+    
+    public void fill(int value) {
+        for (int[] row : rows) {
+            Arrays.fill(row, value);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package dev.main;
+
+import java.awt.Rectangle;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+// Everything derived from the tiles that has to follow edits: statistics, auto-tile
+// IDs, solid grids, chunk pictures, PVS chunks to recast and walkable regions.
+// mapChanged brings it up to date after one batch of model changes; each tile of
+// a short batch of writes moves the statistics in O(1). Parts nobody asked for
+// cost nothing: statistics, auto-tile IDs, grids and pictures are built on first
+// query, connectivity only while tracked. EDT only, like the listeners that call it.
+public class DerivedData {
+    private static final int REBUILD_TILES = 4096; // larger batches relabel connectivity from scratch
+    private static final int MAX_CHUNKS = 512;     // chunk pictures of all layers together, 64 KB each
+    
+    private final TileMap tileMap;
+    private final Runnable chunkLanded;
+    private final Map<MapLayer, LayerStats> layerStats = new IdentityHashMap<>();
+    private AutoTiler autoTiler; // derived from the bottom layer; null until asked
+    private final Map<MapLayer, SolidGrid> solidGrids = new IdentityHashMap<>();
+    private final Map<MapLayer, ChunkRasterizer> rasterizers = new IdentityHashMap<>();
+    private final ChunkRasterizer.Budget chunkBudget = new ChunkRasterizer.Budget(MAX_CHUNKS);
+    private final PvsCache pvsCache = new PvsCache(); // sets from the last save; edits mark the chunks to recast
+    private Connectivity connectivity; // walkable regions over all layers; null while not tracked
+    
+    // chunkLanded runs on the EDT whenever a chunk picture finished in the background
+    public DerivedData(TileMap tileMap, Runnable chunkLanded) {
+        this.tileMap = tileMap;
+        this.chunkLanded = chunkLanded;
+    }
+    
+    public void mapChanged(TileMap.ChangeSet changes) {
+        if (changes.isStructural()) {
+            rebuild();
+            return;
+        }
+        MapLayer bottom = tileMap.getLayers().get(0);
+        for (Map.Entry<MapLayer, Rectangle> dirty : changes.getDirty().entrySet()) {
+            MapLayer layer = dirty.getKey();
+            Rectangle region = dirty.getValue();
+            LayerStats stats = layerStats.get(layer);
+            int[] writes = stats != null ? changes.getWrites(layer) : null;
+            if (writes != null) {
+                stats.tilesChanged(layer.getStorage(), writes);
+            } else if (stats != null) {
+                stats.recount(layer.getStorage(), region);
+            }
+            if (layer == bottom && autoTiler != null) {
+                autoTiler.update(region);
+            }
+            SolidGrid grid = solidGrids.get(layer);
+            if (grid != null) {
+                grid.update(layer.getStorage(), region);
+            }
+            ChunkRasterizer rasterizer = rasterizers.get(layer);
+            if (rasterizer != null) {
+                rasterizer.regionChanged(region);
+            }
+        }
+        
+        Rectangle region = changes.bounds();
+        pvsCache.regionChanged(region);
+        if (connectivity != null) {
+            if ((long) region.width * region.height > REBUILD_TILES) {
+                connectivity.rebuild(combinedSolid());
+            } else {
+                for (int row = region.y; row < region.y + region.height; row++) {
+                    for (int col = region.x; col < region.x + region.width; col++) {
+                        connectivity.setSolid(row, col, isSolidOnAnyLayer(row, col));
+                    }
+                }
+            }
+        }
+    }
+    
+    // After storages or the layer stack changed (load, resize, clear, reorder)
+    public void rebuild() {
+        autoTiler = null;
+        solidGrids.clear();
+        pvsCache.clear();
+        rasterizers.values().forEach(ChunkRasterizer::dispose);
+        rasterizers.clear();
+        layerStats.clear();
+        if (connectivity != null) {
+            connectivity = new Connectivity(tileMap.getWidth(), tileMap.getHeight());
+            connectivity.rebuild(combinedSolid());
+        }
+    }
+    
+    // Counters of a layer, built (one parallel pass) on first query
+    public LayerStats stats(MapLayer layer) {
+        return layerStats.computeIfAbsent(layer, l -> new LayerStats(l.getStorage()));
+    }
+    
+    // Stops counting until stats is asked again
+    public void dropStats() {
+        layerStats.clear();
+    }
+    
+    // Auto-tile IDs of the bottom layer, built (one parallel pass) on first query
+    public AutoTiler autoTiler() {
+        if (autoTiler == null) {
+            autoTiler = new AutoTiler();
+            autoTiler.rebuild(tileMap.getLayers().get(0).getStorage());
+        }
+        return autoTiler;
+    }
+    
+    // Bitset/summed-area view of a layer's solid tiles
+    public SolidGrid solidGrid(MapLayer layer) {
+        return solidGrids.computeIfAbsent(layer, l -> new SolidGrid(l.getStorage()));
+    }
+    
+    // Zoomed-out pictures of a layer; replaced when the layer was recoloured
+    public ChunkRasterizer rasterizer(MapLayer layer) {
+        ChunkRasterizer rasterizer = rasterizers.get(layer);
+        if (rasterizer == null || !rasterizer.matches(layer.getStorage(), layer.getSolidColor(), layer.getColor())) {
+            if (rasterizer != null) rasterizer.dispose();
+            rasterizer = new ChunkRasterizer(tileMap, layer, layer.getSolidColor(), layer.getColor(), chunkLanded,
+                chunkBudget);
+            rasterizers.put(layer, rasterizer);
+        }
+        return rasterizer;
+    }
+    
+    public PvsCache pvsCache() {
+        return pvsCache;
+    }
+    
+    // Walkable regions over all layers, or null while not tracked
+    public Connectivity connectivity() {
+        return connectivity;
+    }
+    
+    public void trackConnectivity(boolean track) {
+        if (!track) {
+            connectivity = null;
+        } else if (connectivity == null) {
+            connectivity = new Connectivity(tileMap.getWidth(), tileMap.getHeight());
+            connectivity.rebuild(combinedSolid());
+        }
+    }
+    
+    // Solid tiles of all layers as one bitset in SolidGrid layout
+    public long[] combinedSolid() {
+        long[] blocked = new long[SolidGrid.wordsPerRow(tileMap.getWidth()) * tileMap.getHeight()];
+        for (MapLayer layer : tileMap.getLayers()) {
+            solidGrid(layer).orInto(blocked);
+        }
+        return blocked;
+    }
+    
+    private boolean isSolidOnAnyLayer(int row, int col) {
+        for (MapLayer layer : tileMap.getLayers()) {
+            if (layer.getStorage().get(row, col) == 1) return true;
+        }
+        return false;
+    }
+    
+    // Stops the background rasterizing
+    public void dispose() {
+        rasterizers.values().forEach(ChunkRasterizer::dispose);
+        rasterizers.clear();
+    }
+}
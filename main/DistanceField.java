@@ -0,0 +1,123 @@
+package dev.main;
+
+// Euclidean distance from every tile to the nearest solid tile, in tiles, with
+// the area outside the map counting as solid. Exact squared distances come from
+// Felzenszwalb and Huttenlocher's linear-time transform: a 1D pass along each
+// row, then the lower envelope of parabolas along each column. Rows and then
+// columns are independent, so both passes run in parallel bands.
+public class DistanceField {
+    private final int width, height;
+    private final int[] squared; // row-major squared distance, 0 on solid tiles
+    private int maxSquared;
+    
+    private DistanceField(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.squared = new int[width * height];
+    }
+    
+    // blocked is a row-major bitset in SolidGrid layout
+    public static DistanceField compute(long[] blocked, int width, int height) {
+        DistanceField field = new DistanceField(width, height);
+        int[] squared = field.squared;
+        int words = SolidGrid.wordsPerRow(width);
+        
+        // Rows: distance to the nearest solid tile (or map edge) along the row
+        RowBands.forEach(height, (rowStart, rowEnd) -> {
+            for (int r = rowStart; r < rowEnd; r++) {
+                int base = r * width;
+                int last = -1; // the left edge acts as a wall at -1
+                for (int c = 0; c < width; c++) {
+                    if ((blocked[r * words + (c >>> 6)] & (1L << (c & 63))) != 0) last = c;
+                    squared[base + c] = c - last;
+                }
+                last = width;
+                for (int c = width - 1; c >= 0; c--) {
+                    if (squared[base + c] == 0) last = c;
+                    int d = Math.min(squared[base + c], last - c);
+                    squared[base + c] = d * d;
+                }
+            }
+        });
+        
+        // Columns: the same bands split the column range here
+        int[] maxima = new int[RowBands.bandCount(width)];
+        RowBands.forEach(width, (colStart, colEnd) -> {
+            int n = height + 2; // wall rows at -1 and height
+            double[] f = new double[n];
+            double[] d = new double[n];
+            int[] v = new int[n];
+            double[] z = new double[n + 1];
+            int max = 0;
+            for (int c = colStart; c < colEnd; c++) {
+                f[0] = 0;
+                f[n - 1] = 0;
+                for (int r = 0; r < height; r++) {
+                    f[r + 1] = squared[r * width + c];
+                }
+                transform(f, n, d, v, z);
+                for (int r = 0; r < height; r++) {
+                    int value = (int) d[r + 1];
+                    squared[r * width + c] = value;
+                    max = Math.max(max, value);
+                }
+            }
+            maxima[colStart / RowBands.BAND_ROWS] = max;
+        });
+        for (int max : maxima) {
+            field.maxSquared = Math.max(field.maxSquared, max);
+        }
+        return field;
+    }
+    
+    // 1D squared distance transform of sampled function f over [0, n)
+    private static void transform(double[] f, int n, double[] d, int[] v, double[] z) {
+        int k = 0;
+        v[0] = 0;
+        z[0] = Double.NEGATIVE_INFINITY;
+        z[1] = Double.POSITIVE_INFINITY;
+        for (int q = 1; q < n; q++) {
+            double s = intersect(f, q, v[k]);
+            while (s <= z[k]) {
+                k--;
+                s = intersect(f, q, v[k]);
+            }
+            k++;
+            v[k] = q;
+            z[k] = s;
+            z[k + 1] = Double.POSITIVE_INFINITY;
+        }
+        k = 0;
+        for (int q = 0; q < n; q++) {
+            while (z[k + 1] < q) k++;
+            double dq = q - v[k];
+            d[q] = dq * dq + f[v[k]];
+        }
+    }
+    
+    // Where the parabolas rooted at q and p cross
+    private static double intersect(double[] f, int q, int p) {
+        return ((f[q] + (double) q * q) - (f[p] + (double) p * p)) / (2.0 * q - 2.0 * p);
+    }
+    
+    public int getWidth() {
+        return width;
+    }
+    
+    public int getHeight() {
+        return height;
+    }
+    
+    public int squared(int row, int col) {
+        return squared[row * width + col];
+    }
+    
+    public double distance(int row, int col) {
+        return Math.sqrt(squared[row * width + col]);
+    }
+    
+    // Largest distance anywhere on the map
+    public double max() {
+        return Math.sqrt(maxSquared);
+    }
+}
@@ -0,0 +1,166 @@
+package dev.main;
+
+import java.awt.EventQueue;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+// Counters behind the performance HUD, also registered over JMX as
+// dev.main:type=EditorMetrics so long sessions can be scraped. Paint times cover
+// the last FRAMES frames. A daemon probe posts an event to the EDT every
+// PROBE_MILLIS and measures how long it waits there; while on the EDT the probe
+// runs the refresh callback, which updates the memory gauges (and the HUD).
+public class EditorMetrics implements EditorMetricsMBean {
+    public static final String NAME = "dev.main:type=EditorMetrics";
+    private static final int FRAMES = 256;
+    private static final long PROBE_MILLIS = 250;
+    
+    private final long[] frameNanos = new long[FRAMES]; // ring buffer
+    private long frames;
+    private volatile long lastFrameNanos, lastTiles, lastChunks;
+    private volatile long eventQueueNanos, maxEventQueueNanos;
+    private volatile long tileStoreBytes, undoLogBytes;
+    private volatile long loadNanos, loadBytes, saveNanos, saveBytes;
+    
+    public EditorMetrics(Runnable refresh) {
+        Thread probe = new Thread(() -> {
+            try {
+                while (true) {
+                    Thread.sleep(PROBE_MILLIS);
+                    long posted = System.nanoTime();
+                    EventQueue.invokeAndWait(() -> {
+                        long waited = System.nanoTime() - posted;
+                        eventQueueNanos = waited;
+                        maxEventQueueNanos = Math.max(maxEventQueueNanos, waited);
+                        refresh.run();
+                    });
+                }
+            } catch (InterruptedException | InvocationTargetException e) {
+                // the probe stops; the other counters keep working
+            }
+        }, "edt-latency-probe");
+        probe.setDaemon(true);
+        probe.start();
+    }
+    
+    // Publishes the counters on the platform MBean server; false if that failed,
+    // e.g. because another editor window already registered its own
+    public boolean register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(NAME));
+            return true;
+        } catch (JMException e) {
+            return false;
+        }
+    }
+    
+    public synchronized void framePainted(long nanos, long tiles, long chunks) {
+        frameNanos[(int) (frames++ % FRAMES)] = nanos;
+        lastFrameNanos = nanos;
+        lastTiles = tiles;
+        lastChunks = chunks;
+    }
+    
+    public void memoryMeasured(long tileStoreBytes, long undoLogBytes) {
+        this.tileStoreBytes = tileStoreBytes;
+        this.undoLogBytes = undoLogBytes;
+    }
+    
+    public void fileLoaded(long bytes, long nanos) {
+        loadBytes = bytes;
+        loadNanos = nanos;
+    }
+    
+    public void fileSaved(long bytes, long nanos) {
+        saveBytes = bytes;
+        saveNanos = nanos;
+    }
+    
+    @Override
+    public synchronized long getFrames() {
+        return frames;
+    }
+    
+    @Override
+    public double getLastPaintMillis() {
+        return lastFrameNanos / 1e6;
+    }
+    
+    @Override
+    public synchronized double getAveragePaintMillis() {
+        int count = (int) Math.min(frames, FRAMES);
+        if (count == 0) return 0;
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            total += frameNanos[i];
+        }
+        return total / 1e6 / count;
+    }
+    
+    @Override
+    public synchronized double getP99PaintMillis() {
+        int count = (int) Math.min(frames, FRAMES);
+        if (count == 0) return 0;
+        long[] sorted = Arrays.copyOf(frameNanos, count);
+        Arrays.sort(sorted);
+        return sorted[(int) Math.ceil(0.99 * count) - 1] / 1e6;
+    }
+    
+    @Override
+    public long getLastTilesDrawn() {
+        return lastTiles;
+    }
+    
+    @Override
+    public long getLastChunksDrawn() {
+        return lastChunks;
+    }
+    
+    @Override
+    public double getEventQueueLatencyMillis() {
+        return eventQueueNanos / 1e6;
+    }
+    
+    @Override
+    public double getMaxEventQueueLatencyMillis() {
+        return maxEventQueueNanos / 1e6;
+    }
+    
+    @Override
+    public long getTileStoreBytes() {
+        return tileStoreBytes;
+    }
+    
+    @Override
+    public long getUndoLogBytes() {
+        return undoLogBytes;
+    }
+    
+    @Override
+    public double getLastLoadMillis() {
+        return loadNanos / 1e6;
+    }
+    
+    @Override
+    public double getLastLoadBytesPerSecond() {
+        return loadNanos == 0 ? 0 : loadBytes * 1e9 / loadNanos;
+    }
+    
+    @Override
+    public double getLastSaveMillis() {
+        return saveNanos / 1e6;
+    }
+    
+    @Override
+    public double getLastSaveBytesPerSecond() {
+        return saveNanos == 0 ? 0 : saveBytes * 1e9 / saveNanos;
+    }
+    
+    @Override
+    public synchronized void reset() {
+        frames = 0;
+        maxEventQueueNanos = 0;
+    }
+}
@@ -0,0 +1,35 @@
+package dev.main;
+
+// JMX view of EditorMetrics; times in milliseconds, rates in bytes per second
+public interface EditorMetricsMBean {
+    long getFrames();
+    
+    double getLastPaintMillis();
+    
+    double getAveragePaintMillis();
+    
+    double getP99PaintMillis();
+    
+    long getLastTilesDrawn();
+    
+    long getLastChunksDrawn();
+    
+    double getEventQueueLatencyMillis();
+    
+    double getMaxEventQueueLatencyMillis();
+    
+    long getTileStoreBytes();
+    
+    long getUndoLogBytes();
+    
+    double getLastLoadMillis();
+    
+    double getLastLoadBytesPerSecond();
+    
+    double getLastSaveMillis();
+    
+    double getLastSaveBytesPerSecond();
+    
+    // Clears the frame window and the maximum event queue latency
+    void reset();
+}
@@ -0,0 +1,140 @@
+package dev.main;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+// The objects placed on a layer, bucketed in a spatial hash of CELL x CELL tile
+// cells, so drawing a viewport or picking under the mouse only looks at the few
+// buckets it overlaps, however many objects the map holds. Only occupied cells
+// have a bucket.
+public class EntityIndex {
+    public static final int CELL = 8; // tiles per cell side
+    
+    private final Map<Long, List<MapEntity>> cells = new HashMap<>();
+    private int size;
+    
+    private static long key(int cellX, int cellY) {
+        return ((long) cellY << 32) | (cellX & 0xFFFFFFFFL);
+    }
+    
+    private static int cellOf(double coordinate) {
+        return (int) Math.floor(coordinate / CELL);
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public void add(MapEntity entity) {
+        cells.computeIfAbsent(key(cellOf(entity.x), cellOf(entity.y)), k -> new ArrayList<>()).add(entity);
+        size++;
+    }
+    
+    public boolean remove(MapEntity entity) {
+        long key = key(cellOf(entity.x), cellOf(entity.y));
+        List<MapEntity> bucket = cells.get(key);
+        if (bucket == null || !bucket.remove(entity)) return false;
+        if (bucket.isEmpty()) cells.remove(key);
+        size--;
+        return true;
+    }
+    
+    public boolean contains(MapEntity entity) {
+        List<MapEntity> bucket = cells.get(key(cellOf(entity.x), cellOf(entity.y)));
+        return bucket != null && bucket.contains(entity);
+    }
+    
+    public void move(MapEntity entity, double x, double y) {
+        boolean sameCell = cellOf(x) == cellOf(entity.x) && cellOf(y) == cellOf(entity.y);
+        if (sameCell || !remove(entity)) {
+            entity.x = x;
+            entity.y = y;
+            return;
+        }
+        entity.x = x;
+        entity.y = y;
+        add(entity);
+    }
+    
+    public void clear() {
+        cells.clear();
+        size = 0;
+    }
+    
+    // Every entity whose position lies inside area (tile units)
+    public void forEachIn(Rectangle2D area, Consumer<MapEntity> action) {
+        int x0 = cellOf(area.getMinX());
+        int x1 = cellOf(area.getMaxX());
+        int y0 = cellOf(area.getMinY());
+        int y1 = cellOf(area.getMaxY());
+        // A huge area has more cells than buckets; walk the buckets instead
+        if ((long) (x1 - x0 + 1) * (y1 - y0 + 1) > cells.size()) {
+            for (List<MapEntity> bucket : cells.values()) {
+                forEachIn(bucket, area, action);
+            }
+            return;
+        }
+        for (int cy = y0; cy <= y1; cy++) {
+            for (int cx = x0; cx <= x1; cx++) {
+                List<MapEntity> bucket = cells.get(key(cx, cy));
+                if (bucket != null) forEachIn(bucket, area, action);
+            }
+        }
+    }
+    
+    private static void forEachIn(List<MapEntity> bucket, Rectangle2D area, Consumer<MapEntity> action) {
+        for (MapEntity entity : bucket) {
+            if (entity.x >= area.getMinX() && entity.x < area.getMaxX()
+                    && entity.y >= area.getMinY() && entity.y < area.getMaxY()) {
+                action.accept(entity);
+            }
+        }
+    }
+    
+    public void forEach(Consumer<MapEntity> action) {
+        for (List<MapEntity> bucket : cells.values()) {
+            bucket.forEach(action);
+        }
+    }
+    
+    // Nearest entity within radius of (x, y), or null
+    public MapEntity hitTest(double x, double y, double radius) {
+        MapEntity[] best = {null};
+        double[] bestDistance = {radius * radius};
+        forEachIn(new Rectangle2D.Double(x - radius, y - radius, 2 * radius, 2 * radius), entity -> {
+            double dx = entity.x - x;
+            double dy = entity.y - y;
+            double distance = dx * dx + dy * dy;
+            if (distance <= bestDistance[0]) {
+                bestDistance[0] = distance;
+                best[0] = entity;
+            }
+        });
+        return best[0];
+    }
+    
+    // Moves every entity by (dx, dy) and drops the ones that end up outside a
+    // width x height map; those keep their old position and are returned
+    public List<MapEntity> shift(double dx, double dy, int width, int height) {
+        List<MapEntity> all = new ArrayList<>(size);
+        forEach(all::add);
+        clear();
+        List<MapEntity> removed = new ArrayList<>();
+        for (MapEntity entity : all) {
+            double x = entity.x + dx;
+            double y = entity.y + dy;
+            if (x < 0 || y < 0 || x >= width || y >= height) {
+                removed.add(entity);
+            } else {
+                entity.x = x;
+                entity.y = y;
+                add(entity);
+            }
+        }
+        return removed;
+    }
+}
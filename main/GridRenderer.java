@@ -0,0 +1,87 @@
+package dev.main;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+
+// Grid lines over the clip only. Minor lines repeat every minor tiles and heavier
+// major lines every major tiles (0 turns a set off). Each set fades out as its
+// lines close in on screen: full strength FADE_END px apart, gone at FADE_START,
+// so a zoomed-out view draws no more lines than fit on the screen. Colours and
+// strokes are cached and only rebuilt when the zoom or style changes.
+public class GridRenderer {
+    private static final double FADE_START = 4, FADE_END = 16;
+    
+    private int minor = 1, major = 0;
+    private Color color = Color.BLACK;
+    private final Style[] styles = new Style[2]; // minor, major
+    
+    private static class Style {
+        final int alpha;
+        final double tilePixels;
+        final Color color;
+        final BasicStroke stroke;
+        
+        Style(int alpha, double tilePixels, Color color, BasicStroke stroke) {
+            this.alpha = alpha;
+            this.tilePixels = tilePixels;
+            this.color = color;
+            this.stroke = stroke;
+        }
+    }
+    
+    public int getMinor() {
+        return minor;
+    }
+    
+    public int getMajor() {
+        return major;
+    }
+    
+    public void setSpacing(int minor, int major) {
+        if (minor < 0 || major < 0) throw new IllegalArgumentException("Grid spacing cannot be negative");
+        this.minor = minor;
+        this.major = major;
+    }
+    
+    public void setColor(Color color) {
+        this.color = color;
+        styles[0] = styles[1] = null;
+    }
+    
+    // area is in g's units (tileSize per tile) and should already be cut to the clip
+    public void paint(Graphics2D g, Rectangle area, int tileSize, double tilePixels) {
+        if (area.isEmpty()) return;
+        drawSet(g, area, 0, minor, 1, tileSize, tilePixels);
+        drawSet(g, area, 1, major, 2, tileSize, tilePixels);
+    }
+    
+    private void drawSet(Graphics2D g, Rectangle area, int set, int spacing, int lineWidth,
+                         int tileSize, double tilePixels) {
+        if (spacing <= 0) return;
+        double pitch = spacing * tilePixels; // on screen
+        int alpha = (int) Math.round(255 * Math.max(0, Math.min(1, (pitch - FADE_START) / (FADE_END - FADE_START))));
+        if (alpha == 0) return;
+        
+        Style style = styles[set];
+        if (style == null || style.alpha != alpha || style.tilePixels != tilePixels) {
+            // Line width stays in screen pixels whatever the zoom
+            style = new Style(alpha, tilePixels, new Color(color.getRed(), color.getGreen(), color.getBlue(), alpha),
+                new BasicStroke((float) (lineWidth * tileSize / tilePixels)));
+            styles[set] = style;
+        }
+        Graphics2D grid = (Graphics2D) g.create();
+        grid.setColor(style.color);
+        grid.setStroke(style.stroke);
+        int period = spacing * tileSize;
+        int right = area.x + area.width, bottom = area.y + area.height;
+        for (int x = (area.x + period - 1) / period * period; x <= right; x += period) {
+            grid.drawLine(x, area.y, x, bottom);
+        }
+        for (int y = (area.y + period - 1) / period * period; y <= bottom; y += period) {
+            grid.drawLine(area.x, y, right, y);
+        }
+        grid.dispose();
+    }
+}
@@ -0,0 +1,202 @@
+package dev.main;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Counts of each tile value in one layer, plus the extent of its painted (non-zero)
+// tiles, kept current while the layer is edited. Counts are held per row band:
+// a single tile write adjusts them in O(1), as does each write of a short batch,
+// and a bulk edit recounts only the bands it touched, in parallel, then corrects
+// the totals by the bands' differences.
+// Painted extent is tracked per row; erasing the first or last painted tile of a
+// row rescans that row only.
+public class LayerStats {
+    private static final int SMALL = 256; // values [0, SMALL) are counted in arrays
+    
+    private final int width, height;
+    private final int[][] bandSmall;                 // [band][value]
+    private final List<Map<Integer, Integer>> bandOther; // per band, values outside [0, SMALL)
+    private final long[] totalSmall = new long[SMALL];
+    private final Map<Integer, Long> totalOther = new HashMap<>();
+    private final int[] rowCount; // non-zero tiles per row
+    private final int[] rowMin;   // first non-zero column, width when none
+    private final int[] rowMax;   // last non-zero column, -1 when none
+    
+    public LayerStats(TileStorage storage) {
+        width = storage.getWidth();
+        height = storage.getHeight();
+        int bands = RowBands.bandCount(height);
+        bandSmall = new int[bands][SMALL];
+        bandOther = new ArrayList<>(Collections.nCopies(bands, Collections.emptyMap()));
+        rowCount = new int[height];
+        rowMin = new int[height];
+        rowMax = new int[height];
+        recount(storage, new Rectangle(0, 0, width, height));
+    }
+    
+    // One tile went from oldValue to newValue; storage already holds the new value
+    public void tileChanged(TileStorage storage, int row, int col, int oldValue, int newValue) {
+        if (oldValue == newValue) return;
+        int band = row / RowBands.BAND_ROWS;
+        adjust(band, oldValue, -1);
+        adjust(band, newValue, 1);
+        
+        if (oldValue == 0) {
+            rowCount[row]++;
+            rowMin[row] = Math.min(rowMin[row], col);
+            rowMax[row] = Math.max(rowMax[row], col);
+        } else if (newValue == 0) {
+            rowCount[row]--;
+            if (col == rowMin[row] || col == rowMax[row]) {
+                int[] values = new int[width];
+                storage.readRow(row, values);
+                scanRow(row, values);
+            }
+        }
+    }
+    
+    // A batch of tile writes, as row, col, old value, new value in the order they were
+    // made; storage holds the values after the last one. Rows whose extent may have
+    // shrunk are rescanned once, after all writes, since the storage shows the end state.
+    public void tilesChanged(TileStorage storage, int[] writes) {
+        int[] rescan = null;
+        int rescans = 0;
+        for (int i = 0; i < writes.length; i += 4) {
+            int row = writes[i], col = writes[i + 1], oldValue = writes[i + 2], newValue = writes[i + 3];
+            if (oldValue == newValue) continue;
+            int band = row / RowBands.BAND_ROWS;
+            adjust(band, oldValue, -1);
+            adjust(band, newValue, 1);
+            
+            if (oldValue == 0) {
+                rowCount[row]++;
+                rowMin[row] = Math.min(rowMin[row], col);
+                rowMax[row] = Math.max(rowMax[row], col);
+            } else if (newValue == 0) {
+                rowCount[row]--;
+                if (col == rowMin[row] || col == rowMax[row]) {
+                    if (rescan == null) rescan = new int[writes.length / 4];
+                    rescan[rescans++] = row;
+                }
+            }
+        }
+        int[] values = rescans == 0 ? null : new int[width];
+        for (int i = 0; i < rescans; i++) {
+            storage.readRow(rescan[i], values);
+            scanRow(rescan[i], values);
+        }
+    }
+    
+    private void adjust(int band, int value, int delta) {
+        if (value >= 0 && value < SMALL) {
+            bandSmall[band][value] += delta;
+            totalSmall[value] += delta;
+            return;
+        }
+        if (bandOther.get(band).isEmpty()) bandOther.set(band, new HashMap<>());
+        Map<Integer, Integer> other = bandOther.get(band);
+        if (other.merge(value, delta, Integer::sum) == 0) other.remove(value);
+        if (totalOther.merge(value, (long) delta, Long::sum) == 0) totalOther.remove(value);
+    }
+    
+    // Recounts every band that region overlaps after a bulk edit
+    public void recount(TileStorage storage, Rectangle region) {
+        Rectangle area = region.intersection(new Rectangle(0, 0, width, height));
+        if (area.isEmpty()) return;
+        int firstBand = area.y / RowBands.BAND_ROWS;
+        int lastBand = (area.y + area.height - 1) / RowBands.BAND_ROWS;
+        int[][] freshSmall = new int[lastBand - firstBand + 1][];
+        List<Map<Integer, Integer>> freshOther = new ArrayList<>(Collections.nCopies(freshSmall.length, null));
+        
+        RowBands.forEach(firstBand * RowBands.BAND_ROWS,
+                Math.min(height, (lastBand + 1) * RowBands.BAND_ROWS), (rowStart, rowEnd) -> {
+            int[] small = new int[SMALL];
+            Map<Integer, Integer> other = new HashMap<>();
+            int[] values = new int[width];
+            for (int r = rowStart; r < rowEnd; r++) {
+                storage.readRow(r, values);
+                for (int c = 0; c < width; c++) {
+                    int value = values[c];
+                    if (value >= 0 && value < SMALL) small[value]++;
+                    else other.merge(value, 1, Integer::sum);
+                }
+                scanRow(r, values);
+            }
+            int index = rowStart / RowBands.BAND_ROWS - firstBand;
+            freshSmall[index] = small;
+            freshOther.set(index, other.isEmpty() ? Collections.emptyMap() : other);
+        });
+        
+        // Totals move by the difference between each band's old and new counts
+        for (int i = 0; i < freshSmall.length; i++) {
+            int band = firstBand + i;
+            for (int value = 0; value < SMALL; value++) {
+                totalSmall[value] += freshSmall[i][value] - bandSmall[band][value];
+            }
+            for (Map.Entry<Integer, Integer> entry : bandOther.get(band).entrySet()) {
+                if (totalOther.merge(entry.getKey(), (long) -entry.getValue(), Long::sum) == 0) {
+                    totalOther.remove(entry.getKey());
+                }
+            }
+            for (Map.Entry<Integer, Integer> entry : freshOther.get(i).entrySet()) {
+                totalOther.merge(entry.getKey(), (long) entry.getValue(), Long::sum);
+            }
+            bandSmall[band] = freshSmall[i];
+            bandOther.set(band, freshOther.get(i));
+        }
+    }
+    
+    private void scanRow(int row, int[] values) {
+        int count = 0, min = width, max = -1;
+        for (int c = 0; c < width; c++) {
+            if (values[c] != 0) {
+                count++;
+                if (c < min) min = c;
+                max = c;
+            }
+        }
+        rowCount[row] = count;
+        rowMin[row] = min;
+        rowMax[row] = max;
+    }
+    
+    public int getWidth() {
+        return width;
+    }
+    
+    public int getHeight() {
+        return height;
+    }
+    
+    public long count(int value) {
+        if (value >= 0 && value < SMALL) return totalSmall[value];
+        return totalOther.getOrDefault(value, 0L);
+    }
+    
+    // Every value present in the layer with its count, by value
+    public Map<Integer, Long> counts() {
+        Map<Integer, Long> counts = new TreeMap<>(totalOther);
+        for (int value = 0; value < SMALL; value++) {
+            if (totalSmall[value] != 0) counts.put(value, totalSmall[value]);
+        }
+        return counts;
+    }
+    
+    // Smallest rectangle (x = col, y = row) holding every non-zero tile, or null
+    public Rectangle paintedBounds() {
+        int top = -1, bottom = -1, left = width, right = -1;
+        for (int r = 0; r < height; r++) {
+            if (rowCount[r] == 0) continue;
+            if (top < 0) top = r;
+            bottom = r;
+            left = Math.min(left, rowMin[r]);
+            right = Math.max(right, rowMax[r]);
+        }
+        return top < 0 ? null : new Rectangle(left, top, right - left + 1, bottom - top + 1);
+    }
+}
@@ -0,0 +1,205 @@
+package dev.main;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Headless entry point for batch operations over map files and folders:
+//   java dev.main.MapBatch replace <from> <to> [--layers 0,2] [--region col,row,w,h] [--out dir] <map-or-folder>...
+//   java dev.main.MapBatch validate [--rules name,...] <map-or-folder>...
+// validate exits with 1 when any map has issues or cannot be read, for use as a build gate.
+public class MapBatch {
+    
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            usage();
+            System.exit(2);
+        }
+        
+        try {
+            int status;
+            switch (args[0]) {
+                case "replace":
+                    status = replace(args);
+                    break;
+                case "validate":
+                    status = validate(args);
+                    break;
+                default:
+                    System.err.println("Unknown command: " + args[0]);
+                    usage();
+                    status = 2;
+                    break;
+            }
+            System.exit(status);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            usage();
+            System.exit(2);
+        }
+    }
+    
+    private static void usage() {
+        System.err.println("Usage: MapBatch replace <from> <to> [--layers 0,1,2] "
+            + "[--region col,row,width,height] [--out dir] <map-or-folder>...");
+        System.err.println("       MapBatch validate [--rules " + ruleNames() + "] <map-or-folder>...");
+    }
+    
+    private static int replace(String[] args) {
+        if (args.length < 4) {
+            throw new IllegalArgumentException("replace needs <from> <to> and at least one map");
+        }
+        int from = Integer.parseInt(args[1]);
+        int to = Integer.parseInt(args[2]);
+        int layerMask = -1;
+        int highestLayer = -1; // of --layers; checked against each map's layer count
+        Rectangle region = null;
+        File outDir = null;
+        List<File> inputs = new ArrayList<>();
+        
+        for (int i = 3; i < args.length; i++) {
+            switch (args[i]) {
+                case "--layers":
+                    layerMask = 0;
+                    for (String layer : requireValue(args, ++i).split(",")) {
+                        int index = Integer.parseInt(layer.trim());
+                        if (index < 0 || index >= MapLayer.MAX_LAYERS) {
+                            throw new IllegalArgumentException("--layers: no layer " + index
+                                + " (0 to " + (MapLayer.MAX_LAYERS - 1) + ")");
+                        }
+                        layerMask |= 1 << index;
+                        highestLayer = Math.max(highestLayer, index);
+                    }
+                    break;
+                case "--region":
+                    String[] parts = requireValue(args, ++i).split(",");
+                    if (parts.length != 4) {
+                        throw new IllegalArgumentException("--region expects col,row,width,height");
+                    }
+                    region = new Rectangle(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()),
+                        Integer.parseInt(parts[2].trim()), Integer.parseInt(parts[3].trim()));
+                    break;
+                case "--out":
+                    outDir = new File(requireValue(args, ++i));
+                    break;
+                default:
+                    inputs.add(new File(args[i]));
+                    break;
+            }
+        }
+        
+        int failures = 0;
+        for (File file : expand(inputs)) {
+            MapData map;
+            try {
+                map = MapFiles.read(file);
+            } catch (IOException | RuntimeException e) {
+                System.err.println(file.getPath() + ": " + e.getMessage());
+                failures++;
+                continue;
+            }
+            // Before anything of this map is written; maps already done stay done
+            if (highestLayer >= map.layers.size()) {
+                throw new IllegalArgumentException("--layers: " + file.getPath() + " has no layer " + highestLayer
+                    + " (0 to " + (map.layers.size() - 1) + ")");
+            }
+            try {
+                Rectangle area = region != null ? region : new Rectangle(0, 0, map.width, map.height);
+                int mask = layerMask == -1 ? TileReplacer.allLayers(map.layers.size()) : layerMask;
+                TileReplacer.Result result = TileReplacer.replace(
+                    map.storages(), from, to, mask, area, false);
+                
+                File target = outDir != null ? new File(outDir, file.getName()) : file;
+                if (result.total() > 0 || outDir != null) {
+                    MapFiles.write(map, target);
+                }
+                
+                StringBuilder line = new StringBuilder(file.getPath()).append(':');
+                for (int layer = 0; layer < result.counts.length; layer++) {
+                    line.append(' ').append(map.layers.get(layer).getName()).append('=').append(result.counts[layer]);
+                }
+                System.out.println(line);
+            } catch (IOException | RuntimeException e) {
+                System.err.println(file.getPath() + ": " + e.getMessage());
+                failures++;
+            }
+        }
+        return failures == 0 ? 0 : 1;
+    }
+    
+    private static int validate(String[] args) {
+        List<ValidationRule> rules = ValidationRules.defaults();
+        List<File> inputs = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--rules")) {
+                rules = ValidationRules.byName(requireValue(args, ++i));
+            } else {
+                inputs.add(new File(args[i]));
+            }
+        }
+        if (inputs.isEmpty()) {
+            throw new IllegalArgumentException("validate needs at least one map");
+        }
+        
+        int failures = 0;
+        int issues = 0;
+        for (File file : expand(inputs)) {
+            try {
+                List<ValidationIssue> found = new Validator(rules).validate(MapFiles.read(file));
+                for (ValidationIssue issue : found) {
+                    System.out.println(file.getPath() + ": " + issue);
+                }
+                if (found.isEmpty()) {
+                    System.out.println(file.getPath() + ": ok");
+                }
+                issues += found.size();
+            } catch (IOException | RuntimeException e) {
+                System.err.println(file.getPath() + ": " + e.getMessage());
+                failures++;
+            }
+        }
+        System.out.println(issues + " issues, " + failures + " unreadable");
+        return issues == 0 && failures == 0 ? 0 : 1;
+    }
+    
+    private static String ruleNames() {
+        StringBuilder names = new StringBuilder();
+        for (ValidationRule rule : ValidationRules.defaults()) {
+            if (names.length() > 0) names.append(',');
+            names.append(rule.getName());
+        }
+        return names.toString();
+    }
+    
+    private static String requireValue(String[] args, int index) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + args[index - 1]);
+        }
+        return args[index];
+    }
+    
+    // Folders expand to the TXT and JSON maps directly inside them
+    static List<File> expand(List<File> inputs) {
+        List<File> files = new ArrayList<>();
+        for (File input : inputs) {
+            if (input.isDirectory()) {
+                File[] children = input.listFiles((dir, name) -> {
+                    String lower = name.toLowerCase();
+                    return lower.endsWith(".txt") || lower.endsWith(".json");
+                });
+                if (children != null) {
+                    Arrays.sort(children);
+                    for (File child : children) {
+                        files.add(child);
+                    }
+                }
+            } else {
+                files.add(input);
+            }
+        }
+        return files;
+    }
+}
@@ -0,0 +1,53 @@
+package dev.main;
+
+import java.util.List;
+
+// Plain map contents as read from or written to disk, independent of the editor UI
+public class MapData {
+    public final int width;
+    public final int height;
+    public final List<MapLayer> layers; // bottom to top
+    public int tileSize = 64;
+    public AutoTiler autoTiler;         // optional; rebuilt from the bottom layer when null
+    public boolean exportOutlines;      // write collision outlines next to the rectangles
+    public boolean exportDistance;      // write the distance field with JSON saves
+    public int pvsRadius;               // view radius for exported visibility sets; 0 writes none
+    public int pvsChunkSize = 16;
+    public Visibility.Pvs pvs;          // visibility sets already computed for these tiles; null computes them on write
+    
+    public MapData(int width, int height, List<MapLayer> layers) {
+        this.width = width;
+        this.height = height;
+        this.layers = layers;
+    }
+    
+    public MapData(int width, int height) {
+        this(width, height, MapLayer.createDefaultLayers(width, height));
+    }
+    
+    public TileStorage[] storages() {
+        TileStorage[] storages = new TileStorage[layers.size()];
+        for (int i = 0; i < storages.length; i++) {
+            storages[i] = layers.get(i).getStorage();
+        }
+        return storages;
+    }
+    
+    // Solid (1) tiles of all layers as one row-major bitset in SolidGrid layout
+    public long[] combinedSolid() {
+        int words = SolidGrid.wordsPerRow(width);
+        long[] blocked = new long[words * height];
+        RowBands.forEach(height, (rowStart, rowEnd) -> {
+            int[] row = new int[width];
+            for (MapLayer layer : layers) {
+                for (int r = rowStart; r < rowEnd; r++) {
+                    layer.getStorage().readRow(r, row);
+                    for (int c = 0; c < width; c++) {
+                        if (row[c] == 1) blocked[r * words + (c >>> 6)] |= 1L << (c & 63);
+                    }
+                }
+            }
+        });
+        return blocked;
+    }
+}
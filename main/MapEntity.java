@@ -0,0 +1,40 @@
+package dev.main;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// A placed object: position in tile units (fractions allowed), a type name and
+// free-form string properties. Positions only change through EntityIndex.move
+// so the index stays consistent.
+public class MapEntity {
+    double x, y;
+    private String type;
+    private final Map<String, String> properties = new LinkedHashMap<>();
+    
+    public MapEntity(double x, double y, String type) {
+        this.x = x;
+        this.y = y;
+        this.type = type;
+    }
+    
+    public double getX() {
+        return x;
+    }
+    
+    public double getY() {
+        return y;
+    }
+    
+    public String getType() {
+        return type;
+    }
+    
+    public void setType(String type) {
+        this.type = type;
+    }
+    
+    // Live map in insertion order
+    public Map<String, String> getProperties() {
+        return properties;
+    }
+}
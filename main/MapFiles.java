@@ -0,0 +1,901 @@
+package dev.main;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// TXT and JSON map formats. Used by the editor and by the headless batch tools.
+public final class MapFiles {
+    private MapFiles() {
+    }
+    
+    public static boolean isJson(File file) {
+        return file.getName().toLowerCase().endsWith(".json");
+    }
+    
+    public static MapData read(File file) throws IOException {
+        return isJson(file) ? readJson(file) : readTxt(file);
+    }
+    
+    public static void write(MapData map, File file) throws IOException {
+        if (isJson(file)) {
+            writeJson(map, file);
+        } else {
+            writeTxt(map, file);
+        }
+    }
+    
+    private static AutoTiler autoTiler(MapData map) {
+        if (map.autoTiler == null) {
+            map.autoTiler = new AutoTiler();
+            map.autoTiler.rebuild(map.layers.get(0).getStorage());
+        }
+        return map.autoTiler;
+    }
+    
+    // Default name for a layer saved without one (older files)
+    static String defaultLayerName(int index) {
+        return index < MapLayer.DEFAULT_NAMES.length ? MapLayer.DEFAULT_NAMES[index] : "layer" + index;
+    }
+    
+    static String colorToHex(Color color) {
+        return String.format("#%06x", color.getRGB() & 0xFFFFFF);
+    }
+    
+    static String storageName(TileStorage.Type type) {
+        return type.name().toLowerCase();
+    }
+    
+    static TileStorage.Type parseStorage(String name) {
+        return TileStorage.Type.valueOf(name.trim().toUpperCase());
+    }
+    
+    public static void writeTxt(MapData map, File file) throws IOException {
+        AutoTiler autoTiler = autoTiler(map);
+        int[] row = new int[map.width];
+        try (PrintWriter writer = new PrintWriter(file)) {
+            // Write width and height as first line
+            writer.println(map.width + " " + map.height);
+            
+            // Write each layer; the header carries the layer settings as key=value pairs
+            for (int layer = 0; layer < map.layers.size(); layer++) {
+                MapLayer mapLayer = map.layers.get(layer);
+                TileStorage storage = mapLayer.getStorage();
+                writer.println("LAYER:" + layer
+                    + " name=" + MapLayer.sanitizeName(mapLayer.getName())
+                    + " storage=" + storageName(storage.getType())
+                    + " visible=" + mapLayer.isVisible()
+                    + " locked=" + mapLayer.isLocked()
+                    + " opacity=" + mapLayer.getOpacity()
+                    + " color=" + colorToHex(mapLayer.getColor())
+                    + " solid=" + colorToHex(mapLayer.getSolidColor()));
+                for (int i = 0; i < map.height; i++) {
+                    storage.readRow(i, row);
+                    for (int j = 0; j < map.width; j++) {
+                        writer.print(row[j]);
+                        if (j < map.width - 1) writer.print(" ");
+                    }
+                    writer.println();
+                }
+            }
+            
+            // Derived auto-tile IDs of the bottom layer, -1 where walkable
+            writer.println("AUTOTILE");
+            for (int i = 0; i < map.height; i++) {
+                for (int j = 0; j < map.width; j++) {
+                    writer.print(autoTiler.getId(i, j));
+                    if (j < map.width - 1) writer.print(" ");
+                }
+                writer.println();
+            }
+            
+            // Merged collision rectangles "x y w h" per layer, in tiles, then the outlines
+            for (int layer = 0; layer < map.layers.size(); layer++) {
+                TileStorage storage = map.layers.get(layer).getStorage();
+                List<Rectangle> rects = CollisionCompiler.rectangles(storage);
+                List<CollisionCompiler.Outline> outlines = map.exportOutlines
+                    ? CollisionCompiler.outlines(storage) : null;
+                writer.println("COLLISION:" + layer + " rects=" + rects.size()
+                    + (outlines != null ? " outlines=" + outlines.size() : ""));
+                for (Rectangle rect : rects) {
+                    writer.println(rect.x + " " + rect.y + " " + rect.width + " " + rect.height);
+                }
+                if (outlines != null) {
+                    for (CollisionCompiler.Outline outline : outlines) {
+                        writer.print(outline.hole ? "HOLE" : "OUTER");
+                        for (int point : outline.points) {
+                            writer.print(" " + point);
+                        }
+                        writer.println();
+                    }
+                }
+            }
+            
+            // Placed objects per layer: "x y type key=value ...", escaped so each stays one token
+            for (int layer = 0; layer < map.layers.size(); layer++) {
+                EntityIndex entities = map.layers.get(layer).getEntities();
+                if (entities.size() == 0) continue;
+                writer.println("ENTITIES:" + layer + " count=" + entities.size());
+                entities.forEach(entity -> {
+                    StringBuilder line = new StringBuilder();
+                    line.append(formatCoordinate(entity.getX())).append(' ')
+                        .append(formatCoordinate(entity.getY())).append(' ')
+                        .append(escapeToken(entity.getType()));
+                    for (Map.Entry<String, String> property : entity.getProperties().entrySet()) {
+                        line.append(' ').append(escapeToken(property.getKey()))
+                            .append('=').append(escapeToken(property.getValue()));
+                    }
+                    writer.println(line);
+                });
+            }
+            
+            // Potentially-visible chunks, one hex window per chunk, a line per chunk row
+            if (map.pvsRadius > 0) {
+                Visibility.Pvs pvs = computePvs(map);
+                writer.println("PVS chunk=" + pvs.chunkSize + " radius=" + pvs.radius
+                    + " reach=" + pvs.reach + " chunks=" + pvs.chunksX + "x" + pvs.chunksY);
+                for (int cy = 0; cy < pvs.chunksY; cy++) {
+                    for (int cx = 0; cx < pvs.chunksX; cx++) {
+                        if (cx > 0) writer.print(" ");
+                        writer.print(pvsHex(pvs.bits[cy * pvs.chunksX + cx]));
+                    }
+                    writer.println();
+                }
+            }
+            if (writer.checkError()) {
+                throw new IOException("Write failed: " + file);
+            }
+        }
+    }
+    
+    public static void writeJson(MapData map, File file) throws IOException {
+        AutoTiler autoTiler = autoTiler(map);
+        int[] row = new int[map.width];
+        try (PrintWriter writer = new PrintWriter(file)) {
+            writer.println("{");
+            writer.println("  \"width\": " + map.width + ",");
+            writer.println("  \"height\": " + map.height + ",");
+            writer.println("  \"tileSize\": " + map.tileSize + ",");
+            
+            // Layer settings, bottom to top; tiles are keyed by name under "layers"
+            writer.println("  \"layerInfo\": [");
+            for (int layer = 0; layer < map.layers.size(); layer++) {
+                MapLayer mapLayer = map.layers.get(layer);
+                writer.print("    {\"name\": " + jsonString(mapLayer.getName())
+                    + ", \"storage\": \"" + storageName(mapLayer.getStorage().getType()) + "\""
+                    + ", \"visible\": " + mapLayer.isVisible()
+                    + ", \"locked\": " + mapLayer.isLocked()
+                    + ", \"opacity\": " + mapLayer.getOpacity()
+                    + ", \"color\": \"" + colorToHex(mapLayer.getColor()) + "\""
+                    + ", \"solid\": \"" + colorToHex(mapLayer.getSolidColor()) + "\"}");
+                if (layer < map.layers.size() - 1) writer.println(",");
+                else writer.println();
+            }
+            writer.println("  ],");
+            writer.println("  \"layers\": {");
+            
+            for (int layer = 0; layer < map.layers.size(); layer++) {
+                TileStorage storage = map.layers.get(layer).getStorage();
+                writer.println("    " + jsonString(map.layers.get(layer).getName()) + ": [");
+                
+                for (int i = 0; i < map.height; i++) {
+                    storage.readRow(i, row);
+                    writer.print("      [");
+                    for (int j = 0; j < map.width; j++) {
+                        writer.print(row[j]);
+                        if (j < map.width - 1) writer.print(", ");
+                    }
+                    writer.print("]");
+                    if (i < map.height - 1) writer.println(",");
+                    else writer.println();
+                }
+                
+                writer.print("    ]");
+                if (layer < map.layers.size() - 1) writer.println(",");
+                else writer.println();
+            }
+            
+            writer.println("  },");
+            
+            // Derived auto-tile IDs of the bottom layer, -1 where walkable
+            writer.println("  \"autotile\": [");
+            for (int i = 0; i < map.height; i++) {
+                writer.print("    [");
+                for (int j = 0; j < map.width; j++) {
+                    writer.print(autoTiler.getId(i, j));
+                    if (j < map.width - 1) writer.print(", ");
+                }
+                writer.print("]");
+                if (i < map.height - 1) writer.println(",");
+                else writer.println();
+            }
+            writer.println("  ],");
+            
+            // Merged collision rectangles [x, y, w, h] per layer, in tiles
+            writer.println("  \"collision\": {");
+            for (int layer = 0; layer < map.layers.size(); layer++) {
+                TileStorage storage = map.layers.get(layer).getStorage();
+                writer.println("    " + jsonString(map.layers.get(layer).getName()) + ": {");
+                List<Rectangle> rects = CollisionCompiler.rectangles(storage);
+                writer.print("      \"rects\": [");
+                for (int i = 0; i < rects.size(); i++) {
+                    Rectangle rect = rects.get(i);
+                    if (i > 0) writer.print(", ");
+                    writer.print("[" + rect.x + ", " + rect.y + ", " + rect.width + ", " + rect.height + "]");
+                }
+                writer.print("]");
+                if (map.exportOutlines) {
+                    writer.println(",");
+                    writeJsonOutlines(writer, CollisionCompiler.outlines(storage));
+                } else {
+                    writer.println();
+                }
+                writer.print("    }");
+                if (layer < map.layers.size() - 1) writer.println(",");
+                else writer.println();
+            }
+            writer.print("  }");
+            
+            // Clearance: distance in tiles from each tile to the nearest solid tile of
+            // any layer (the map edge counts as solid), 0 on solid tiles
+            if (map.exportDistance) {
+                DistanceField field = DistanceField.compute(map.combinedSolid(), map.width, map.height);
+                writer.println(",");
+                writer.println("  \"distance\": [");
+                for (int i = 0; i < map.height; i++) {
+                    writer.print("    [");
+                    for (int j = 0; j < map.width; j++) {
+                        writer.print(formatDistance(field.distance(i, j)));
+                        if (j < map.width - 1) writer.print(", ");
+                    }
+                    writer.print("]");
+                    if (i < map.height - 1) writer.println(",");
+                    else writer.println();
+                }
+                writer.print("  ]");
+            }
+            
+            // Potentially-visible chunks: per chunk a window of (2 * reach + 1)^2 bits
+            // centred on it, row-major, as 64-bit words in hex
+            if (map.pvsRadius > 0) {
+                Visibility.Pvs pvs = computePvs(map);
+                writer.println(",");
+                writer.println("  \"pvs\": {\"chunkSize\": " + pvs.chunkSize + ", \"radius\": " + pvs.radius
+                    + ", \"reach\": " + pvs.reach + ", \"chunksX\": " + pvs.chunksX
+                    + ", \"chunksY\": " + pvs.chunksY + ", \"chunks\": [");
+                for (int cy = 0; cy < pvs.chunksY; cy++) {
+                    writer.print("    [");
+                    for (int cx = 0; cx < pvs.chunksX; cx++) {
+                        if (cx > 0) writer.print(", ");
+                        writer.print("\"" + pvsHex(pvs.bits[cy * pvs.chunksX + cx]) + "\"");
+                    }
+                    writer.print("]");
+                    if (cy < pvs.chunksY - 1) writer.println(",");
+                    else writer.println();
+                }
+                writer.print("  ]}");
+            }
+            
+            // Placed objects per layer, keyed by layer name; positions in tiles
+            boolean anyEntities = false;
+            for (MapLayer mapLayer : map.layers) {
+                anyEntities |= mapLayer.getEntities().size() > 0;
+            }
+            if (anyEntities) {
+                writer.println(",");
+                writer.println("  \"entities\": {");
+                boolean firstLayer = true;
+                for (MapLayer mapLayer : map.layers) {
+                    EntityIndex entities = mapLayer.getEntities();
+                    if (entities.size() == 0) continue;
+                    if (!firstLayer) writer.println(",");
+                    firstLayer = false;
+                    writer.println("    " + jsonString(mapLayer.getName()) + ": [");
+                    int[] written = {0};
+                    entities.forEach(entity -> {
+                        StringBuilder object = new StringBuilder("      {\"x\": ")
+                            .append(formatCoordinate(entity.getX()))
+                            .append(", \"y\": ").append(formatCoordinate(entity.getY()))
+                            .append(", \"type\": ").append(jsonString(entity.getType()))
+                            .append(", \"properties\": {");
+                        boolean firstProperty = true;
+                        for (Map.Entry<String, String> property : entity.getProperties().entrySet()) {
+                            if (!firstProperty) object.append(", ");
+                            firstProperty = false;
+                            object.append(jsonString(property.getKey())).append(": ").append(jsonString(property.getValue()));
+                        }
+                        object.append("}}");
+                        if (++written[0] < entities.size()) object.append(',');
+                        writer.println(object);
+                    });
+                    writer.print("    ]");
+                }
+                writer.println();
+                writer.print("  }");
+            }
+            writer.println();
+            writer.println("}");
+            if (writer.checkError()) {
+                throw new IOException("Write failed: " + file);
+            }
+        }
+    }
+    
+    // Shortest form that reads back to the same double ("3" rather than "3.0")
+    private static String formatCoordinate(double value) {
+        String text = Double.toString(value);
+        return text.endsWith(".0") ? text.substring(0, text.length() - 2) : text;
+    }
+    
+    // Percent-escapes the characters that separate TXT tokens
+    private static String escapeToken(String text) {
+        StringBuilder escaped = new StringBuilder(text.length());
+        for (char c : text.toCharArray()) {
+            if (c == '%' || c == '=' || c <= ' ') {
+                escaped.append(String.format("%%%02X", (int) c));
+            } else {
+                escaped.append(c);
+            }
+        }
+        return escaped.length() == 0 ? "%00" : escaped.toString();
+    }
+    
+    private static String unescapeToken(String token) {
+        if (token.equals("%00")) return "";
+        StringBuilder text = new StringBuilder(token.length());
+        for (int i = 0; i < token.length(); i++) {
+            char c = token.charAt(i);
+            if (c == '%' && i + 2 < token.length()) {
+                text.append((char) Integer.parseInt(token.substring(i + 1, i + 3), 16));
+                i += 2;
+            } else {
+                text.append(c);
+            }
+        }
+        return text.toString();
+    }
+    
+    private static String jsonString(String text) {
+        StringBuilder quoted = new StringBuilder(text.length() + 2).append('"');
+        for (char c : text.toCharArray()) {
+            switch (c) {
+                case '"': quoted.append("\\\""); break;
+                case '\\': quoted.append("\\\\"); break;
+                case '\n': quoted.append("\\n"); break;
+                case '\r': quoted.append("\\r"); break;
+                case '\t': quoted.append("\\t"); break;
+                default:
+                    if (c < ' ') quoted.append(String.format("\\u%04x", (int) c));
+                    else quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+    
+    private static Visibility.Pvs computePvs(MapData map) {
+        if (map.pvs != null && map.pvs.chunkSize == map.pvsChunkSize && map.pvs.radius == map.pvsRadius) {
+            return map.pvs;
+        }
+        return Visibility.computePvs(map.combinedSolid(), map.width, map.height, map.pvsChunkSize, map.pvsRadius);
+    }
+    
+    // Words in order, 16 hex digits each
+    private static String pvsHex(long[] words) {
+        StringBuilder hex = new StringBuilder(words.length * 16);
+        for (long word : words) {
+            hex.append(String.format("%016x", word));
+        }
+        return hex.toString();
+    }
+    
+    // Two decimals, without trailing zeros
+    private static String formatDistance(double distance) {
+        long hundredths = Math.round(distance * 100);
+        if (hundredths % 100 == 0) return Long.toString(hundredths / 100);
+        String text = String.format("%d.%02d", hundredths / 100, hundredths % 100);
+        return text.endsWith("0") ? text.substring(0, text.length() - 1) : text;
+    }
+    
+    // "outlines": [{"hole": false, "points": [x0, y0, x1, y1, ...]}, ...]
+    private static void writeJsonOutlines(PrintWriter writer, List<CollisionCompiler.Outline> outlines) {
+        writer.println("      \"outlines\": [");
+        for (int i = 0; i < outlines.size(); i++) {
+            CollisionCompiler.Outline outline = outlines.get(i);
+            writer.print("        {\"hole\": " + outline.hole + ", \"points\": [");
+            for (int j = 0; j < outline.points.length; j++) {
+                if (j > 0) writer.print(", ");
+                writer.print(outline.points[j]);
+            }
+            writer.print("]}");
+            if (i < outlines.size() - 1) writer.println(",");
+            else writer.println();
+        }
+        writer.println("      ]");
+    }
+    
+    public static MapData readTxt(File file) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            // Read width and height from first line
+            String firstLine = reader.readLine();
+            if (firstLine == null) {
+                throw new IOException("Empty map file");
+            }
+            String[] dimensions = firstLine.trim().split("\\s+");
+            int width = Integer.parseInt(dimensions[0]);
+            int height = Integer.parseInt(dimensions[1]);
+            List<MapLayer> layers = new ArrayList<>();
+            
+            // Read layer data
+            String line;
+            TileStorage storage = null;
+            int currentLoadLayer = -1;
+            int row = 0;
+            int[] values = new int[width];
+            boolean outlines = false;
+            int pvsChunk = 16, pvsRadius = 0;
+            EntityIndex entities = null; // set inside an ENTITIES section
+            
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                
+                if (line.startsWith("LAYER:")) {
+                    String[] tokens = line.substring(6).split("\\s+");
+                    int index = Integer.parseInt(tokens[0]);
+                    MapLayer layer = readTxtLayerHeader(tokens, index, width, height);
+                    while (layers.size() <= index) {
+                        layers.add(null);
+                    }
+                    layers.set(index, layer);
+                    storage = layer.getStorage();
+                    entities = null;
+                    currentLoadLayer = index;
+                    row = 0;
+                } else if (!line.isEmpty() && Character.isLetter(line.charAt(0))) {
+                    // Derived sections such as AUTOTILE and COLLISION are recomputed, not loaded
+                    outlines |= line.startsWith("COLLISION:") && line.contains(" outlines=");
+                    if (line.startsWith("PVS ")) {
+                        pvsChunk = Integer.parseInt(txtValue(line, "chunk"));
+                        pvsRadius = Integer.parseInt(txtValue(line, "radius"));
+                    }
+                    entities = null;
+                    if (line.startsWith("ENTITIES:")) {
+                        int index = Integer.parseInt(line.substring(9).split("\\s+")[0]);
+                        if (index >= layers.size() || layers.get(index) == null) {
+                            throw new IOException("Entities for missing layer " + index);
+                        }
+                        entities = layers.get(index).getEntities();
+                    }
+                    storage = null;
+                } else if (entities != null && !line.isEmpty()) {
+                    entities.add(readTxtEntity(line.split("\\s+")));
+                } else if (storage != null && row < height) {
+                    String[] tokens = line.split("\\s+");
+                    Arrays.fill(values, 0);
+                    for (int col = 0; col < Math.min(tokens.length, width); col++) {
+                        values[col] = Integer.parseInt(tokens[col]);
+                        if (!storage.canStore(values[col])) {
+                            throw new IOException("Layer " + currentLoadLayer
+                                + " cannot hold tile value " + values[col]);
+                        }
+                    }
+                    storage.writeRow(row, values);
+                    row++;
+                }
+            }
+            layers = fillMissingLayers(layers, width, height);
+            checkUniqueNames(layers);
+            MapData map = new MapData(width, height, layers);
+            map.exportOutlines = outlines;
+            map.pvsChunkSize = pvsChunk;
+            map.pvsRadius = pvsRadius;
+            return map;
+        }
+    }
+    
+    // "x y type key=value ..." with escaped tokens
+    private static MapEntity readTxtEntity(String[] tokens) throws IOException {
+        if (tokens.length < 3) {
+            throw new IOException("Bad entity line: " + String.join(" ", tokens));
+        }
+        MapEntity entity = new MapEntity(Double.parseDouble(tokens[0]), Double.parseDouble(tokens[1]),
+            unescapeToken(tokens[2]));
+        for (int i = 3; i < tokens.length; i++) {
+            int eq = tokens[i].indexOf('=');
+            if (eq < 0) throw new IOException("Bad entity property: " + tokens[i]);
+            entity.getProperties().put(unescapeToken(tokens[i].substring(0, eq)), unescapeToken(tokens[i].substring(eq + 1)));
+        }
+        return entity;
+    }
+    
+    // Value of key=value in a space-separated section header
+    private static String txtValue(String line, String key) throws IOException {
+        for (String token : line.split("\\s+")) {
+            if (token.startsWith(key + "=")) return token.substring(key.length() + 1);
+        }
+        throw new IOException("Missing " + key + " in: " + line);
+    }
+    
+    // Parses "LAYER:<index> key=value ..." (older files only have the index)
+    private static MapLayer readTxtLayerHeader(String[] tokens, int index, int width, int height) {
+        String name = defaultLayerName(index);
+        TileStorage.Type type = TileStorage.Type.DENSE;
+        for (int i = 1; i < tokens.length; i++) {
+            int eq = tokens[i].indexOf('=');
+            if (eq > 0 && tokens[i].substring(0, eq).equals("name")) {
+                String sanitized = MapLayer.sanitizeName(tokens[i].substring(eq + 1));
+                if (!sanitized.isEmpty()) name = sanitized;
+            }
+            if (eq > 0 && tokens[i].substring(0, eq).equals("storage")) type = parseStorage(tokens[i].substring(eq + 1));
+        }
+        MapLayer layer = MapLayer.create(name, index, type.create(width, height));
+        for (int i = 1; i < tokens.length; i++) {
+            int eq = tokens[i].indexOf('=');
+            if (eq <= 0) continue;
+            String key = tokens[i].substring(0, eq);
+            String value = tokens[i].substring(eq + 1);
+            switch (key) {
+                case "visible": layer.setVisible(Boolean.parseBoolean(value)); break;
+                case "locked": layer.setLocked(Boolean.parseBoolean(value)); break;
+                case "opacity": layer.setOpacity(Float.parseFloat(value)); break;
+                case "color": layer.setColor(Color.decode(value)); break;
+                case "solid": layer.setSolidColor(Color.decode(value)); break;
+                default: break;
+            }
+        }
+        return layer;
+    }
+    
+    // Gaps in the LAYER numbering become empty layers; a file without layers gets the defaults
+    private static List<MapLayer> fillMissingLayers(List<MapLayer> layers, int width, int height) {
+        if (layers.isEmpty()) {
+            return MapLayer.createDefaultLayers(width, height);
+        }
+        for (int i = 0; i < layers.size(); i++) {
+            if (layers.get(i) == null) {
+                layers.set(i, MapLayer.create(defaultLayerName(i), i, new DenseTileStorage(width, height)));
+            }
+        }
+        return layers;
+    }
+    
+    public static MapData readJson(File file) throws IOException {
+        StringBuilder jsonContent = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                jsonContent.append(line.trim());
+            }
+        }
+        String json = jsonContent.toString();
+        
+        // Top-level keys are walked in order and each section is read only under its
+        // own key, so layer names and entity properties are never taken for section keys
+        JsonCursor cursor = new JsonCursor(json, 0);
+        int width = -1, height = -1;
+        int infoStart = -1, tilesStart = -1, entitiesStart = -1;
+        boolean outlines = false, distance = false;
+        int pvsChunk = 16, pvsRadius = 0;
+        cursor.expect('{');
+        while (!cursor.consume('}')) {
+            String key = cursor.readString();
+            cursor.expect(':');
+            cursor.skipSpace();
+            switch (key) {
+                case "width": width = cursor.readInt(); break;
+                case "height": height = cursor.readInt(); break;
+                case "layerInfo": infoStart = cursor.pos; cursor.skipValue(); break;
+                case "layers": tilesStart = cursor.pos; cursor.skipValue(); break;
+                case "entities": entitiesStart = cursor.pos; cursor.skipValue(); break;
+                case "collision": outlines = readJsonHasOutlines(cursor); break;
+                case "distance": distance = true; cursor.skipValue(); break;
+                case "pvs":
+                    cursor.expect('{');
+                    while (!cursor.consume('}')) {
+                        String pvsKey = cursor.readString();
+                        cursor.expect(':');
+                        if (pvsKey.equals("chunkSize")) pvsChunk = cursor.readInt();
+                        else if (pvsKey.equals("radius")) pvsRadius = cursor.readInt();
+                        else cursor.skipValue();
+                        cursor.consume(',');
+                    }
+                    break;
+                default: cursor.skipValue(); break;
+            }
+            cursor.consume(',');
+        }
+        if (width <= 0 || height <= 0) {
+            throw new IOException("Missing or bad width/height");
+        }
+        
+        List<MapLayer> layers = infoStart == -1 ? MapLayer.createDefaultLayers(width, height)
+            : readJsonLayerInfo(new JsonCursor(json, infoStart), width, height);
+        checkUniqueNames(layers);
+        if (tilesStart != -1) {
+            readJsonTiles(new JsonCursor(json, tilesStart), layers, width, height);
+        }
+        if (entitiesStart != -1) {
+            readJsonEntities(new JsonCursor(json, entitiesStart), layers);
+        }
+        MapData map = new MapData(width, height, layers);
+        map.exportOutlines = outlines;
+        map.exportDistance = distance;
+        if (pvsRadius > 0) {
+            map.pvsChunkSize = pvsChunk;
+            map.pvsRadius = pvsRadius;
+        }
+        return map;
+    }
+    
+    // Layer names key the JSON sections, so two layers cannot share one
+    private static void checkUniqueNames(List<MapLayer> layers) throws IOException {
+        Set<String> names = new HashSet<>();
+        for (MapLayer layer : layers) {
+            if (!names.add(layer.getName())) {
+                throw new IOException("Duplicate layer name: " + layer.getName());
+            }
+        }
+    }
+    
+    private static MapLayer layerNamed(List<MapLayer> layers, String name) {
+        for (MapLayer layer : layers) {
+            if (layer.getName().equals(name)) return layer;
+        }
+        return null;
+    }
+    
+    // "layers": {"<layer>": [[v, v, ...], ...], ...}; extra rows and columns are ignored
+    private static void readJsonTiles(JsonCursor cursor, List<MapLayer> layers, int width, int height)
+            throws IOException {
+        int[] values = new int[width];
+        cursor.expect('{');
+        while (!cursor.consume('}')) {
+            String name = cursor.readString();
+            cursor.expect(':');
+            MapLayer mapLayer = layerNamed(layers, name);
+            if (mapLayer == null) {
+                cursor.skipValue();
+                cursor.consume(',');
+                continue;
+            }
+            TileStorage storage = mapLayer.getStorage();
+            int row = 0;
+            cursor.expect('[');
+            while (!cursor.consume(']')) {
+                Arrays.fill(values, 0);
+                int col = 0;
+                cursor.expect('[');
+                while (!cursor.consume(']')) {
+                    int value = cursor.readInt();
+                    if (col < width && row < height) {
+                        if (!storage.canStore(value)) {
+                            throw new IOException("Layer " + name + " cannot hold tile value " + value);
+                        }
+                        values[col] = value;
+                    }
+                    col++;
+                    cursor.consume(',');
+                }
+                if (row < height) storage.writeRow(row, values);
+                row++;
+                cursor.consume(',');
+            }
+            cursor.consume(',');
+        }
+    }
+    
+    // "collision": {"<layer>": {"rects": [...], "outlines": [...]}, ...}; true if any has outlines
+    private static boolean readJsonHasOutlines(JsonCursor cursor) throws IOException {
+        boolean outlines = false;
+        cursor.expect('{');
+        while (!cursor.consume('}')) {
+            cursor.readString();
+            cursor.expect(':');
+            cursor.expect('{');
+            while (!cursor.consume('}')) {
+                outlines |= cursor.readString().equals("outlines");
+                cursor.expect(':');
+                cursor.skipValue();
+                cursor.consume(',');
+            }
+            cursor.consume(',');
+        }
+        return outlines;
+    }
+    
+    // "entities": {"<layer>": [{"x": 1.5, "y": 2.5, "type": "...", "properties": {...}}, ...]}
+    private static void readJsonEntities(JsonCursor cursor, List<MapLayer> layers) throws IOException {
+        cursor.expect('{');
+        while (!cursor.consume('}')) {
+            String layerName = cursor.readString();
+            cursor.expect(':');
+            MapLayer target = layerNamed(layers, layerName);
+            if (target == null) throw new IOException("Entities for missing layer " + layerName);
+            cursor.expect('[');
+            while (!cursor.consume(']')) {
+                cursor.expect('{');
+                double x = 0, y = 0;
+                String type = "";
+                Map<String, String> properties = new LinkedHashMap<>();
+                while (!cursor.consume('}')) {
+                    String key = cursor.readString();
+                    cursor.expect(':');
+                    switch (key) {
+                        case "x": x = cursor.readNumber(); break;
+                        case "y": y = cursor.readNumber(); break;
+                        case "type": type = cursor.readString(); break;
+                        case "properties":
+                            cursor.expect('{');
+                            while (!cursor.consume('}')) {
+                                String name = cursor.readString();
+                                cursor.expect(':');
+                                properties.put(name, cursor.readString());
+                                cursor.consume(',');
+                            }
+                            break;
+                        default: throw new IOException("Unknown entity key: " + key);
+                    }
+                    cursor.consume(',');
+                }
+                MapEntity entity = new MapEntity(x, y, type);
+                entity.getProperties().putAll(properties);
+                target.getEntities().add(entity);
+                cursor.consume(',');
+            }
+            cursor.consume(',');
+        }
+    }
+    
+    private static class JsonCursor {
+        final String json;
+        int pos;
+        
+        JsonCursor(String json, int pos) {
+            this.json = json;
+            this.pos = pos;
+        }
+        
+        void skipSpace() {
+            while (pos < json.length() && Character.isWhitespace(json.charAt(pos))) pos++;
+        }
+        
+        // Steps over c if it comes next
+        boolean consume(char c) {
+            skipSpace();
+            if (pos < json.length() && json.charAt(pos) == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+        
+        void expect(char c) throws IOException {
+            if (!consume(c)) throw new IOException("Expected '" + c + "' at offset " + pos);
+        }
+        
+        int readInt() throws IOException {
+            skipSpace();
+            int start = pos;
+            boolean negative = pos < json.length() && json.charAt(pos) == '-';
+            if (negative) pos++;
+            long value = 0;
+            while (pos < json.length() && json.charAt(pos) >= '0' && json.charAt(pos) <= '9' && value <= Integer.MAX_VALUE) {
+                value = value * 10 + (json.charAt(pos++) - '0');
+            }
+            if (pos == start + (negative ? 1 : 0) || value > Integer.MAX_VALUE) {
+                throw new IOException("Expected an integer at offset " + start);
+            }
+            return (int) (negative ? -value : value);
+        }
+        
+        // A string's contents, or the text of a number or literal
+        String readScalar() throws IOException {
+            skipSpace();
+            if (pos < json.length() && json.charAt(pos) == '"') return readString();
+            int start = pos;
+            while (pos < json.length() && ",}]".indexOf(json.charAt(pos)) < 0) pos++;
+            return json.substring(start, pos).trim();
+        }
+        
+        // Steps over one value of any kind, nested arrays and objects included
+        void skipValue() throws IOException {
+            skipSpace();
+            if (pos >= json.length()) throw new IOException("Expected a value at offset " + pos);
+            char c = json.charAt(pos);
+            if (c == '"') {
+                readString();
+            } else if (c == '[' || c == '{') {
+                int depth = 0;
+                while (pos < json.length()) {
+                    c = json.charAt(pos);
+                    if (c == '"') {
+                        readString();
+                        continue;
+                    }
+                    pos++;
+                    if (c == '[' || c == '{') depth++;
+                    else if ((c == ']' || c == '}') && --depth == 0) return;
+                }
+                throw new IOException("Unterminated value");
+            } else {
+                readScalar();
+            }
+        }
+        
+        double readNumber() throws IOException {
+            skipSpace();
+            int start = pos;
+            while (pos < json.length() && "+-.0123456789eE".indexOf(json.charAt(pos)) >= 0) pos++;
+            try {
+                return Double.parseDouble(json.substring(start, pos));
+            } catch (NumberFormatException e) {
+                throw new IOException("Expected a number at offset " + start);
+            }
+        }
+        
+        String readString() throws IOException {
+            expect('"');
+            StringBuilder text = new StringBuilder();
+            while (pos < json.length()) {
+                char c = json.charAt(pos++);
+                if (c == '"') return text.toString();
+                if (c != '\\') {
+                    text.append(c);
+                    continue;
+                }
+                if (pos >= json.length()) break;
+                char escape = json.charAt(pos++);
+                switch (escape) {
+                    case 'n': text.append('\n'); break;
+                    case 'r': text.append('\r'); break;
+                    case 't': text.append('\t'); break;
+                    case 'b': text.append('\b'); break;
+                    case 'f': text.append('\f'); break;
+                    case 'u':
+                        if (pos + 4 > json.length()) throw new IOException("Bad escape at offset " + pos);
+                        text.append((char) Integer.parseInt(json.substring(pos, pos + 4), 16));
+                        pos += 4;
+                        break;
+                    default: text.append(escape); break;
+                }
+            }
+            throw new IOException("Unterminated string");
+        }
+    }
+    
+    // "layerInfo": [{"name": "...", "storage": "dense", "visible": true, ...}, ...], bottom to top
+    private static List<MapLayer> readJsonLayerInfo(JsonCursor cursor, int width, int height) throws IOException {
+        List<MapLayer> layers = new ArrayList<>();
+        cursor.expect('[');
+        while (!cursor.consume(']')) {
+            Map<String, String> info = new HashMap<>();
+            cursor.expect('{');
+            while (!cursor.consume('}')) {
+                String key = cursor.readString();
+                cursor.expect(':');
+                info.put(key, cursor.readScalar());
+                cursor.consume(',');
+            }
+            cursor.consume(',');
+            
+            int index = layers.size();
+            TileStorage.Type type = parseStorage(info.getOrDefault("storage", "dense"));
+            MapLayer layer = MapLayer.create(info.getOrDefault("name", defaultLayerName(index)), index,
+                type.create(width, height));
+            layer.setVisible(!"false".equals(info.get("visible")));
+            layer.setLocked("true".equals(info.get("locked")));
+            if (info.containsKey("opacity")) layer.setOpacity(Float.parseFloat(info.get("opacity")));
+            if (info.containsKey("color")) layer.setColor(Color.decode(info.get("color")));
+            if (info.containsKey("solid")) layer.setSolidColor(Color.decode(info.get("solid")));
+            layers.add(layer);
+        }
+        return layers.isEmpty() ? MapLayer.createDefaultLayers(width, height) : layers;
+    }
+}
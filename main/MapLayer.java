@@ -0,0 +1,125 @@
+package dev.main;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.List;
+
+// One entry of the layer stack: display settings plus the storage holding its tiles
+public class MapLayer {
+    public static final int MAX_LAYERS = 32; // layer masks are ints
+    public static final String[] DEFAULT_NAMES = {"ground", "decoration", "objects"};
+    
+    // Colours handed out to new layers (walkable, solid), cycling
+    private static final Color[][] PALETTE = {
+        {new Color(139, 69, 19), new Color(178, 34, 34)},   // Ground - brown / dark red
+        {new Color(34, 139, 34), new Color(255, 0, 0)},     // Decoration - green / red
+        {new Color(70, 130, 180), new Color(139, 0, 0)},    // Objects - blue / darker red
+        {new Color(218, 165, 32), new Color(205, 92, 92)},
+        {new Color(106, 90, 205), new Color(199, 21, 133)},
+        {new Color(0, 139, 139), new Color(255, 69, 0)},
+        {new Color(128, 128, 0), new Color(165, 42, 42)},
+        {new Color(112, 128, 144), new Color(220, 20, 60)}
+    };
+    
+    private String name;
+    private Color color;      // non-zero, non-solid tiles
+    private Color solidColor; // tiles with value 1
+    private boolean visible = true;
+    private boolean locked = false;
+    private float opacity = 1f;
+    private TileStorage storage;
+    private final EntityIndex entities = new EntityIndex(); // placed objects, independent of the tiles
+    
+    public MapLayer(String name, Color color, Color solidColor, TileStorage storage) {
+        this.name = name;
+        this.color = color;
+        this.solidColor = solidColor;
+        this.storage = storage;
+    }
+    
+    // Layer with the palette colours for the given stack position
+    public static MapLayer create(String name, int index, TileStorage storage) {
+        Color[] colors = PALETTE[index % PALETTE.length];
+        return new MapLayer(name, colors[0], colors[1], storage);
+    }
+    
+    // The classic ground / decoration / objects stack
+    public static List<MapLayer> createDefaultLayers(int width, int height) {
+        List<MapLayer> layers = new ArrayList<>();
+        for (int i = 0; i < DEFAULT_NAMES.length; i++) {
+            layers.add(create(DEFAULT_NAMES[i], i, new DenseTileStorage(width, height)));
+        }
+        return layers;
+    }
+    
+    // Names end up in files as keys and header tokens, so the editor keeps them to
+    // letters, digits, '_' and '-'; anything else becomes '_'
+    public static String sanitizeName(String name) {
+        return name.trim().replaceAll("[^A-Za-z0-9_-]", "_");
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public void setName(String name) {
+        this.name = name;
+    }
+    
+    public Color getColor() {
+        return color;
+    }
+    
+    public void setColor(Color color) {
+        this.color = color;
+    }
+    
+    public Color getSolidColor() {
+        return solidColor;
+    }
+    
+    public void setSolidColor(Color solidColor) {
+        this.solidColor = solidColor;
+    }
+    
+    public boolean isVisible() {
+        return visible;
+    }
+    
+    public void setVisible(boolean visible) {
+        this.visible = visible;
+    }
+    
+    public boolean isLocked() {
+        return locked;
+    }
+    
+    public void setLocked(boolean locked) {
+        this.locked = locked;
+    }
+    
+    public float getOpacity() {
+        return opacity;
+    }
+    
+    public void setOpacity(float opacity) {
+        this.opacity = Math.max(0f, Math.min(1f, opacity));
+    }
+    
+    public TileStorage getStorage() {
+        return storage;
+    }
+    
+    public void setStorage(TileStorage storage) {
+        this.storage = storage;
+    }
+    
+    public EntityIndex getEntities() {
+        return entities;
+    }
+    
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,405 @@
+package dev.main;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.Collections;
+import java.util.List;
+
+// Paints a TileMap the way the editor shows it, into any Graphics2D: the map view
+// (tiles or chunk pictures, objects, overlays, grid) and the minimap. Nothing here
+// needs a display, so the editor panels and the headless benchmarks draw through
+// the same code. What to show besides the tiles is passed in a View; the derived
+// data behind the overlays comes from the editor's DerivedData. EDT only.
+public class MapRenderer {
+    public static final int TILE_SIZE = 64;            // map pixels per tile
+    public static final double LOD_TILE_PIXELS = 4;    // smaller tiles are drawn from rasterized chunks
+    private static final double LABEL_TILE_PIXELS = 24; // no text below this
+    
+    private final TileMap tileMap;
+    private final DerivedData derived;
+    private final GridRenderer grid = new GridRenderer();
+    private long tilesDrawn, chunksDrawn; // in the last paintMap
+    private long chunksMissing;           // placeholders in the last paintMap or paintMiniMap
+    
+    // View state owned by the caller; tile coordinates are x = col, y = row
+    public static class View {
+        public double zoom = 1;                 // screen pixels per map pixel
+        public int currentLayer;                // drawn stronger than the others
+        public BufferedImage referenceImage;
+        public TileAtlas tileAtlas;             // tile art; flat colours while null
+        public boolean showAutoTiles;
+        public MapEntity selectedEntity;        // outlined in yellow
+        public DistanceField distanceField;     // clearance heatmap, or null
+        public Point fovOrigin;
+        public Rectangle fovWindow;             // tiles fovVisible covers
+        public long[] fovVisible;               // SolidGrid layout over fovWindow, or null
+        public List<ValidationIssue> issues = Collections.emptyList();
+        public ValidationIssue selectedIssue;   // drawn in yellow
+        public PathFinder.Path path;
+        public int pathWidth;                   // map width the path cells were computed for
+        public Point pathStart, pathGoal;
+        public Rectangle2D viewport;            // tiles the map view shows, outlined on the minimap
+    }
+    
+    public MapRenderer(TileMap tileMap, DerivedData derived) {
+        this.tileMap = tileMap;
+        this.derived = derived;
+    }
+    
+    public GridRenderer grid() {
+        return grid;
+    }
+    
+    public long tilesDrawn() {
+        return tilesDrawn;
+    }
+    
+    public long chunksDrawn() {
+        return chunksDrawn;
+    }
+    
+    // Chunks still in flight when last painted; zero once the picture is complete
+    public long chunksMissing() {
+        return chunksMissing;
+    }
+    
+    // The map at view.zoom; only what lies under the clip of g2d is drawn
+    public void paintMap(Graphics2D g2d, View view) {
+        int mapWidth = tileMap.getWidth(), mapHeight = tileMap.getHeight();
+        List<MapLayer> layers = tileMap.getLayers();
+        tilesDrawn = 0;
+        chunksDrawn = 0;
+        chunksMissing = 0;
+        
+        // Everything below is drawn in unzoomed map pixels
+        g2d.scale(view.zoom, view.zoom);
+        double tilePixels = TILE_SIZE * view.zoom;
+        boolean lod = tilePixels < LOD_TILE_PIXELS;
+        boolean labels = tilePixels >= LABEL_TILE_PIXELS;
+        
+        // Draw reference image if loaded
+        if (view.referenceImage != null) {
+            g2d.drawImage(view.referenceImage, 0, 0, 
+                mapWidth * TILE_SIZE, mapHeight * TILE_SIZE, null);
+        }
+        
+        // Only the tiles under the clip are drawn
+        Rectangle clip = g2d.getClipBounds();
+        int firstRow = clip == null ? 0 : Math.max(0, clip.y / TILE_SIZE);
+        int lastRow = clip == null ? mapHeight : Math.min(mapHeight, (clip.y + clip.height) / TILE_SIZE + 1);
+        int firstCol = clip == null ? 0 : Math.max(0, clip.x / TILE_SIZE);
+        int lastCol = clip == null ? mapWidth : Math.min(mapWidth, (clip.x + clip.width) / TILE_SIZE + 1);
+        int[] values = new int[Math.max(0, lastCol - firstCol)];
+        
+        // Zoomed out, layers are drawn from chunks rasterized in the background at the
+        // level where a pixel is about a screen pixel, so the cost follows the view
+        Composite composite = g2d.getComposite();
+        for (int layer = 0; lod && layer < layers.size(); layer++) {
+            MapLayer mapLayer = layers.get(layer);
+            if (!mapLayer.isVisible()) continue;
+            
+            int alpha = layer == view.currentLayer ? 180 : 80; // Current layer more visible
+            g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER,
+                alpha / 255f * mapLayer.getOpacity()));
+            chunksDrawn += drawChunks(g2d, mapLayer,
+                new Rectangle(firstCol, firstRow, lastCol - firstCol, lastRow - firstRow), TILE_SIZE, tilePixels);
+            g2d.setComposite(composite);
+        }
+        
+        // Draw visible layers bottom to top; with a tileset, value 0 is only drawn
+        // on the bottom layer and values without a cell fall back to colours
+        for (int layer = 0; !lod && layer < layers.size(); layer++) {
+            MapLayer mapLayer = layers.get(layer);
+            if (!mapLayer.isVisible()) continue;
+            
+            boolean art = view.tileAtlas != null;
+            if (art) {
+                g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, mapLayer.getOpacity()));
+            }
+            int alpha = layer == view.currentLayer ? 180 : 80; // Current layer more visible
+            float opacity = art ? 1f : mapLayer.getOpacity(); // the composite applies it to art
+            Color solidColor = withAlpha(mapLayer.getSolidColor(), alpha * opacity);
+            Color walkableColor = withAlpha(mapLayer.getColor(), alpha * opacity);
+            TileStorage storage = mapLayer.getStorage();
+            
+            for (int row = firstRow; row < lastRow; row++) {
+                storage.readSpan(row, firstCol, values, values.length);
+                for (int i = 0; i < values.length; i++) {
+                    int x = (firstCol + i) * TILE_SIZE;
+                    int y = row * TILE_SIZE;
+                    
+                    int tileValue = values[i];
+                    BufferedImage cell = art && (tileValue != 0 || layer == 0) ? view.tileAtlas.cell(tileValue) : null;
+                    
+                    if (cell != null) {
+                        g2d.drawImage(cell, x, y, null);
+                        tilesDrawn++;
+                    } else if (tileValue != 0) {
+                        g2d.setColor(tileValue == 1 ? solidColor : walkableColor);
+                        g2d.fillRect(x, y, TILE_SIZE, TILE_SIZE);
+                        tilesDrawn++;
+                    }
+                }
+            }
+            g2d.setComposite(composite);
+        }
+        
+        // Objects of visible layers inside the clip, with their type; hidden when
+        // zoomed out, where one view can hold every object of a huge map
+        Rectangle entityClip = clip != null ? clip : new Rectangle(0, 0, mapWidth * TILE_SIZE, mapHeight * TILE_SIZE);
+        Rectangle2D clipTiles = new Rectangle2D.Double(
+            (double) entityClip.x / TILE_SIZE - 0.5, (double) entityClip.y / TILE_SIZE - 0.5,
+            (double) entityClip.width / TILE_SIZE + 1, (double) entityClip.height / TILE_SIZE + 1);
+        g2d.setFont(new Font("SansSerif", Font.PLAIN, 10));
+        for (MapLayer mapLayer : layers) {
+            if (lod || !mapLayer.isVisible() || mapLayer.getEntities().size() == 0) continue;
+            Color fill = withAlpha(mapLayer.getColor().brighter(), 220 * mapLayer.getOpacity());
+            int size = TILE_SIZE / 2;
+            mapLayer.getEntities().forEachIn(clipTiles, entity -> {
+                int x = (int) Math.round(entity.getX() * TILE_SIZE);
+                int y = (int) Math.round(entity.getY() * TILE_SIZE);
+                g2d.setColor(fill);
+                g2d.fillOval(x - size / 2, y - size / 2, size, size);
+                g2d.setColor(entity == view.selectedEntity ? Color.YELLOW : Color.BLACK);
+                g2d.drawOval(x - size / 2, y - size / 2, size, size);
+                if (labels) {
+                    g2d.setColor(Color.BLACK);
+                    g2d.drawString(entity.getType(), x - size / 2, y + size / 2 + 10);
+                }
+            });
+        }
+        
+        // Outline solid ground tiles along the edges their auto-tile ID exposes
+        if (view.showAutoTiles && !lod) {
+            g2d.setColor(Color.YELLOW);
+            int inset = TILE_SIZE / 8;
+            for (int row = firstRow; row < lastRow; row++) {
+                for (int col = firstCol; col < lastCol; col++) {
+                    int id = derived.autoTiler().getId(row, col);
+                    if (id == AutoTiler.NONE) continue;
+                    
+                    int mask = AutoTiler.maskForId(id);
+                    int x = col * TILE_SIZE;
+                    int y = row * TILE_SIZE;
+                    if ((mask & AutoTiler.N) == 0) g2d.fillRect(x, y, TILE_SIZE, 3);
+                    if ((mask & AutoTiler.S) == 0) g2d.fillRect(x, y + TILE_SIZE - 3, TILE_SIZE, 3);
+                    if ((mask & AutoTiler.W) == 0) g2d.fillRect(x, y, 3, TILE_SIZE);
+                    if ((mask & AutoTiler.E) == 0) g2d.fillRect(x + TILE_SIZE - 3, y, 3, TILE_SIZE);
+                    
+                    // Inner corners: both edges solid but the diagonal is open
+                    int edges = AutoTiler.N | AutoTiler.E;
+                    if ((mask & edges) == edges && (mask & AutoTiler.NE) == 0)
+                        g2d.fillRect(x + TILE_SIZE - inset, y, inset, inset);
+                    edges = AutoTiler.S | AutoTiler.E;
+                    if ((mask & edges) == edges && (mask & AutoTiler.SE) == 0)
+                        g2d.fillRect(x + TILE_SIZE - inset, y + TILE_SIZE - inset, inset, inset);
+                    edges = AutoTiler.S | AutoTiler.W;
+                    if ((mask & edges) == edges && (mask & AutoTiler.SW) == 0)
+                        g2d.fillRect(x, y + TILE_SIZE - inset, inset, inset);
+                    edges = AutoTiler.N | AutoTiler.W;
+                    if ((mask & edges) == edges && (mask & AutoTiler.NW) == 0)
+                        g2d.fillRect(x, y, inset, inset);
+                }
+            }
+        }
+        
+        // Clearance heatmap: red next to walls through to blue in open space
+        if (view.distanceField != null && view.distanceField.getWidth() == mapWidth
+                && view.distanceField.getHeight() == mapHeight && !lod) {
+            double max = Math.max(1.0, view.distanceField.max());
+            g2d.setFont(new Font("Monospaced", Font.PLAIN, 11));
+            for (int row = firstRow; row < lastRow; row++) {
+                for (int col = firstCol; col < lastCol; col++) {
+                    int squared = view.distanceField.squared(row, col);
+                    if (squared == 0) continue;
+                    double distance = Math.sqrt(squared);
+                    float hue = (float) (0.66 * Math.min(1.0, (distance - 1) / max));
+                    Color heat = Color.getHSBColor(hue, 0.9f, 1.0f);
+                    g2d.setColor(withAlpha(heat, 110));
+                    g2d.fillRect(col * TILE_SIZE, row * TILE_SIZE, TILE_SIZE, TILE_SIZE);
+                    if (labels) {
+                        g2d.setColor(Color.BLACK);
+                        g2d.drawString(String.format("%.1f", distance), col * TILE_SIZE + 4, row * TILE_SIZE + 14);
+                    }
+                }
+            }
+        }
+        
+        // Walkable tiles outside the largest walkable region
+        Connectivity connectivity = derived.connectivity();
+        if (connectivity != null && !lod) {
+            int main = connectivity.largestRegion();
+            g2d.setColor(new Color(255, 140, 0, 140));
+            for (int row = firstRow; row < lastRow; row++) {
+                for (int col = firstCol; col < lastCol; col++) {
+                    int region = connectivity.regionOf(row, col);
+                    if (region >= 0 && region != main) {
+                        g2d.fillRect(col * TILE_SIZE + 4, row * TILE_SIZE + 4, TILE_SIZE - 8, TILE_SIZE - 8);
+                    }
+                }
+            }
+        }
+        
+        // Field of view: shade everything the origin cannot see
+        if (view.fovVisible != null && new Rectangle(0, 0, mapWidth, mapHeight).contains(view.fovWindow) && !lod) {
+            int words = SolidGrid.wordsPerRow(view.fovWindow.width);
+            g2d.setColor(new Color(0, 0, 0, 120));
+            for (int row = firstRow; row < lastRow; row++) {
+                for (int col = firstCol; col < lastCol; col++) {
+                    int r = row - view.fovWindow.y, c = col - view.fovWindow.x;
+                    if (!view.fovWindow.contains(col, row)
+                            || (view.fovVisible[r * words + (c >>> 6)] & (1L << (c & 63))) == 0) {
+                        g2d.fillRect(col * TILE_SIZE, row * TILE_SIZE, TILE_SIZE, TILE_SIZE);
+                    }
+                }
+            }
+            g2d.setColor(Color.YELLOW);
+            g2d.fillOval(view.fovOrigin.x * TILE_SIZE + TILE_SIZE / 4, view.fovOrigin.y * TILE_SIZE + TILE_SIZE / 4,
+                TILE_SIZE / 2, TILE_SIZE / 2);
+        }
+        
+        // Validation markers; the issue selected in the list is drawn in yellow
+        if (!view.issues.isEmpty()) {
+            g2d.setStroke(new BasicStroke(3));
+            g2d.setFont(new Font("SansSerif", Font.BOLD, 16));
+            for (ValidationIssue issue : view.issues) {
+                Rectangle tile = new Rectangle(issue.col * TILE_SIZE, issue.row * TILE_SIZE, TILE_SIZE, TILE_SIZE);
+                if (clip != null && !clip.intersects(tile)) continue;
+                g2d.setColor(issue == view.selectedIssue ? Color.YELLOW : Color.RED);
+                g2d.drawRect(tile.x + 2, tile.y + 2, tile.width - 4, tile.height - 4);
+                g2d.drawString("!", tile.x + TILE_SIZE / 2 - 2, tile.y + TILE_SIZE / 2 + 6);
+            }
+            g2d.setStroke(new BasicStroke(1));
+        }
+        
+        // Path preview through the tile centres of the jump points
+        if (view.path != null) {
+            g2d.setColor(Color.MAGENTA);
+            g2d.setStroke(new BasicStroke(4, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+            int[] points = view.path.points;
+            for (int i = 1; i < points.length; i++) {
+                g2d.drawLine(
+                    (points[i - 1] % view.pathWidth) * TILE_SIZE + TILE_SIZE / 2,
+                    (points[i - 1] / view.pathWidth) * TILE_SIZE + TILE_SIZE / 2,
+                    (points[i] % view.pathWidth) * TILE_SIZE + TILE_SIZE / 2,
+                    (points[i] / view.pathWidth) * TILE_SIZE + TILE_SIZE / 2);
+            }
+            g2d.setStroke(new BasicStroke(1));
+        }
+        if (view.pathStart != null) {
+            g2d.setColor(Color.GREEN);
+            g2d.fillOval(view.pathStart.x * TILE_SIZE + TILE_SIZE / 4, view.pathStart.y * TILE_SIZE + TILE_SIZE / 4,
+                TILE_SIZE / 2, TILE_SIZE / 2);
+        }
+        if (view.pathGoal != null) {
+            g2d.setColor(Color.RED);
+            g2d.fillOval(view.pathGoal.x * TILE_SIZE + TILE_SIZE / 4, view.pathGoal.y * TILE_SIZE + TILE_SIZE / 4,
+                TILE_SIZE / 2, TILE_SIZE / 2);
+        }
+        
+        // Draw grid over the clip; it fades out as the lines close in
+        Rectangle mapArea = new Rectangle(0, 0, mapWidth * TILE_SIZE, mapHeight * TILE_SIZE);
+        grid.paint(g2d, clip == null ? mapArea : clip.intersection(mapArea), TILE_SIZE, tilePixels);
+    }
+    
+    // The whole map scaled into a maxSize square at the origin, with the viewport
+    public void paintMiniMap(Graphics2D g2d, View view, int maxSize) {
+        int mapWidth = tileMap.getWidth(), mapHeight = tileMap.getHeight();
+        double scale = Math.min((double) maxSize / mapWidth, (double) maxSize / mapHeight);
+        chunksMissing = 0;
+        int miniWidth = (int)(mapWidth * scale);
+        int miniHeight = (int)(mapHeight * scale);
+        
+        int offsetX = (maxSize - miniWidth) / 2;
+        int offsetY = (maxSize - miniHeight) / 2;
+        
+        // Draw reference image if loaded
+        if (view.referenceImage != null) {
+            g2d.drawImage(view.referenceImage, offsetX, offsetY, miniWidth, miniHeight, null);
+        }
+        
+        // Draw visible layers bottom to top with their own colour and opacity
+        for (MapLayer layer : tileMap.getLayers()) {
+            if (!layer.isVisible()) continue;
+            if (scale < 1) {
+                Graphics2D chunkGraphics = (Graphics2D) g2d.create();
+                chunkGraphics.translate(offsetX, offsetY);
+                chunkGraphics.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER,
+                    120 / 255f * layer.getOpacity()));
+                drawChunks(chunkGraphics, layer, new Rectangle(0, 0, mapWidth, mapHeight), scale, scale);
+                chunkGraphics.dispose();
+                continue;
+            }
+            TileStorage storage = layer.getStorage();
+            g2d.setColor(withAlpha(layer.getColor(), 120 * layer.getOpacity()));
+            for (int row = 0; row < mapHeight; row++) {
+                for (int col = 0; col < mapWidth; col++) {
+                    if (storage.get(row, col) != 0) {
+                        int x = offsetX + (int)(col * scale);
+                        int y = offsetY + (int)(row * scale);
+                        int w = Math.max(1, (int)scale);
+                        int h = Math.max(1, (int)scale);
+                        
+                        g2d.fillRect(x, y, w, h);
+                    }
+                }
+            }
+        }
+        
+        // Draw viewport rectangle
+        if (view.viewport == null) return;
+        int viewX = offsetX + (int)(view.viewport.getX() * scale);
+        int viewY = offsetY + (int)(view.viewport.getY() * scale);
+        int viewW = (int)(view.viewport.getWidth() * scale);
+        int viewH = (int)(view.viewport.getHeight() * scale);
+        
+        g2d.setColor(new Color(0, 0, 255, 100));
+        g2d.fillRect(viewX, viewY, viewW, viewH);
+        g2d.setColor(Color.BLUE);
+        g2d.setStroke(new BasicStroke(2));
+        g2d.drawRect(viewX, viewY, viewW, viewH);
+    }
+    
+    // Draws a layer's chunks over tiles at pixelsPerTile (in g2d units), from the level
+    // matching screenPixels per tile, with a grey placeholder for chunks still in flight;
+    // returns the number of chunk images drawn
+    private int drawChunks(Graphics2D g2d, MapLayer layer, Rectangle tiles, double pixelsPerTile,
+                           double screenPixels) {
+        ChunkRasterizer rasterizer = derived.rasterizer(layer);
+        int mapWidth = tileMap.getWidth(), mapHeight = tileMap.getHeight();
+        int level = rasterizer.levelFor(screenPixels);
+        int span = ChunkRasterizer.chunkTiles(level);
+        int drawn = 0;
+        for (int cy = tiles.y / span; cy * span < tiles.y + tiles.height; cy++) {
+            for (int cx = tiles.x / span; cx * span < tiles.x + tiles.width; cx++) {
+                int x = (int) Math.round(cx * span * pixelsPerTile);
+                int y = (int) Math.round(cy * span * pixelsPerTile);
+                int x2 = (int) Math.round((cx + 1) * span * pixelsPerTile);
+                int y2 = (int) Math.round((cy + 1) * span * pixelsPerTile);
+                BufferedImage chunk = rasterizer.chunk(level, cx, cy);
+                if (chunk != null) {
+                    g2d.drawImage(chunk, x, y, x2 - x, y2 - y, null);
+                    drawn++;
+                } else {
+                    chunksMissing++;
+                    g2d.setColor(new Color(128, 128, 128, 60));
+                    g2d.fillRect(x, y, Math.min(x2, (int) Math.round(mapWidth * pixelsPerTile)) - x,
+                        Math.min(y2, (int) Math.round(mapHeight * pixelsPerTile)) - y);
+                }
+            }
+        }
+        return drawn;
+    }
+    
+    private static Color withAlpha(Color color, float alpha) {
+        return new Color(color.getRed(), color.getGreen(), color.getBlue(), Math.round(alpha));
+    }
+}
@@ -0,0 +1,189 @@
+package dev.main;
+
+// Resizes every layer of a map with a nine-point anchor. The storages move their
+// kept rows themselves (see TileStorage.resize); this class records the tiles that
+// fall outside the new size as compact bands so restore() can put them back when
+// the resize is undone.
+public final class MapResizer {
+    public static final int ANCHOR_START = 0;  // left / top
+    public static final int ANCHOR_CENTER = 1;
+    public static final int ANCHOR_END = 2;    // right / bottom
+    
+    // Tiles cut away by one resize. Rows and strips that were all zero are stored as null.
+    public static class Removed {
+        final int oldWidth, oldHeight;
+        final int offsetCol, offsetRow;  // where old (0, 0) landed in the resized map
+        final int keepRowStart, keepRowEnd, keepColStart, keepColEnd;
+        final int[][][] topRows;    // [layer][row] old rows above the kept band
+        final int[][][] bottomRows; // [layer][row] old rows below the kept band
+        final int[][] leftStrips;   // [layer] kept rows x cut-off columns on the left
+        final int[][] rightStrips;  // [layer] kept rows x cut-off columns on the right
+        
+        Removed(int layers, int oldWidth, int oldHeight, int offsetCol, int offsetRow,
+                int keepRowStart, int keepRowEnd, int keepColStart, int keepColEnd) {
+            this.oldWidth = oldWidth;
+            this.oldHeight = oldHeight;
+            this.offsetCol = offsetCol;
+            this.offsetRow = offsetRow;
+            this.keepRowStart = keepRowStart;
+            this.keepRowEnd = keepRowEnd;
+            this.keepColStart = keepColStart;
+            this.keepColEnd = keepColEnd;
+            topRows = new int[layers][][];
+            bottomRows = new int[layers][][];
+            leftStrips = new int[layers][];
+            rightStrips = new int[layers][];
+        }
+        
+        public int getOldWidth() {
+            return oldWidth;
+        }
+        
+        public int getOldHeight() {
+            return oldHeight;
+        }
+        
+        // Approximate heap held by the cut-off tiles
+        public long memoryBytes() {
+            long bytes = 0;
+            for (int layer = 0; layer < topRows.length; layer++) {
+                bytes += rowsBytes(topRows[layer]) + rowsBytes(bottomRows[layer])
+                    + stripBytes(leftStrips[layer]) + stripBytes(rightStrips[layer]);
+            }
+            return bytes;
+        }
+        
+        private static long rowsBytes(int[][] rows) {
+            if (rows == null) return 0;
+            long bytes = 16 + 8L * rows.length;
+            for (int[] row : rows) {
+                bytes += stripBytes(row);
+            }
+            return bytes;
+        }
+        
+        private static long stripBytes(int[] strip) {
+            return strip == null ? 0 : 16 + 4L * strip.length;
+        }
+    }
+    
+    private MapResizer() {
+    }
+    
+    // Offset of the old map inside the new one along one axis
+    public static int offsetFor(int anchor, int oldSize, int newSize) {
+        switch (anchor) {
+            case ANCHOR_CENTER: return (newSize - oldSize) / 2;
+            case ANCHOR_END: return newSize - oldSize;
+            default: return 0;
+        }
+    }
+    
+    // Old (r, c) moves to (r + offsetRow, c + offsetCol) in every layer
+    public static Removed resize(TileStorage[] layers, int oldWidth, int oldHeight,
+                                 int newWidth, int newHeight, int offsetCol, int offsetRow) {
+        int keepRowStart = clamp(-offsetRow, 0, oldHeight);
+        int keepRowEnd = clamp(newHeight - offsetRow, keepRowStart, oldHeight);
+        int keepColStart = clamp(-offsetCol, 0, oldWidth);
+        int keepColEnd = clamp(newWidth - offsetCol, keepColStart, oldWidth);
+        int keptRows = keepRowEnd - keepRowStart;
+        
+        Removed removed = new Removed(layers.length, oldWidth, oldHeight, offsetCol, offsetRow,
+            keepRowStart, keepRowEnd, keepColStart, keepColEnd);
+        
+        int[] row = new int[oldWidth];
+        for (int layer = 0; layer < layers.length; layer++) {
+            TileStorage storage = layers[layer];
+            removed.topRows[layer] = copyRows(storage, 0, keepRowStart);
+            removed.bottomRows[layer] = copyRows(storage, keepRowEnd, oldHeight);
+            
+            int leftWidth = keepColStart;
+            int rightWidth = oldWidth - keepColEnd;
+            int[] left = leftWidth > 0 ? new int[keptRows * leftWidth] : null;
+            int[] right = rightWidth > 0 ? new int[keptRows * rightWidth] : null;
+            boolean leftUsed = false, rightUsed = false;
+            
+            if (left != null || right != null) {
+                for (int r = keepRowStart; r < keepRowEnd; r++) {
+                    storage.readRow(r, row);
+                    int k = r - keepRowStart;
+                    if (left != null) {
+                        System.arraycopy(row, 0, left, k * leftWidth, leftWidth);
+                        leftUsed |= !isZero(row, 0, leftWidth);
+                    }
+                    if (right != null) {
+                        System.arraycopy(row, keepColEnd, right, k * rightWidth, rightWidth);
+                        rightUsed |= !isZero(row, keepColEnd, oldWidth);
+                    }
+                }
+            }
+            removed.leftStrips[layer] = leftUsed ? left : null;
+            removed.rightStrips[layer] = rightUsed ? right : null;
+            
+            storage.resize(newWidth, newHeight, offsetCol, offsetRow);
+        }
+        return removed;
+    }
+    
+    // Undoes resize(): shrinks or grows back to the old size and puts the cut-off tiles back
+    public static void restore(TileStorage[] layers, Removed removed) {
+        for (TileStorage storage : layers) {
+            storage.resize(removed.oldWidth, removed.oldHeight, -removed.offsetCol, -removed.offsetRow);
+        }
+        
+        int leftWidth = removed.keepColStart;
+        int rightWidth = removed.oldWidth - removed.keepColEnd;
+        int[] row = new int[removed.oldWidth];
+        for (int layer = 0; layer < layers.length; layer++) {
+            TileStorage storage = layers[layer];
+            
+            int[][] top = removed.topRows[layer];
+            for (int i = 0; i < top.length; i++) {
+                if (top[i] != null) storage.writeRow(i, top[i]);
+            }
+            int[][] bottom = removed.bottomRows[layer];
+            for (int i = 0; i < bottom.length; i++) {
+                if (bottom[i] != null) storage.writeRow(removed.keepRowEnd + i, bottom[i]);
+            }
+            
+            int[] left = removed.leftStrips[layer];
+            int[] right = removed.rightStrips[layer];
+            if (left == null && right == null) continue;
+            for (int r = removed.keepRowStart; r < removed.keepRowEnd; r++) {
+                int k = r - removed.keepRowStart;
+                storage.readRow(r, row);
+                if (left != null) {
+                    System.arraycopy(left, k * leftWidth, row, 0, leftWidth);
+                }
+                if (right != null) {
+                    System.arraycopy(right, k * rightWidth, row, removed.keepColEnd, rightWidth);
+                }
+                storage.writeRow(r, row);
+            }
+        }
+    }
+    
+    // Copies rows [from, to); all-zero rows become null
+    private static int[][] copyRows(TileStorage storage, int from, int to) {
+        int[][] copied = new int[to - from][];
+        for (int r = from; r < to; r++) {
+            int[] row = new int[storage.getWidth()];
+            storage.readRow(r, row);
+            if (!isZero(row, 0, row.length)) {
+                copied[r - from] = row;
+            }
+        }
+        return copied;
+    }
+    
+    private static boolean isZero(int[] row, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (row[i] != 0) return false;
+        }
+        return true;
+    }
+    
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
@@ -0,0 +1,82 @@
+package dev.main;
+
+import java.util.Arrays;
+
+// Tiles painted in one press-drag-release stroke, undone together. The editor
+// queues the mouse samples of a drag and applies them once per frame, so derived
+// data and the repaint follow one transaction for all of them. The stroke is
+// pushed as a single undo entry when it first changes a tile.
+public class PaintStroke implements TileMap.Edit {
+    private final TileMap tileMap;
+    private final MapLayer layer;
+    private final int value;
+    private int[] tiles = new int[48]; // row, col, old value per painted tile
+    private int size;
+    private boolean pushed;
+    private int lastRow = -1, lastCol = -1;
+    
+    public PaintStroke(TileMap tileMap, MapLayer layer, int value) {
+        this.tileMap = tileMap;
+        this.layer = layer;
+        this.value = value;
+    }
+    
+    // False once it cannot take more samples: another layer or value, or undone
+    // (or buried under a later edit) in the middle of the drag
+    public boolean continues(MapLayer layer, int value) {
+        return layer == this.layer && value == this.value && (!pushed || tileMap.lastEdit() == this);
+    }
+    
+    // Paints the tiles under count x, y samples (map pixels, tilePixels per tile) in
+    // one transaction; true if any tile changed
+    public boolean apply(int[] samples, int count, double tilePixels) {
+        boolean changed = false;
+        tileMap.begin();
+        try {
+            for (int i = 0; i < count; i++) {
+                int col = (int) (samples[i * 2] / tilePixels);
+                int row = (int) (samples[i * 2 + 1] / tilePixels);
+                if (row < 0 || row >= tileMap.getHeight() || col < 0 || col >= tileMap.getWidth()) continue;
+                int oldValue = tileMap.get(layer, row, col);
+                if (oldValue == value) continue;
+                
+                if (!pushed) {
+                    tileMap.push(this);
+                    pushed = true;
+                }
+                if (size + 3 > tiles.length) tiles = Arrays.copyOf(tiles, tiles.length * 2);
+                tiles[size++] = row;
+                tiles[size++] = col;
+                tiles[size++] = oldValue;
+                tileMap.set(layer, row, col, value);
+                lastRow = row;
+                lastCol = col;
+                changed = true;
+            }
+        } finally {
+            tileMap.end();
+        }
+        return changed;
+    }
+    
+    // Last tile painted, -1 before the first
+    public int lastRow() {
+        return lastRow;
+    }
+    
+    public int lastCol() {
+        return lastCol;
+    }
+    
+    @Override
+    public void undo() {
+        for (int i = size - 3; i >= 0; i -= 3) {
+            tileMap.set(layer, tiles[i], tiles[i + 1], tiles[i + 2]);
+        }
+    }
+    
+    @Override
+    public long memoryBytes() {
+        return 4L * tiles.length;
+    }
+}
@@ -0,0 +1,383 @@
+package dev.main;
+
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+
+// A* with Jump Point Search over a blocked-tile bitset (row-major, SolidGrid layout).
+// Eight-way movement without cutting corners: a diagonal step needs both adjacent
+// straight tiles to be free. Jumps are loops rather than recursion so long open
+// corridors cannot overflow the stack.
+// Node state lives in an open-addressing table keyed by cell index and the open
+// list is a binary heap of table slots, so only tiles the search actually touches
+// cost memory and nothing is boxed.
+public class PathFinder {
+    
+    public static class Path {
+        public final int[] points; // jump points as cells (row * width + col), start first
+        public final double cost;  // straight steps cost 1, diagonal steps sqrt(2)
+        public final int expanded; // nodes taken off the open list
+        
+        Path(int[] points, double cost, int expanded) {
+            this.points = points;
+            this.cost = cost;
+            this.expanded = expanded;
+        }
+        
+        // Number of single-tile moves along the path
+        public int steps(int width) {
+            int steps = 0;
+            for (int i = 1; i < points.length; i++) {
+                int dr = Math.abs(points[i] / width - points[i - 1] / width);
+                int dc = Math.abs(points[i] % width - points[i - 1] % width);
+                steps += Math.max(dr, dc);
+            }
+            return steps;
+        }
+    }
+    
+    private static final double SQRT2 = Math.sqrt(2);
+    private static final int CLOSED = -2;
+    private static final int NOT_QUEUED = -1;
+    
+    private final long[] blocked;
+    private final int width, height, wordsPerRow;
+    
+    // Per-search state
+    private BooleanSupplier cancelled;
+    private int checks;
+    private int goal;
+    private int goalRow, goalCol;
+    
+    // Node table: open addressing on cell index
+    private int[] keys;
+    private int[] parents;
+    private int[] heapIndex;  // position in heap, NOT_QUEUED or CLOSED
+    private double[] g, f;
+    private int used;
+    
+    // Open list: binary min-heap of table slots ordered by f
+    private int[] heap;
+    private int heapSize;
+    
+    public PathFinder(long[] blocked, int width, int height) {
+        this.blocked = blocked;
+        this.width = width;
+        this.height = height;
+        this.wordsPerRow = SolidGrid.wordsPerRow(width);
+    }
+    
+    public boolean isWalkable(int row, int col) {
+        return row >= 0 && row < height && col >= 0 && col < width
+            && (blocked[row * wordsPerRow + (col >>> 6)] & (1L << (col & 63))) == 0;
+    }
+    
+    // Returns null when the goal cannot be reached. Throws CancellationException as
+    // soon as cancelled reports true; it is polled every few thousand steps.
+    public Path find(int startRow, int startCol, int goalRow, int goalCol, BooleanSupplier cancelled) {
+        if (!isWalkable(startRow, startCol) || !isWalkable(goalRow, goalCol)) {
+            return null;
+        }
+        this.cancelled = cancelled;
+        this.checks = 0;
+        this.goalRow = goalRow;
+        this.goalCol = goalCol;
+        this.goal = goalRow * width + goalCol;
+        int start = startRow * width + startCol;
+        
+        keys = new int[1024];
+        Arrays.fill(keys, -1);
+        parents = new int[1024];
+        heapIndex = new int[1024];
+        g = new double[1024];
+        f = new double[1024];
+        used = 0;
+        heap = new int[256];
+        heapSize = 0;
+        
+        int slot = slotFor(start);
+        parents[slot] = -1;
+        g[slot] = 0;
+        f[slot] = heuristic(startRow, startCol);
+        push(slot);
+        
+        int expanded = 0;
+        int[] neighbours = new int[16];
+        while (heapSize > 0) {
+            slot = pop();
+            heapIndex[slot] = CLOSED;
+            expanded++;
+            int cell = keys[slot];
+            if (cell == goal) {
+                return new Path(buildPath(slot), g[slot], expanded);
+            }
+            
+            int row = cell / width;
+            int col = cell % width;
+            double base = g[slot]; // slots move when the table grows
+            int count = neighbours(slot, row, col, neighbours);
+            for (int i = 0; i < count; i += 2) {
+                int jump = jump(neighbours[i], neighbours[i + 1], row, col);
+                if (jump < 0) continue;
+                
+                int jumpRow = jump / width;
+                int jumpCol = jump % width;
+                int next = slotFor(jump);
+                if (heapIndex[next] == CLOSED) continue;
+                
+                double cost = base + octile(Math.abs(jumpRow - row), Math.abs(jumpCol - col));
+                if (cost < g[next]) {
+                    g[next] = cost;
+                    f[next] = cost + heuristic(jumpRow, jumpCol);
+                    parents[next] = cell;
+                    if (heapIndex[next] == NOT_QUEUED) {
+                        push(next);
+                    } else {
+                        siftUp(heapIndex[next]);
+                    }
+                }
+            }
+        }
+        return null;
+    }
+    
+    // Pruned neighbours (row, col pairs) of a node given the direction it was reached from
+    private int neighbours(int slot, int row, int col, int[] out) {
+        int n = 0;
+        int parent = parents[slot];
+        if (parent < 0) {
+            for (int dr = -1; dr <= 1; dr++) {
+                for (int dc = -1; dc <= 1; dc++) {
+                    if (dr == 0 && dc == 0) continue;
+                    if (!isWalkable(row + dr, col + dc)) continue;
+                    if (dr != 0 && dc != 0
+                        && (!isWalkable(row + dr, col) || !isWalkable(row, col + dc))) continue;
+                    out[n++] = row + dr;
+                    out[n++] = col + dc;
+                }
+            }
+            return n;
+        }
+        
+        int dr = Integer.signum(row - parent / width);
+        int dc = Integer.signum(col - parent % width);
+        if (dr != 0 && dc != 0) {
+            boolean vertical = isWalkable(row + dr, col);
+            boolean horizontal = isWalkable(row, col + dc);
+            if (vertical) { out[n++] = row + dr; out[n++] = col; }
+            if (horizontal) { out[n++] = row; out[n++] = col + dc; }
+            if (vertical && horizontal) { out[n++] = row + dr; out[n++] = col + dc; }
+        } else if (dc != 0) {
+            boolean next = isWalkable(row, col + dc);
+            boolean below = isWalkable(row + 1, col);
+            boolean above = isWalkable(row - 1, col);
+            if (next) {
+                out[n++] = row; out[n++] = col + dc;
+                if (below) { out[n++] = row + 1; out[n++] = col + dc; }
+                if (above) { out[n++] = row - 1; out[n++] = col + dc; }
+            }
+            if (below) { out[n++] = row + 1; out[n++] = col; }
+            if (above) { out[n++] = row - 1; out[n++] = col; }
+        } else {
+            boolean next = isWalkable(row + dr, col);
+            boolean right = isWalkable(row, col + 1);
+            boolean left = isWalkable(row, col - 1);
+            if (next) {
+                out[n++] = row + dr; out[n++] = col;
+                if (right) { out[n++] = row + dr; out[n++] = col + 1; }
+                if (left) { out[n++] = row + dr; out[n++] = col - 1; }
+            }
+            if (right) { out[n++] = row; out[n++] = col + 1; }
+            if (left) { out[n++] = row; out[n++] = col - 1; }
+        }
+        return n;
+    }
+    
+    // Jump from (fromRow, fromCol) towards (row, col) and onwards in the same direction;
+    // returns the jump point cell or -1
+    private int jump(int row, int col, int fromRow, int fromCol) {
+        int dr = row - fromRow;
+        int dc = col - fromCol;
+        if (dr == 0 || dc == 0) {
+            return jumpStraight(row, col, dr, dc);
+        }
+        while (true) {
+            poll();
+            if (!isWalkable(row, col)) return -1;
+            if (row == goalRow && col == goalCol) return goal;
+            // A diagonal step is a jump point when a straight jump from it finds one
+            if (jumpStraight(row, col + dc, 0, dc) >= 0 || jumpStraight(row + dr, col, dr, 0) >= 0) {
+                return row * width + col;
+            }
+            if (!isWalkable(row, col + dc) || !isWalkable(row + dr, col)) return -1;
+            row += dr;
+            col += dc;
+        }
+    }
+    
+    private int jumpStraight(int row, int col, int dr, int dc) {
+        while (true) {
+            poll();
+            if (!isWalkable(row, col)) return -1;
+            if (row == goalRow && col == goalCol) return goal;
+            if (dc != 0) {
+                // Forced: an open tile beside us that was blocked beside the previous tile
+                if ((isWalkable(row - 1, col) && !isWalkable(row - 1, col - dc))
+                    || (isWalkable(row + 1, col) && !isWalkable(row + 1, col - dc))) {
+                    return row * width + col;
+                }
+            } else {
+                if ((isWalkable(row, col - 1) && !isWalkable(row - dr, col - 1))
+                    || (isWalkable(row, col + 1) && !isWalkable(row - dr, col + 1))) {
+                    return row * width + col;
+                }
+            }
+            row += dr;
+            col += dc;
+        }
+    }
+    
+    private void poll() {
+        if ((++checks & 4095) == 0 && cancelled.getAsBoolean()) {
+            throw new CancellationException();
+        }
+    }
+    
+    private double heuristic(int row, int col) {
+        return octile(Math.abs(row - goalRow), Math.abs(col - goalCol));
+    }
+    
+    private static double octile(int dr, int dc) {
+        return Math.max(dr, dc) + (SQRT2 - 1) * Math.min(dr, dc);
+    }
+    
+    private int[] buildPath(int slot) {
+        int length = 0;
+        for (int cell = keys[slot]; cell >= 0; cell = parents[find(cell)]) {
+            length++;
+        }
+        int[] points = new int[length];
+        int i = length;
+        for (int cell = keys[slot]; cell >= 0; cell = parents[find(cell)]) {
+            points[--i] = cell;
+        }
+        return points;
+    }
+    
+    // ---------------------------------------------------------------------
+    // Node table
+    // ---------------------------------------------------------------------
+    
+    private int hash(int cell) {
+        int h = cell * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+    
+    // Existing slot of a cell, or -1
+    private int find(int cell) {
+        int mask = keys.length - 1;
+        for (int i = hash(cell) & mask; ; i = (i + 1) & mask) {
+            if (keys[i] == cell) return i;
+            if (keys[i] == -1) return -1;
+        }
+    }
+    
+    // Slot of a cell, inserting an unvisited node if needed
+    private int slotFor(int cell) {
+        if (used * 2 >= keys.length) {
+            grow();
+        }
+        int mask = keys.length - 1;
+        for (int i = hash(cell) & mask; ; i = (i + 1) & mask) {
+            if (keys[i] == cell) return i;
+            if (keys[i] == -1) {
+                keys[i] = cell;
+                parents[i] = -1;
+                heapIndex[i] = NOT_QUEUED;
+                g[i] = Double.POSITIVE_INFINITY;
+                used++;
+                return i;
+            }
+        }
+    }
+    
+    private void grow() {
+        int[] oldKeys = keys, oldParents = parents, oldHeapIndex = heapIndex;
+        double[] oldG = g, oldF = f;
+        int size = oldKeys.length * 2;
+        keys = new int[size];
+        Arrays.fill(keys, -1);
+        parents = new int[size];
+        heapIndex = new int[size];
+        g = new double[size];
+        f = new double[size];
+        int mask = size - 1;
+        for (int old = 0; old < oldKeys.length; old++) {
+            if (oldKeys[old] == -1) continue;
+            int i = hash(oldKeys[old]) & mask;
+            while (keys[i] != -1) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = oldKeys[old];
+            parents[i] = oldParents[old];
+            g[i] = oldG[old];
+            f[i] = oldF[old];
+            heapIndex[i] = oldHeapIndex[old];
+            if (heapIndex[i] >= 0) {
+                heap[heapIndex[i]] = i;
+            }
+        }
+    }
+    
+    // ---------------------------------------------------------------------
+    // Binary heap
+    // ---------------------------------------------------------------------
+    
+    private void push(int slot) {
+        if (heapSize == heap.length) {
+            heap = Arrays.copyOf(heap, heapSize * 2);
+        }
+        heap[heapSize] = slot;
+        heapIndex[slot] = heapSize;
+        siftUp(heapSize++);
+    }
+    
+    private int pop() {
+        int top = heap[0];
+        heapSize--;
+        if (heapSize > 0) {
+            heap[0] = heap[heapSize];
+            heapIndex[heap[0]] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+    
+    private void siftUp(int pos) {
+        int slot = heap[pos];
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            if (f[heap[parent]] <= f[slot]) break;
+            heap[pos] = heap[parent];
+            heapIndex[heap[pos]] = pos;
+            pos = parent;
+        }
+        heap[pos] = slot;
+        heapIndex[slot] = pos;
+    }
+    
+    private void siftDown(int pos) {
+        int slot = heap[pos];
+        while (true) {
+            int child = pos * 2 + 1;
+            if (child >= heapSize) break;
+            if (child + 1 < heapSize && f[heap[child + 1]] < f[heap[child]]) child++;
+            if (f[heap[child]] >= f[slot]) break;
+            heap[pos] = heap[child];
+            heapIndex[heap[pos]] = pos;
+            pos = child;
+        }
+        heap[pos] = slot;
+        heapIndex[slot] = pos;
+    }
+}
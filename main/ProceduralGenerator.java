@@ -0,0 +1,284 @@
+package dev.main;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+// Procedural fills for a single layer. Every generator works on a region of the
+// layer's storage and splits the rows into bands (see RowBands).
+// Output is 1 (solid) / 0 (walkable) and depends only on the seed, never on how
+// the work was split between threads.
+public final class ProceduralGenerator {
+    private ProceduralGenerator() {
+    }
+    
+    // ---------------------------------------------------------------------
+    // Noise thresholding
+    // ---------------------------------------------------------------------
+    
+    // Fractal Perlin noise; tiles whose normalized noise value falls below the
+    // density become solid. featureSize is the wavelength of the first octave in tiles.
+    public static void noise(TileStorage layer, Rectangle region, long seed,
+                             double density, double featureSize, int octaves) {
+        int[] perm = permutation(seed);
+        double baseFrequency = 1.0 / Math.max(1.0, featureSize);
+        
+        RowBands.forEach(region.height, (rowStart, rowEnd) -> {
+            int[] row = new int[region.width];
+            for (int r = rowStart; r < rowEnd; r++) {
+                for (int c = 0; c < region.width; c++) {
+                    double frequency = baseFrequency;
+                    double amplitude = 1.0;
+                    double sum = 0.0;
+                    double norm = 0.0;
+                    for (int o = 0; o < octaves; o++) {
+                        sum += amplitude * perlin(perm, c * frequency, r * frequency);
+                        norm += amplitude;
+                        frequency *= 2.0;
+                        amplitude *= 0.5;
+                    }
+                    // Perlin output is roughly [-0.7, 0.7]; stretch to [0, 1]
+                    double value = 0.5 + sum / norm * 0.7;
+                    row[c] = value < density ? 1 : 0;
+                }
+                layer.writeSpan(region.y + r, region.x, row, region.width);
+            }
+        });
+    }
+    
+    private static int[] permutation(long seed) {
+        int[] p = new int[256];
+        for (int i = 0; i < 256; i++) {
+            p[i] = i;
+        }
+        Random random = new Random(seed);
+        for (int i = 255; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = p[i];
+            p[i] = p[j];
+            p[j] = tmp;
+        }
+        int[] perm = new int[512];
+        for (int i = 0; i < 512; i++) {
+            perm[i] = p[i & 255];
+        }
+        return perm;
+    }
+    
+    private static double perlin(int[] perm, double x, double y) {
+        int xi = (int) Math.floor(x);
+        int yi = (int) Math.floor(y);
+        double xf = x - xi;
+        double yf = y - yi;
+        xi &= 255;
+        yi &= 255;
+        
+        double u = fade(xf);
+        double v = fade(yf);
+        
+        int aa = perm[perm[xi] + yi];
+        int ab = perm[perm[xi] + yi + 1];
+        int ba = perm[perm[xi + 1] + yi];
+        int bb = perm[perm[xi + 1] + yi + 1];
+        
+        double x1 = lerp(u, grad(aa, xf, yf), grad(ba, xf - 1, yf));
+        double x2 = lerp(u, grad(ab, xf, yf - 1), grad(bb, xf - 1, yf - 1));
+        return lerp(v, x1, x2);
+    }
+    
+    private static double fade(double t) {
+        return t * t * t * (t * (t * 6 - 15) + 10);
+    }
+    
+    private static double lerp(double t, double a, double b) {
+        return a + t * (b - a);
+    }
+    
+    private static double grad(int hash, double x, double y) {
+        switch (hash & 7) {
+            case 0: return x + y;
+            case 1: return -x + y;
+            case 2: return x - y;
+            case 3: return -x - y;
+            case 4: return x;
+            case 5: return -x;
+            case 6: return y;
+            default: return -y;
+        }
+    }
+    
+    // ---------------------------------------------------------------------
+    // Cellular automata caves
+    // ---------------------------------------------------------------------
+    
+    // Random fill followed by the 4-5 smoothing rule. Cells outside the region
+    // count as walls so caves are always closed off at the region border.
+    public static void caves(TileStorage layer, Rectangle region, long seed,
+                             double fillProbability, int iterations) {
+        int width = region.width;
+        int height = region.height;
+        byte[] initial = new byte[width * height];
+        
+        RowBands.forEach(height, (rowStart, rowEnd) -> {
+            for (int r = rowStart; r < rowEnd; r++) {
+                for (int c = 0; c < width; c++) {
+                    initial[r * width + c] = (byte) (unitHash(seed, c, r) < fillProbability ? 1 : 0);
+                }
+            }
+        });
+        
+        byte[] current = initial;
+        byte[] next = new byte[width * height];
+        for (int i = 0; i < iterations; i++) {
+            byte[] src = current;
+            byte[] dst = next;
+            RowBands.forEach(height, (rowStart, rowEnd) -> {
+                // Vertical 3-cell wall sums per column, reused for the three horizontal neighbours
+                int[] colSum = new int[width + 2];
+                colSum[0] = 3;
+                colSum[width + 1] = 3;
+                for (int r = rowStart; r < rowEnd; r++) {
+                    int above = (r - 1) * width;
+                    int here = r * width;
+                    int below = (r + 1) * width;
+                    for (int c = 0; c < width; c++) {
+                        colSum[c + 1] = (r == 0 ? 1 : src[above + c])
+                            + src[here + c]
+                            + (r == height - 1 ? 1 : src[below + c]);
+                    }
+                    for (int c = 0; c < width; c++) {
+                        int wall = src[here + c];
+                        int walls = colSum[c] + colSum[c + 1] + colSum[c + 2] - wall;
+                        dst[here + c] = (byte) (walls >= 5 || (wall != 0 && walls >= 4) ? 1 : 0);
+                    }
+                }
+            });
+            next = current;
+            current = dst;
+        }
+        
+        byte[] result = current;
+        RowBands.forEach(height, (rowStart, rowEnd) -> {
+            int[] row = new int[width];
+            for (int r = rowStart; r < rowEnd; r++) {
+                for (int c = 0; c < width; c++) {
+                    row[c] = result[r * width + c];
+                }
+                layer.writeSpan(region.y + r, region.x, row, width);
+            }
+        });
+    }
+    
+    // Stateless per-cell random in [0, 1) so the fill does not depend on band order
+    private static double unitHash(long seed, int x, int y) {
+        long h = seed ^ ((long) x * 0x9E3779B97F4A7C15L) ^ ((long) y * 0xC2B2AE3D27D4EB4FL);
+        h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+        h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return (h >>> 11) * 0x1.0p-53;
+    }
+    
+    // ---------------------------------------------------------------------
+    // BSP rooms and corridors
+    // ---------------------------------------------------------------------
+    
+    // Splits the region recursively until leaves are smaller than twice the
+    // minimum room size, places one room per leaf and joins sibling rooms with
+    // L-shaped corridors. Everything else is solid.
+    public static void rooms(TileStorage layer, Rectangle region, long seed, int minRoomSize) {
+        Random random = new Random(seed);
+        int minLeaf = Math.max(3, minRoomSize) + 2;
+        List<Rectangle> carved = new ArrayList<>();
+        split(new Rectangle(0, 0, region.width, region.height), minLeaf, random, carved);
+        
+        // Bucket carved rectangles by row band so each band only scans its own spans
+        int bands = RowBands.bandCount(region.height);
+        List<List<Rectangle>> byBand = new ArrayList<>(bands);
+        for (int i = 0; i < bands; i++) {
+            byBand.add(new ArrayList<>());
+        }
+        for (Rectangle rect : carved) {
+            int first = Math.max(0, rect.y) / RowBands.BAND_ROWS;
+            int last = Math.min(region.height - 1, rect.y + rect.height - 1) / RowBands.BAND_ROWS;
+            for (int b = first; b <= last; b++) {
+                byBand.get(b).add(rect);
+            }
+        }
+        
+        RowBands.forEach(region.height, (rowStart, rowEnd) -> {
+            int[] row = new int[region.width];
+            for (int r = rowStart; r < rowEnd; r++) {
+                Arrays.fill(row, 1);
+                for (Rectangle rect : byBand.get(r / RowBands.BAND_ROWS)) {
+                    if (r >= rect.y && r < rect.y + rect.height) {
+                        int from = Math.max(0, rect.x);
+                        int to = Math.min(region.width, rect.x + rect.width);
+                        if (from < to) {
+                            Arrays.fill(row, from, to, 0);
+                        }
+                    }
+                }
+                layer.writeSpan(region.y + r, region.x, row, region.width);
+            }
+        });
+    }
+    
+    // Returns the room carved in this subtree, used as the corridor endpoint
+    private static Rectangle split(Rectangle area, int minLeaf, Random random, List<Rectangle> carved) {
+        boolean canSplitH = area.height >= minLeaf * 2;
+        boolean canSplitV = area.width >= minLeaf * 2;
+        
+        if (!canSplitH && !canSplitV) {
+            // Leaf: room with a one-tile wall margin inside the partition
+            int maxW = Math.max(1, area.width - 2);
+            int maxH = Math.max(1, area.height - 2);
+            int w = Math.max(1, maxW / 2 + random.nextInt(maxW - maxW / 2 + 1));
+            int h = Math.max(1, maxH / 2 + random.nextInt(maxH - maxH / 2 + 1));
+            int x = area.x + 1 + random.nextInt(Math.max(1, area.width - w - 1));
+            int y = area.y + 1 + random.nextInt(Math.max(1, area.height - h - 1));
+            Rectangle room = new Rectangle(x, y, Math.min(w, area.width), Math.min(h, area.height));
+            carved.add(room);
+            return room;
+        }
+        
+        boolean horizontal;
+        if (canSplitH && canSplitV) {
+            horizontal = area.height > area.width ? true : area.width > area.height ? false : random.nextBoolean();
+        } else {
+            horizontal = canSplitH;
+        }
+        
+        Rectangle first, second;
+        if (horizontal) {
+            int cut = minLeaf + random.nextInt(area.height - minLeaf * 2 + 1);
+            first = new Rectangle(area.x, area.y, area.width, cut);
+            second = new Rectangle(area.x, area.y + cut, area.width, area.height - cut);
+        } else {
+            int cut = minLeaf + random.nextInt(area.width - minLeaf * 2 + 1);
+            first = new Rectangle(area.x, area.y, cut, area.height);
+            second = new Rectangle(area.x + cut, area.y, area.width - cut, area.height);
+        }
+        
+        Rectangle a = split(first, minLeaf, random, carved);
+        Rectangle b = split(second, minLeaf, random, carved);
+        connect(a, b, random, carved);
+        return random.nextBoolean() ? a : b;
+    }
+    
+    private static void connect(Rectangle a, Rectangle b, Random random, List<Rectangle> carved) {
+        int ax = a.x + a.width / 2;
+        int ay = a.y + a.height / 2;
+        int bx = b.x + b.width / 2;
+        int by = b.y + b.height / 2;
+        
+        if (random.nextBoolean()) {
+            carved.add(new Rectangle(Math.min(ax, bx), ay, Math.abs(bx - ax) + 1, 1));
+            carved.add(new Rectangle(bx, Math.min(ay, by), 1, Math.abs(by - ay) + 1));
+        } else {
+            carved.add(new Rectangle(ax, Math.min(ay, by), 1, Math.abs(by - ay) + 1));
+            carved.add(new Rectangle(Math.min(ax, bx), by, Math.abs(bx - ax) + 1, 1));
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package dev.main;
+
+import java.awt.Rectangle;
+import java.util.BitSet;
+
+// Potentially-visible sets kept between saves. A solid tile changing can only alter
+// what viewers within the view radius see, i.e. the sets of chunks within reach
+// of its chunk, so edits mark just those chunks and the next save recasts them
+// and reuses the rest. Edits arrive on the EDT while saves compute on a worker,
+// one save at a time. A save takes its chunks before its snapshot and edits from
+// then on are marked in the chunk layout it computes, so an edit racing with the
+// snapshot is redone by the next save even while no sets were stored yet.
+public class PvsCache {
+    private Visibility.Pvs pvs;          // last computed sets; null until the first save
+    private int width, height;           // map size pvs was computed for
+    private final BitSet dirty = new BitSet();
+    private long generation;             // bumped by clear() so a racing save does not store stale sets
+    private Update running;              // the save computing sets now, if any
+    
+    // One save's view of the cache, taken before the map is snapshot
+    public class Update {
+        private final Visibility.Pvs previous;
+        private final int previousWidth, previousHeight;
+        private final BitSet chunks;
+        private final long startedIn;
+        private final int chunkSize, reach, chunksX, chunksY; // layout the save computes
+        private boolean stored;
+        
+        Update(BitSet chunks, int mapWidth, int mapHeight, int chunkSize, int radius) {
+            this.previous = pvs;
+            this.previousWidth = width;
+            this.previousHeight = height;
+            this.chunks = chunks;
+            this.startedIn = generation;
+            this.chunkSize = chunkSize;
+            this.reach = (radius + chunkSize - 1) / chunkSize;
+            this.chunksX = (mapWidth + chunkSize - 1) / chunkSize;
+            this.chunksY = (mapHeight + chunkSize - 1) / chunkSize;
+        }
+        
+        // Sets for the snapshot's solid tiles; recasts only the marked chunks when the
+        // size and settings still match, everything otherwise
+        public Visibility.Pvs compute(long[] blocked, int mapWidth, int mapHeight, int chunkSize, int radius) {
+            Visibility.Pvs result;
+            if (previous != null && previous.chunkSize == chunkSize && previous.radius == radius
+                    && previousWidth == mapWidth && previousHeight == mapHeight) {
+                result = Visibility.updatePvs(previous, blocked, mapWidth, mapHeight, chunks);
+            } else {
+                result = Visibility.computePvs(blocked, mapWidth, mapHeight, chunkSize, radius);
+            }
+            store(this, result, mapWidth, mapHeight);
+            return result;
+        }
+        
+        // Lets the next save begin. Call once, also when the save failed; without
+        // stored sets the chunks taken here are lost, so the next save computes everything.
+        public void end() {
+            synchronized (PvsCache.this) {
+                if (running != this) return;
+                running = null;
+                if (!stored) pvs = null;
+                PvsCache.this.notifyAll();
+            }
+        }
+    }
+    
+    // On the save worker, right before the snapshot; waits while another save computes,
+    // so every save starts from the sets the one before it stored
+    public synchronized Update begin(int mapWidth, int mapHeight, int chunkSize, int radius)
+            throws InterruptedException {
+        while (running != null) {
+            wait();
+        }
+        running = new Update((BitSet) dirty.clone(), mapWidth, mapHeight, chunkSize, radius);
+        dirty.clear();
+        return running;
+    }
+    
+    private synchronized void store(Update update, Visibility.Pvs result, int mapWidth, int mapHeight) {
+        if (update.startedIn != generation) return;
+        pvs = result;
+        width = mapWidth;
+        height = mapHeight;
+        update.stored = true;
+    }
+    
+    // Tiles in region (x = col, y = row) were edited
+    public synchronized void regionChanged(Rectangle region) {
+        if (region.isEmpty()) return;
+        if (running != null) {
+            markChunks(region, running.chunkSize, running.reach, running.chunksX, running.chunksY);
+        } else if (pvs != null) {
+            markChunks(region, pvs.chunkSize, pvs.reach, pvs.chunksX, pvs.chunksY);
+        }
+    }
+    
+    private void markChunks(Rectangle region, int size, int reach, int chunksX, int chunksY) {
+        int firstRow = Math.max(0, region.y / size - reach);
+        int lastRow = Math.min(chunksY - 1, (region.y + region.height - 1) / size + reach);
+        int firstCol = Math.max(0, region.x / size - reach);
+        int lastCol = Math.min(chunksX - 1, (region.x + region.width - 1) / size + reach);
+        for (int row = firstRow; row <= lastRow; row++) {
+            dirty.set(row * chunksX + firstCol, row * chunksX + lastCol + 1);
+        }
+    }
+    
+    // The map was replaced or resized; the next save computes everything
+    public synchronized void clear() {
+        pvs = null;
+        dirty.clear();
+        generation++;
+    }
+}
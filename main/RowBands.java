@@ -0,0 +1,58 @@
+package dev.main;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Splits row ranges into bands on the common ForkJoin pool. Leaf bands are
+// aligned to BAND_ROWS, so rowStart / BAND_ROWS identifies a band and callers can
+// keep per-band results in plain arrays without synchronisation.
+final class RowBands {
+    static final int BAND_ROWS = 32;
+    
+    private RowBands() {
+    }
+    
+    // Work applied to rows [rowStart, rowEnd)
+    interface RowBand {
+        void apply(int rowStart, int rowEnd);
+    }
+    
+    static int bandCount(int rows) {
+        return (rows + BAND_ROWS - 1) / BAND_ROWS;
+    }
+    
+    static void forEach(int rows, RowBand band) {
+        forEach(0, rows, band);
+    }
+    
+    // Rows [rowStart, rowEnd) only; rowStart must be a band boundary
+    static void forEach(int rowStart, int rowEnd, RowBand band) {
+        if (rowEnd - rowStart <= BAND_ROWS) {
+            band.apply(rowStart, rowEnd);
+        } else {
+            ForkJoinPool.commonPool().invoke(new BandTask(band, rowStart, rowEnd));
+        }
+    }
+    
+    private static class BandTask extends RecursiveAction {
+        private final RowBand band;
+        private final int rowStart, rowEnd;
+        
+        BandTask(RowBand band, int rowStart, int rowEnd) {
+            this.band = band;
+            this.rowStart = rowStart;
+            this.rowEnd = rowEnd;
+        }
+        
+        @Override
+        protected void compute() {
+            int bands = bandCount(rowEnd - rowStart);
+            if (bands <= 1) {
+                band.apply(rowStart, rowEnd);
+            } else {
+                int mid = rowStart + (bands / 2) * BAND_ROWS;
+                invokeAll(new BandTask(band, rowStart, mid), new BandTask(band, mid, rowEnd));
+            }
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package dev.main;
+
+import java.awt.Rectangle;
+
+// Query structure over the solid (1) tiles of one layer: a row-major bitset plus
+// a summed-area table, so "any solid" and "count solid" over a rectangle are a
+// handful of lookups, and rays walk the bitset cell by cell (Amanatides-Woo DDA).
+// Edits update the bitset at once; the table is only marked dirty from the edited
+// corner and brought up to date on the next counting query, so a drag over many
+// tiles pays for one partial rebuild.
+public class SolidGrid {
+    
+    // First solid tile a ray entered; distance is the ray parameter in [0, 1]
+    public static class Hit {
+        public final int row, col;
+        public final double distance;
+        
+        Hit(int row, int col, double distance) {
+            this.row = row;
+            this.col = col;
+            this.distance = distance;
+        }
+    }
+    
+    private final int width, height;
+    private final int wordsPerRow;
+    private final long[] bits;  // row-major, bit (col & 63) of word row * wordsPerRow + (col >> 6)
+    private final int[] sums;   // (height + 1) x (width + 1), sums[(r + 1) * (width + 1) + c + 1] = solid in [0..r] x [0..c]
+    private int dirtyRow, dirtyCol; // table entries at or below/right of this cell are stale; (height, width) when clean
+    
+    public SolidGrid(TileStorage source) {
+        width = source.getWidth();
+        height = source.getHeight();
+        wordsPerRow = wordsPerRow(width);
+        bits = new long[wordsPerRow * height];
+        sums = new int[(width + 1) * (height + 1)];
+        
+        RowBands.forEach(height, (rowStart, rowEnd) -> {
+            int[] row = new int[width];
+            for (int r = rowStart; r < rowEnd; r++) {
+                source.readRow(r, row);
+                setRow(r, row, 0, width);
+            }
+        });
+        dirtyRow = 0;
+        dirtyCol = 0;
+    }
+    
+    public int getWidth() {
+        return width;
+    }
+    
+    public int getHeight() {
+        return height;
+    }
+    
+    // Re-reads the tiles in region (x = col, y = row) from the layer after an edit
+    public void update(TileStorage source, Rectangle region) {
+        Rectangle area = region.intersection(new Rectangle(0, 0, width, height));
+        if (area.isEmpty()) return;
+        int[] row = new int[area.width];
+        for (int r = area.y; r < area.y + area.height; r++) {
+            source.readSpan(r, area.x, row, area.width);
+            setRow(r, row, area.x, area.width);
+        }
+        dirtyRow = Math.min(dirtyRow, area.y);
+        dirtyCol = Math.min(dirtyCol, area.x);
+    }
+    
+    private void setRow(int r, int[] values, int col, int length) {
+        int base = r * wordsPerRow;
+        for (int i = 0; i < length; i++) {
+            int c = col + i;
+            long mask = 1L << (c & 63);
+            if (values[i] == 1) {
+                bits[base + (c >>> 6)] |= mask;
+            } else {
+                bits[base + (c >>> 6)] &= ~mask;
+            }
+        }
+    }
+    
+    // ORs this grid's bits into a bitset of the same size and layout
+    void orInto(long[] target) {
+        for (int i = 0; i < bits.length; i++) {
+            target[i] |= bits[i];
+        }
+    }
+    
+    // ORs the bits inside window (x = col, y = row, within the grid) into a bitset
+    // of the window's size, laid out like this one with window.width columns
+    void orInto(long[] target, Rectangle window) {
+        int targetWords = wordsPerRow(window.width);
+        int firstWord = window.x >>> 6, shift = window.x & 63;
+        long lastMask = (window.width & 63) == 0 ? -1L : (1L << (window.width & 63)) - 1;
+        for (int r = 0; r < window.height; r++) {
+            int source = (window.y + r) * wordsPerRow + firstWord;
+            int base = r * targetWords;
+            for (int w = 0; w < targetWords; w++) {
+                long word = bits[source + w] >>> shift;
+                if (shift != 0 && firstWord + w + 1 < wordsPerRow) word |= bits[source + w + 1] << (64 - shift);
+                if (w == targetWords - 1) word &= lastMask;
+                target[base + w] |= word;
+            }
+        }
+    }
+    
+    public static int wordsPerRow(int width) {
+        return (width + 63) >>> 6;
+    }
+    
+    public boolean isSolid(int row, int col) {
+        if (row < 0 || row >= height || col < 0 || col >= width) return false;
+        return (bits[row * wordsPerRow + (col >>> 6)] & (1L << (col & 63))) != 0;
+    }
+    
+    // Solid tiles inside region, clipped to the map
+    public int countSolid(Rectangle region) {
+        int col0 = Math.max(0, region.x);
+        int row0 = Math.max(0, region.y);
+        int col1 = Math.min(width, region.x + region.width);
+        int row1 = Math.min(height, region.y + region.height);
+        if (col0 >= col1 || row0 >= row1) return 0;
+        
+        refreshSums();
+        int stride = width + 1;
+        return sums[row1 * stride + col1] - sums[row0 * stride + col1]
+            - sums[row1 * stride + col0] + sums[row0 * stride + col0];
+    }
+    
+    public boolean anySolid(Rectangle region) {
+        return countSolid(region) > 0;
+    }
+    
+    // Rebuilds the stale lower-right part of the table
+    private void refreshSums() {
+        if (dirtyRow >= height || dirtyCol >= width) return;
+        int stride = width + 1;
+        for (int r = dirtyRow; r < height; r++) {
+            int base = r * wordsPerRow;
+            int rowSum = 0;
+            // Row prefix up to dirtyCol from the bitset, popcount a word at a time
+            int fullWords = dirtyCol >>> 6;
+            for (int w = 0; w < fullWords; w++) {
+                rowSum += Long.bitCount(bits[base + w]);
+            }
+            if ((dirtyCol & 63) != 0) {
+                rowSum += Long.bitCount(bits[base + fullWords] & ((1L << (dirtyCol & 63)) - 1));
+            }
+            int above = r * stride;
+            int here = (r + 1) * stride;
+            for (int c = dirtyCol; c < width; c++) {
+                if ((bits[base + (c >>> 6)] & (1L << (c & 63))) != 0) rowSum++;
+                sums[here + c + 1] = sums[above + c + 1] + rowSum;
+            }
+        }
+        dirtyRow = height;
+        dirtyCol = width;
+    }
+    
+    // Walks the segment (x0, y0) -> (x1, y1), in tile units, through the grid and
+    // returns the first solid tile it enters, or null. Parts outside the map are empty.
+    public Hit raycast(double x0, double y0, double x1, double y1) {
+        double dx = x1 - x0;
+        double dy = y1 - y0;
+        int col = (int) Math.floor(x0);
+        int row = (int) Math.floor(y0);
+        int endCol = (int) Math.floor(x1);
+        int endRow = (int) Math.floor(y1);
+        
+        int stepCol = dx > 0 ? 1 : dx < 0 ? -1 : 0;
+        int stepRow = dy > 0 ? 1 : dy < 0 ? -1 : 0;
+        // Ray parameter at the next vertical / horizontal grid line, and per whole tile
+        double deltaCol = stepCol != 0 ? Math.abs(1.0 / dx) : Double.POSITIVE_INFINITY;
+        double deltaRow = stepRow != 0 ? Math.abs(1.0 / dy) : Double.POSITIVE_INFINITY;
+        double nextCol = stepCol > 0 ? (col + 1 - x0) * deltaCol
+            : stepCol < 0 ? (x0 - col) * deltaCol : Double.POSITIVE_INFINITY;
+        double nextRow = stepRow > 0 ? (row + 1 - y0) * deltaRow
+            : stepRow < 0 ? (y0 - row) * deltaRow : Double.POSITIVE_INFINITY;
+        
+        double t = 0.0;
+        int steps = Math.abs(endCol - col) + Math.abs(endRow - row);
+        for (int i = 0; ; i++) {
+            if (isSolid(row, col)) {
+                return new Hit(row, col, t);
+            }
+            if (i == steps) {
+                return null;
+            }
+            if (nextCol < nextRow) {
+                t = nextCol;
+                nextCol += deltaCol;
+                col += stepCol;
+            } else {
+                t = nextRow;
+                nextRow += deltaRow;
+                row += stepRow;
+            }
+        }
+    }
+    
+    // True when no solid tile lies between the centres of two tiles
+    public boolean lineOfSight(int row0, int col0, int row1, int col1) {
+        return raycast(col0 + 0.5, row0 + 0.5, col1 + 0.5, row1 + 0.5) == null;
+    }
+}
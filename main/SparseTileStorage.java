@@ -0,0 +1,154 @@
+package dev.main;
+
+import java.util.Arrays;
+
+// Only non-zero tiles are stored: per row, sorted column indices with their values.
+// Good for layers that are mostly empty; lookups are a binary search within the row.
+public class SparseTileStorage implements TileStorage {
+    private static final int[] EMPTY = new int[0];
+    
+    private int width, height;
+    private int[][] cols;   // [row] sorted columns of non-zero tiles
+    private int[][] values; // [row] values matching cols
+    private int[] sizes;    // [row] used entries
+    
+    public SparseTileStorage(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.cols = new int[height][];
+        this.values = new int[height][];
+        this.sizes = new int[height];
+        Arrays.fill(cols, EMPTY);
+        Arrays.fill(values, EMPTY);
+    }
+    
+    @Override
+    public Type getType() {
+        return Type.SPARSE;
+    }
+    
+    @Override
+    public int getWidth() {
+        return width;
+    }
+    
+    @Override
+    public int getHeight() {
+        return height;
+    }
+    
+    @Override
+    public int get(int row, int col) {
+        int i = Arrays.binarySearch(cols[row], 0, sizes[row], col);
+        return i >= 0 ? values[row][i] : 0;
+    }
+    
+    @Override
+    public void set(int row, int col, int value) {
+        int size = sizes[row];
+        int[] rowCols = cols[row];
+        int[] rowValues = values[row];
+        int i = Arrays.binarySearch(rowCols, 0, size, col);
+        
+        if (i >= 0) {
+            if (value != 0) {
+                rowValues[i] = value;
+            } else {
+                System.arraycopy(rowCols, i + 1, rowCols, i, size - i - 1);
+                System.arraycopy(rowValues, i + 1, rowValues, i, size - i - 1);
+                sizes[row] = size - 1;
+            }
+        } else if (value != 0) {
+            int insert = -i - 1;
+            if (size == rowCols.length) {
+                int capacity = Math.max(4, size * 2);
+                rowCols = cols[row] = Arrays.copyOf(rowCols, capacity);
+                rowValues = values[row] = Arrays.copyOf(rowValues, capacity);
+            }
+            System.arraycopy(rowCols, insert, rowCols, insert + 1, size - insert);
+            System.arraycopy(rowValues, insert, rowValues, insert + 1, size - insert);
+            rowCols[insert] = col;
+            rowValues[insert] = value;
+            sizes[row] = size + 1;
+        }
+    }
+    
+    @Override
+    public void readRow(int row, int[] dst) {
+        Arrays.fill(dst, 0, width, 0);
+        int[] rowCols = cols[row];
+        int[] rowValues = values[row];
+        for (int i = 0; i < sizes[row]; i++) {
+            dst[rowCols[i]] = rowValues[i];
+        }
+    }
+    
+    @Override
+    public void writeRow(int row, int[] src) {
+        int count = 0;
+        for (int c = 0; c < width; c++) {
+            if (src[c] != 0) count++;
+        }
+        int[] rowCols = count == 0 ? EMPTY : new int[count];
+        int[] rowValues = count == 0 ? EMPTY : new int[count];
+        int i = 0;
+        for (int c = 0; c < width; c++) {
+            if (src[c] != 0) {
+                rowCols[i] = c;
+                rowValues[i] = src[c];
+                i++;
+            }
+        }
+        cols[row] = rowCols;
+        values[row] = rowValues;
+        sizes[row] = count;
+    }
+    
+    @Override
+    public boolean canStore(int value) {
+        return true;
+    }
+    
+    @Override
+    public void resize(int newWidth, int newHeight, int offsetCol, int offsetRow) {
+        int[][] newCols = new int[newHeight][];
+        int[][] newValues = new int[newHeight][];
+        int[] newSizes = new int[newHeight];
+        Arrays.fill(newCols, EMPTY);
+        Arrays.fill(newValues, EMPTY);
+        
+        for (int r = Math.max(0, -offsetRow); r < Math.min(height, newHeight - offsetRow); r++) {
+            int[] rowCols = cols[r];
+            int[] rowValues = values[r];
+            int kept = 0;
+            // Shift in place; entries stay sorted because the offset is uniform
+            for (int i = 0; i < sizes[r]; i++) {
+                int col = rowCols[i] + offsetCol;
+                if (col >= 0 && col < newWidth) {
+                    rowCols[kept] = col;
+                    rowValues[kept] = rowValues[i];
+                    kept++;
+                }
+            }
+            newCols[r + offsetRow] = kept == 0 ? EMPTY : rowCols;
+            newValues[r + offsetRow] = kept == 0 ? EMPTY : rowValues;
+            newSizes[r + offsetRow] = kept;
+        }
+        cols = newCols;
+        values = newValues;
+        sizes = newSizes;
+        width = newWidth;
+        height = newHeight;
+    }
+    
+    @Override
+    public long memoryBytes() {
+        long bytes = 48L + height * 4L + 2 * (16L + height * 8L);
+        for (int r = 0; r < height; r++) {
+            if (cols[r] != EMPTY) {
+                bytes += 2 * (16L + cols[r].length * 4L);
+            }
+        }
+        return bytes;
+    }
+}
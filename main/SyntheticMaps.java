@@ -0,0 +1,65 @@
+package dev.main;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Reproducible maps of any size for scale and performance tests. The bottom layer
+// gets caves, the layers above it noise at half the density, and the top layer an
+// object roughly every 64 / density tiles. The same arguments always give the same
+// map. Run as a program it writes one to a TXT or JSON file; the editor opens
+// these even when they exceed the dimensions its dialogs accept.
+public final class SyntheticMaps {
+    private SyntheticMaps() {
+    }
+    
+    // density is the share of solid tiles on the bottom layer, 0..1
+    public static MapData create(int width, int height, int layerCount, double density, long seed,
+                                 TileStorage.Type type) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Map size must be positive: " + width + " x " + height);
+        }
+        if (layerCount < 1 || layerCount > MapLayer.MAX_LAYERS) {
+            throw new IllegalArgumentException("Layer count must be between 1 and " + MapLayer.MAX_LAYERS);
+        }
+        if (density < 0 || density > 1) {
+            throw new IllegalArgumentException("Density must be between 0 and 1");
+        }
+        Rectangle all = new Rectangle(0, 0, width, height);
+        List<MapLayer> layers = new ArrayList<>();
+        for (int i = 0; i < layerCount; i++) {
+            TileStorage storage = type.create(width, height);
+            if (i == 0) {
+                ProceduralGenerator.caves(storage, all, seed, density, 4);
+            } else {
+                ProceduralGenerator.noise(storage, all, seed + i, density / 2, 12, 3);
+            }
+            layers.add(MapLayer.create(MapFiles.defaultLayerName(i), i, storage));
+        }
+        
+        Random random = new Random(seed);
+        EntityIndex entities = layers.get(layerCount - 1).getEntities();
+        long objects = Math.round((double) width * height * density / 64);
+        for (long i = 0; i < objects; i++) {
+            entities.add(new MapEntity(random.nextInt(width) + 0.5, random.nextInt(height) + 0.5, "object"));
+        }
+        return new MapData(width, height, layers);
+    }
+    
+    public static void main(String[] args) throws IOException {
+        if (args.length < 6) {
+            System.err.println("usage: SyntheticMaps <width> <height> <layers> <density> <seed> <file.txt|file.json>"
+                + " [dense|sparse|bit_packed]");
+            System.exit(2);
+        }
+        TileStorage.Type type = args.length > 6 ? MapFiles.parseStorage(args[6]) : TileStorage.Type.DENSE;
+        MapData map = create(Integer.parseInt(args[0]), Integer.parseInt(args[1]), Integer.parseInt(args[2]),
+            Double.parseDouble(args[3]), Long.parseLong(args[4]), type);
+        File file = new File(args[5]);
+        MapFiles.write(map, file);
+        System.out.printf("%s: %d x %d, %d layers (%s)%n", file, map.width, map.height, map.layers.size(), type);
+    }
+}
@@ -0,0 +1,69 @@
+package dev.main;
+
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+// Tileset art: an atlas image cut into equal cells, numbered row by row, where
+// cell N is drawn for tile value N. Every cell is sliced once, scaled to the size
+// it is drawn at, into an image compatible with the screen, so painting a tile is
+// a plain unscaled blit that Java2D can keep in video memory.
+public class TileAtlas {
+    private final BufferedImage[] cells;
+    private final int drawSize;
+    
+    private TileAtlas(BufferedImage[] cells, int drawSize) {
+        this.cells = cells;
+        this.drawSize = drawSize;
+    }
+    
+    // config may be null (not yet on screen, or headless)
+    public static TileAtlas slice(BufferedImage atlas, int cellWidth, int cellHeight, int drawSize,
+                                  GraphicsConfiguration config) {
+        if (cellWidth <= 0 || cellHeight <= 0 || cellWidth > atlas.getWidth() || cellHeight > atlas.getHeight()) {
+            throw new IllegalArgumentException("Cell size " + cellWidth + "x" + cellHeight
+                + " does not fit a " + atlas.getWidth() + "x" + atlas.getHeight() + " atlas");
+        }
+        if (config == null && !GraphicsEnvironment.isHeadless()) {
+            config = GraphicsEnvironment.getLocalGraphicsEnvironment()
+                .getDefaultScreenDevice().getDefaultConfiguration();
+        }
+        int columns = atlas.getWidth() / cellWidth;
+        int rows = atlas.getHeight() / cellHeight;
+        int transparency = atlas.getColorModel().getTransparency();
+        // Scaling up keeps pixel art crisp; scaling down is filtered
+        Object interpolation = drawSize >= Math.max(cellWidth, cellHeight)
+            ? RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR
+            : RenderingHints.VALUE_INTERPOLATION_BILINEAR;
+        
+        BufferedImage[] cells = new BufferedImage[columns * rows];
+        for (int i = 0; i < cells.length; i++) {
+            BufferedImage cell = config != null
+                ? config.createCompatibleImage(drawSize, drawSize, transparency)
+                : new BufferedImage(drawSize, drawSize, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = cell.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+            int x = (i % columns) * cellWidth;
+            int y = (i / columns) * cellHeight;
+            g.drawImage(atlas, 0, 0, drawSize, drawSize, x, y, x + cellWidth, y + cellHeight, null);
+            g.dispose();
+            cells[i] = cell;
+        }
+        return new TileAtlas(cells, drawSize);
+    }
+    
+    public int cellCount() {
+        return cells.length;
+    }
+    
+    public int getDrawSize() {
+        return drawSize;
+    }
+    
+    // Cell for a tile value, or null when the atlas has none
+    public BufferedImage cell(int value) {
+        return value >= 0 && value < cells.length ? cells[value] : null;
+    }
+}
@@ -0,0 +1,522 @@
+package dev.main;
+
+import java.awt.Rectangle;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.StampedLock;
+
+// The editable map without any UI: same-sized layers, tile reads and writes, bulk
+// region edits, undo history and transactions. Listeners get one ChangeSet per
+// transaction, holding a dirty rectangle per layer, instead of a call per tile; a
+// write outside any transaction is a transaction of its own.
+//
+// One owner thread (the EDT in the editor) edits and reads freely. Other threads
+// only use readRegion() and snapshot(), which never see a half-done write, resize
+// or load. Every change by the owner holds the write lock of a StampedLock, and
+// changes made straight to storages, layers or objects go through write() or
+// restructure(). Readers copy under optimistic reads and fall back to a read lock
+// only for short copies, so the owner never waits on a long reader. Each band of
+// RowBands.BAND_ROWS rows has a version bumped by every write to it.
+public class TileMap {
+    private static final int SNAPSHOT_ATTEMPTS = 3; // then the whole copy runs under the read lock
+    private static final int LOGGED_WRITES = 64;    // set() calls a ChangeSet lists one by one
+    
+    public interface Listener {
+        void mapChanged(ChangeSet changes);
+    }
+    
+    // Anything that can be pushed on the undo history
+    public interface Edit {
+        void undo();
+        
+        // Approximate heap the entry keeps alive for undo
+        default long memoryBytes() {
+            return 0;
+        }
+    }
+    
+    // What one transaction changed
+    public static class ChangeSet {
+        private final Map<MapLayer, Rectangle> dirty = new LinkedHashMap<>();
+        private boolean structural, regions;
+        private int writes;                  // single-tile writes
+        private MapLayer[] writeLayers = new MapLayer[1]; // the first LOGGED_WRITES of them
+        private int[] writeLog = new int[4]; // row, col, old value, new value per logged write
+        
+        private void log(MapLayer layer, int row, int col, int oldValue, int newValue) {
+            if (writes < LOGGED_WRITES) {
+                if (writes == writeLayers.length) {
+                    writeLayers = Arrays.copyOf(writeLayers, writes * 2);
+                    writeLog = Arrays.copyOf(writeLog, writes * 8);
+                }
+                writeLayers[writes] = layer;
+                writeLog[writes * 4] = row;
+                writeLog[writes * 4 + 1] = col;
+                writeLog[writes * 4 + 2] = oldValue;
+                writeLog[writes * 4 + 3] = newValue;
+            }
+            writes++;
+        }
+        
+        private void add(MapLayer layer, Rectangle region) {
+            Rectangle area = dirty.get(layer);
+            dirty.put(layer, area == null ? new Rectangle(region) : area.union(region));
+        }
+        
+        // Size, layer stack or storages were replaced; dirty rectangles mean nothing then
+        public boolean isStructural() {
+            return structural;
+        }
+        
+        // Changed tiles per layer (x = col, y = row), in the order layers were first touched
+        public Map<MapLayer, Rectangle> getDirty() {
+            return Collections.unmodifiableMap(dirty);
+        }
+        
+        // Every changed tile of every layer, or null when none
+        public Rectangle bounds() {
+            Rectangle bounds = null;
+            for (Rectangle area : dirty.values()) {
+                bounds = bounds == null ? new Rectangle(area) : bounds.union(area);
+            }
+            return bounds;
+        }
+        
+        // True when the whole change was one set(); the old value then allows O(1) updates
+        public boolean isSingleTile() {
+            return !structural && !regions && writes == 1;
+        }
+        
+        public MapLayer getTileLayer() {
+            return writeLayers[0];
+        }
+        
+        public int getTileRow() {
+            return writeLog[0];
+        }
+        
+        public int getTileCol() {
+            return writeLog[1];
+        }
+        
+        public int getTileOldValue() {
+            return writeLog[2];
+        }
+        
+        public int getTileNewValue() {
+            return writeLog[3];
+        }
+        
+        // The set() calls on layer as row, col, old value, new value, in the order they
+        // were made, when the whole change was at most LOGGED_WRITES of them and
+        // nothing else; null otherwise. A drag's frame of samples is such a change.
+        public int[] getWrites(MapLayer layer) {
+            if (structural || regions || writes > LOGGED_WRITES) return null;
+            int count = 0;
+            for (int i = 0; i < writes; i++) {
+                if (writeLayers[i] == layer) count++;
+            }
+            int[] result = new int[count * 4];
+            for (int i = 0, j = 0; i < writes; i++) {
+                if (writeLayers[i] != layer) continue;
+                System.arraycopy(writeLog, i * 4, result, j, 4);
+                j += 4;
+            }
+            return result;
+        }
+    }
+    
+    private int width, height;
+    private List<MapLayer> layers; // bottom to top
+    private final Deque<Edit> history = new ArrayDeque<>();
+    private final List<Listener> listeners = new ArrayList<>();
+    private int depth;             // open transactions
+    private ChangeSet pending;
+    
+    private final StampedLock lock = new StampedLock();
+    private volatile Thread writer; // owner while it holds the write lock
+    private long writeStamp;
+    private int writeDepth;
+    private long[] bandVersions;
+    private long structureVersion; // bumped by size, layer stack and storage changes
+    
+    public TileMap(int width, int height, List<MapLayer> layers) {
+        this.width = width;
+        this.height = height;
+        this.layers = layers;
+        bandVersions = new long[RowBands.bandCount(height)];
+    }
+    
+    public TileMap(MapData data) {
+        this(data.width, data.height, data.layers);
+    }
+    
+    public int getWidth() {
+        return width;
+    }
+    
+    public int getHeight() {
+        return height;
+    }
+    
+    // Live list for the owner; change it (or a layer's storage) inside restructure()
+    public List<MapLayer> getLayers() {
+        return layers;
+    }
+    
+    public MapData toMapData() {
+        return new MapData(width, height, layers);
+    }
+    
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+    
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+    
+    // Changes made until the matching end() reach listeners as one ChangeSet
+    public void begin() {
+        if (depth++ == 0) pending = new ChangeSet();
+    }
+    
+    public void end() {
+        if (depth == 0) throw new IllegalStateException("end() without begin()");
+        if (--depth > 0) return;
+        ChangeSet changes = pending;
+        pending = null;
+        if (changes.structural || !changes.dirty.isEmpty()) {
+            for (Listener listener : new ArrayList<>(listeners)) {
+                listener.mapChanged(changes);
+            }
+        }
+    }
+    
+    public void transaction(Runnable changes) {
+        begin();
+        try {
+            changes.run();
+        } finally {
+            end();
+        }
+    }
+    
+    private void lockWrite() {
+        if (writeDepth++ == 0) {
+            writeStamp = lock.writeLock();
+            writer = Thread.currentThread();
+        }
+    }
+    
+    private void unlockWrite() {
+        if (--writeDepth == 0) {
+            writer = null;
+            lock.unlockWrite(writeStamp);
+        }
+    }
+    
+    // Marks rows [rowStart, rowEnd) as rewritten; write lock held
+    private void touch(int rowStart, int rowEnd) {
+        int first = Math.max(0, rowStart) / RowBands.BAND_ROWS;
+        int last = (Math.min(height, rowEnd) - 1) / RowBands.BAND_ROWS;
+        for (int band = first; band <= last; band++) {
+            bandVersions[band]++;
+        }
+    }
+    
+    // Runs tile writes made straight to storages inside region (any layers); announce
+    // them with regionChanged() afterwards
+    public void write(Rectangle region, Runnable writes) {
+        lockWrite();
+        try {
+            writes.run();
+        } finally {
+            touch(region.y, region.y + region.height);
+            unlockWrite();
+        }
+    }
+    
+    // Runs changes to objects or layer settings, which snapshots copy but never version
+    public void write(Runnable changes) {
+        lockWrite();
+        try {
+            changes.run();
+        } finally {
+            unlockWrite();
+        }
+    }
+    
+    // Runs changes to the layer stack or storages (resize, clear, convert, reorder);
+    // call structureChanged() or resized() afterwards
+    public void restructure(Runnable changes) {
+        lockWrite();
+        try {
+            changes.run();
+        } finally {
+            structureVersion++;
+            unlockWrite();
+        }
+    }
+    
+    public int get(MapLayer layer, int row, int col) {
+        return layer.getStorage().get(row, col);
+    }
+    
+    // Returns the old value
+    public int set(MapLayer layer, int row, int col, int value) {
+        TileStorage storage = layer.getStorage();
+        int oldValue = storage.get(row, col);
+        if (oldValue == value) return oldValue;
+        lockWrite();
+        try {
+            storage.set(row, col, value);
+        } finally {
+            bandVersions[row / RowBands.BAND_ROWS]++;
+            unlockWrite();
+        }
+        begin();
+        ChangeSet changes = pending;
+        changes.log(layer, row, col, oldValue, value);
+        changes.add(layer, new Rectangle(col, row, 1, 1));
+        end();
+        return oldValue;
+    }
+    
+    // Copies region (x = col, y = row) of a layer into dst, row-major, as it was at one
+    // moment. Safe from any thread; region must lie inside the map and the layer in it.
+    public void readRegion(MapLayer layer, Rectangle region, int[] dst) {
+        if (!tryReadRegion(layer, region, dst)) {
+            throw new IllegalArgumentException("Region " + region + " of layer '" + layer.getName()
+                + "' is not on the map");
+        }
+    }
+    
+    // readRegion for readers that can lose a race with a resize, load or layer removal:
+    // false, with dst untouched, when region or layer is not on the map at that moment
+    public boolean tryReadRegion(MapLayer layer, Rectangle region, int[] dst) {
+        if (writer == Thread.currentThread()) {
+            return copyRegion(layer, region, dst);
+        }
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                boolean copied = copyRegion(layer, region, dst);
+                if (lock.validate(stamp)) return copied;
+            } catch (RuntimeException e) {
+                // torn by a concurrent resize or load; retried below
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return copyRegion(layer, region, dst);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    private boolean copyRegion(MapLayer layer, Rectangle region, int[] dst) {
+        if (!new Rectangle(0, 0, width, height).contains(region) || !layers.contains(layer)) {
+            return false;
+        }
+        TileStorage storage = layer.getStorage();
+        int[] row = new int[region.width];
+        for (int i = 0; i < region.height; i++) {
+            storage.readSpan(region.y + i, region.x, row, region.width);
+            System.arraycopy(row, 0, dst, i * region.width, region.width);
+        }
+        return true;
+    }
+    
+    // Writes src, row-major, over region of a layer
+    public void writeRegion(MapLayer layer, Rectangle region, int[] src) {
+        TileStorage storage = layer.getStorage();
+        int[] row = new int[region.width];
+        write(region, () -> {
+            for (int i = 0; i < region.height; i++) {
+                System.arraycopy(src, i * region.width, row, 0, region.width);
+                storage.writeSpan(region.y + i, region.x, row, region.width);
+            }
+        });
+        regionChanged(layer, region);
+    }
+    
+    // Sets every tile of region that lies on the map to value
+    public void fill(MapLayer layer, Rectangle region, int value) {
+        Rectangle area = region.intersection(new Rectangle(0, 0, width, height));
+        if (area.isEmpty()) return;
+        TileStorage storage = layer.getStorage();
+        int[] row = new int[area.width];
+        Arrays.fill(row, value);
+        write(area, () -> {
+            for (int r = area.y; r < area.y + area.height; r++) {
+                storage.writeSpan(r, area.x, row, area.width);
+            }
+        });
+        regionChanged(layer, area);
+    }
+    
+    // Tiles inside region were written straight to the layer's storage
+    public void regionChanged(MapLayer layer, Rectangle region) {
+        Rectangle area = region.intersection(new Rectangle(0, 0, width, height));
+        if (area.isEmpty()) return;
+        begin();
+        pending.regions = true;
+        pending.add(layer, area);
+        end();
+    }
+    
+    // Layers were added, removed, reordered or given new storages (inside restructure())
+    public void structureChanged() {
+        begin();
+        pending.structural = true;
+        end();
+    }
+    
+    // The storages were resized in place (inside restructure()) to width x height
+    public void resized(int width, int height) {
+        restructure(() -> {
+            this.width = width;
+            this.height = height;
+            bandVersions = new long[RowBands.bandCount(height)];
+        });
+        structureChanged();
+    }
+    
+    // Other contents altogether, e.g. a loaded map; the undo history is dropped
+    public void replace(int width, int height, List<MapLayer> layers) {
+        restructure(() -> this.layers = layers);
+        history.clear();
+        resized(width, height);
+    }
+    
+    // Copy of the whole map (tiles, layer settings and objects) as it was at one
+    // moment, for background readers; the owner is never blocked for a full copy
+    public MapData snapshot() {
+        for (int attempt = 1; ; attempt++) {
+            boolean locked = attempt >= SNAPSHOT_ATTEMPTS;
+            long stamp = locked ? lock.readLock() : lock.tryOptimisticRead();
+            try {
+                MapData copy = copyShape();
+                if (copy == null || !locked && !lock.validate(stamp)) continue;
+                long version = structureVersion;
+                long[] copied = new long[RowBands.bandCount(copy.height)];
+                for (int band = 0; band < copied.length; band++) {
+                    copied[band] = locked ? copyBand(copy, band) : tryCopyBand(copy, band, version);
+                }
+                if (!locked) {
+                    stamp = lock.readLock();
+                    locked = true;
+                    if (structureVersion != version) continue;
+                }
+                // Bands rewritten since they were copied are copied again; objects and
+                // layer settings are cheap and copied here
+                for (int band = 0; band < copied.length; band++) {
+                    if (copied[band] != bandVersions[band]) copyBand(copy, band);
+                }
+                for (int i = 0; i < layers.size(); i++) {
+                    copyDetails(layers.get(i), copy.layers.get(i));
+                }
+                return copy;
+            } finally {
+                if (locked) lock.unlockRead(stamp);
+            }
+        }
+    }
+    
+    // Empty storages of the same types and size as the map, or null if torn
+    private MapData copyShape() {
+        try {
+            List<MapLayer> copies = new ArrayList<>();
+            for (MapLayer layer : new ArrayList<>(layers)) {
+                copies.add(new MapLayer(layer.getName(), layer.getColor(), layer.getSolidColor(),
+                    layer.getStorage().getType().create(width, height)));
+            }
+            return new MapData(width, height, copies);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+    
+    // Optimistic copy of one band; its version, or -1 when it has to be copied again
+    private long tryCopyBand(MapData copy, int band, long version) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp == 0 || structureVersion != version) return -1;
+        long bandVersion = bandVersions[band];
+        try {
+            copyRows(copy, band);
+        } catch (RuntimeException e) {
+            return -1;
+        }
+        return lock.validate(stamp) ? bandVersion : -1;
+    }
+    
+    // Copy of one band with the lock held
+    private long copyBand(MapData copy, int band) {
+        copyRows(copy, band);
+        return bandVersions[band];
+    }
+    
+    private void copyRows(MapData copy, int band) {
+        int[] row = new int[copy.width];
+        int end = Math.min(copy.height, (band + 1) * RowBands.BAND_ROWS);
+        for (int i = 0; i < copy.layers.size(); i++) {
+            TileStorage from = layers.get(i).getStorage();
+            TileStorage to = copy.layers.get(i).getStorage();
+            for (int r = band * RowBands.BAND_ROWS; r < end; r++) {
+                from.readRow(r, row);
+                to.writeRow(r, row);
+            }
+        }
+    }
+    
+    private static void copyDetails(MapLayer from, MapLayer to) {
+        to.setName(from.getName());
+        to.setColor(from.getColor());
+        to.setSolidColor(from.getSolidColor());
+        to.setVisible(from.isVisible());
+        to.setLocked(from.isLocked());
+        to.setOpacity(from.getOpacity());
+        from.getEntities().forEach(entity -> {
+            MapEntity copy = new MapEntity(entity.getX(), entity.getY(), entity.getType());
+            copy.getProperties().putAll(entity.getProperties());
+            to.getEntities().add(copy);
+        });
+    }
+    
+    public void push(Edit edit) {
+        history.push(edit);
+    }
+    
+    // The most recent edit, or null
+    public Edit lastEdit() {
+        return history.peek();
+    }
+    
+    // Undoes the most recent edit as one transaction; false when there was none
+    public boolean undo() {
+        Edit edit = history.poll();
+        if (edit == null) return false;
+        transaction(edit::undo);
+        return true;
+    }
+    
+    public void clearHistory() {
+        history.clear();
+    }
+    
+    // Approximate heap held by the undo history
+    public long historyBytes() {
+        long bytes = 0;
+        for (Edit edit : history) {
+            bytes += edit.memoryBytes();
+        }
+        return bytes;
+    }
+}
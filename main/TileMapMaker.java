@@ -4,43 +4,223 @@ import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.io.*;
-import java.util.Stack;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
 import javax.imageio.ImageIO;
 
 public class TileMapMaker extends JFrame {
-    private static final int TILE_SIZE = 64;
+    private static final int TILE_SIZE = MapRenderer.TILE_SIZE;
+    private static final double MIN_ZOOM = 1.0 / 256, MAX_ZOOM = 4;
+    private static final int HUD_WIDTH = 250, HUD_HEIGHT = 94; // performance HUD box in screen pixels
+    // Largest size the dimension dialogs accept; -Dtilemap.maxDimension=N raises it for scale tests
+    private static final int MAX_DIMENSION = Integer.getInteger("tilemap.maxDimension", 200);
     private int mapWidth = 50;
     private int mapHeight = 50;
     
-    // Layer constants
-    private static final int LAYER_GROUND = 0;
-    private static final int LAYER_DECORATION = 1;
-    private static final int LAYER_OBJECTS = 2;
-    private static final int NUM_LAYERS = 3;
-    
-    private int[][][] tileLayers; // [layer][row][col]
-    private int currentLayer = LAYER_GROUND;
+    private TileMap tileMap;        // tiles, layers and undo history; mapWidth/mapHeight/layers mirror it
+    private List<MapLayer> layers; // bottom to top
+    private int currentLayer = 0;
     private MapPanel mapPanel;
     private MiniMapPanel miniMapPanel;
     private JScrollPane scrollPane;
     private JLabel coordinateLabel;
     private JLabel layerLabel;
+    private LayerPanel layerPanel;
+    private JCheckBox exportOutlinesBox;
     private int currentTile = 0; // 0 = walkable, 1 = solid
+    private double zoom = 1;            // screen pixels per map pixel; Ctrl+wheel changes it
+    private JLabel zoomLabel;
     private BufferedImage referenceImage;
-    private Stack<TileChange> undoStack = new Stack<>();
+    private TileAtlas tileAtlas;        // tile art; flat colours while null
+    private DerivedData derived;        // statistics, grids, chunk pictures and regions following the tiles
+    private MapRenderer renderer;       // draws the map view and the minimap
+    private final MapRenderer.View mapView = new MapRenderer.View(); // filled from the fields here before painting
+    private boolean showAutoTiles = false;
+    private JCheckBox isolatedBox;
+    private DistanceField distanceField; // clearance heatmap; null while the overlay is off
+    private Timer overlayTimer;          // recomputes the distance field and field of view once edits settle
+    private JCheckBox exportDistanceBox;
+    
+    // Field of view: the origin follows clicks and drags while the tool is on
+    private boolean fovMode = false;
+    private Point fovOrigin;            // x = col, y = row
+    private Rectangle fovWindow;        // tiles within the radius of the origin, clipped to the map
+    private long[] fovVisible;          // SolidGrid layout over fovWindow
+    private int viewRadius = 16;        // tiles; shared with the PVS export
+    private int pvsChunkSize = 16;
+    private JCheckBox exportPvsBox;
+    
+    // Object tool: click to place or pick, drag to move, double-click to edit, right-click to delete
+    private boolean objectMode = false;
+    private JTextField entityTypeField;
+    private MapEntity draggedEntity;
+    private EntityChange dragChange;    // state before the drag, pushed once it moved
+    private List<JToggleButton> modeButtons = new ArrayList<>(); // at most one selected
+    
+    // Path preview: endpoints are picked on the map, the search runs on a worker thread
+    private boolean pathMode = false;
+    private Point pathStart, pathGoal;  // x = col, y = row
+    private PathFinder.Path path;
+    private int pathWidth;              // map width the path cells were computed for
+    private SwingWorker<PathFinder.Path, Void> pathWorker;
+    private Timer pathTimer;            // restarts the search shortly after the last edit
+    private JLabel pathLabel;
+    
+    // Statistics view; per-layer counters exist only while it is open
+    private JDialog statsDialog;
+    private JTextArea statsArea;
+    private Timer statsTimer;           // refreshes the open view once edits settle
+    
+    // Validation: issues are listed in a dialog and marked on the map; edits re-check nearby chunks
+    private Validator validator;        // null while the dialog is closed
+    private JDialog validationDialog;
+    private DefaultListModel<ValidationIssue> issueModel;
+    private JList<ValidationIssue> issueList;
+    private List<ValidationIssue> issues = Collections.emptyList(); // the list's contents, for painting
+    private Rectangle validationDirty;  // tiles and objects changed since the last run
+    private Timer validationTimer;
+    private SwingWorker<List<ValidationIssue>, Void> validationWorker; // the run in progress, if any
+    
+    // Performance HUD over the map; the same counters are published over JMX
+    private EditorMetrics metrics;
+    private boolean showPerfHud = false;
+    
+    // Bulk edit of a rectangular region of one layer, stored as a single undo entry
+    private class RegionChange implements TileMap.Edit {
+        MapLayer layer;
+        Rectangle region; // in tiles: x = col, y = row
+        int[] oldValues;  // row-major copy of the region before the edit
+        
+        RegionChange(MapLayer layer, Rectangle region) {
+            this.layer = layer;
+            this.region = new Rectangle(region);
+            this.oldValues = new int[region.width * region.height];
+            TileStorage storage = layer.getStorage();
+            int[] row = new int[region.width];
+            for (int i = 0; i < region.height; i++) {
+                storage.readSpan(region.y + i, region.x, row, region.width);
+                System.arraycopy(row, 0, oldValues, i * region.width, region.width);
+            }
+        }
+        
+        @Override
+        public void undo() {
+            tileMap.writeRegion(layer, region, oldValues);
+        }
+        
+        @Override
+        public long memoryBytes() {
+            return 4L * oldValues.length;
+        }
+    }
+    
+    // Resize that keeps the bands it cut off so undo can restore them
+    private class ResizeChange implements TileMap.Edit {
+        MapLayer[] resizedLayers; // in the order the bands were recorded
+        MapResizer.Removed removed;
+        int offsetCol, offsetRow;
+        List<List<MapEntity>> removedEntities; // per layer, at their old positions
+        
+        ResizeChange(MapLayer[] resizedLayers, MapResizer.Removed removed, int offsetCol, int offsetRow,
+                     List<List<MapEntity>> removedEntities) {
+            this.resizedLayers = resizedLayers;
+            this.removed = removed;
+            this.offsetCol = offsetCol;
+            this.offsetRow = offsetRow;
+            this.removedEntities = removedEntities;
+        }
+        
+        @Override
+        public void undo() {
+            tileMap.restructure(() -> {
+                MapResizer.restore(storagesOf(resizedLayers), removed);
+                for (int i = 0; i < resizedLayers.length; i++) {
+                    EntityIndex entities = resizedLayers[i].getEntities();
+                    entities.shift(-offsetCol, -offsetRow, removed.getOldWidth(), removed.getOldHeight());
+                    removedEntities.get(i).forEach(entities::add);
+                }
+            });
+            tileMap.resized(removed.getOldWidth(), removed.getOldHeight());
+        }
+        
+        @Override
+        public long memoryBytes() {
+            return removed.memoryBytes();
+        }
+    }
     
-    // Inner class to store tile changes for undo
-    private class TileChange {
-        int layer, row, col, oldValue, newValue;
+    // Any change to one entity: placing, deleting, moving or editing it
+    private class EntityChange implements TileMap.Edit {
+        MapLayer layer;
+        MapEntity entity;
+        boolean present;
+        double x, y;
+        String type;
+        Map<String, String> properties;
         
-        TileChange(int layer, int row, int col, int oldValue, int newValue) {
+        // Remembers the entity as it is now
+        EntityChange(MapLayer layer, MapEntity entity) {
             this.layer = layer;
-            this.row = row;
-            this.col = col;
-            this.oldValue = oldValue;
-            this.newValue = newValue;
+            this.entity = entity;
+            this.present = layer.getEntities().contains(entity);
+            this.x = entity.getX();
+            this.y = entity.getY();
+            this.type = entity.getType();
+            this.properties = new LinkedHashMap<>(entity.getProperties());
+        }
+        
+        @Override
+        public void undo() {
+            EntityIndex entities = layer.getEntities();
+            objectChanged(entity);
+            tileMap.write(() -> {
+                entities.remove(entity);
+                entity.x = x;
+                entity.y = y;
+                entity.setType(type);
+                entity.getProperties().clear();
+                entity.getProperties().putAll(properties);
+                if (present) entities.add(entity);
+            });
+            objectChanged(entity);
+        }
+    }
+    
+    // Find/replace over several layers; only the rewritten cells are remembered
+    private class ReplaceChange implements TileMap.Edit {
+        MapLayer[] replacedLayers; // indexed like result.counts
+        int from;
+        Rectangle region;
+        TileReplacer.Result result;
+        
+        ReplaceChange(MapLayer[] replacedLayers, int from, Rectangle region, TileReplacer.Result result) {
+            this.replacedLayers = replacedLayers;
+            this.from = from;
+            this.region = region;
+            this.result = result;
+        }
+        
+        @Override
+        public void undo() {
+            tileMap.write(region, () -> TileReplacer.revert(storagesOf(replacedLayers), result, from));
+            for (int layer = 0; layer < replacedLayers.length; layer++) {
+                if (result.counts[layer] > 0) {
+                    tileMap.regionChanged(replacedLayers[layer], region);
+                }
+            }
+        }
+        
+        @Override
+        public long memoryBytes() {
+            return result.memoryBytes();
         }
     }
     
@@ -60,7 +240,16 @@ public class TileMapMaker extends JFrame {
         showDimensionsDialog();
         
         // Initialize tile layers
-        tileLayers = new int[NUM_LAYERS][mapHeight][mapWidth];
+        layers = MapLayer.createDefaultLayers(mapWidth, mapHeight);
+        tileMap = new TileMap(mapWidth, mapHeight, layers);
+        derived = new DerivedData(tileMap, () -> {
+            mapPanel.repaint();
+            miniMapPanel.repaint();
+        });
+        tileMap.addListener(this::mapChanged);
+        renderer = new MapRenderer(tileMap, derived);
+        metrics = new EditorMetrics(this::measureMemory);
+        metrics.register();
         
         // Create map panel
         mapPanel = new MapPanel();
@@ -107,47 +296,19 @@ public class TileMapMaker extends JFrame {
         coordinateLabel.setBorder(BorderFactory.createEmptyBorder(5, 10, 5, 10));
         coordinateLabel.setFont(new Font("Monospaced", Font.BOLD, 12));
         
-        layerLabel = new JLabel("Layer: Ground");
+        zoomLabel = new JLabel("Zoom: 100.0%");
+        zoomLabel.setBorder(BorderFactory.createEmptyBorder(5, 10, 5, 10));
+        zoomLabel.setFont(new Font("Monospaced", Font.BOLD, 12));
+        
+        layerLabel = new JLabel("Layer: ground");
         layerLabel.setBorder(BorderFactory.createEmptyBorder(5, 10, 5, 10));
         layerLabel.setFont(new Font("Monospaced", Font.BOLD, 12));
         layerLabel.setForeground(new Color(0, 100, 0));
         
-        // Layer selection buttons
-        JButton groundLayerBtn = new JButton("Ground");
-        groundLayerBtn.setBackground(new Color(139, 69, 19));
-        groundLayerBtn.setForeground(Color.WHITE);
-        groundLayerBtn.setOpaque(true);
-        groundLayerBtn.setBorderPainted(true);
-        groundLayerBtn.addActionListener(e -> {
-            currentLayer = LAYER_GROUND;
-            layerLabel.setText("Layer: Ground");
-            layerLabel.setForeground(new Color(0, 100, 0));
-            mapPanel.repaint();
-        });
-        
-        JButton decorationLayerBtn = new JButton("Decoration");
-        decorationLayerBtn.setBackground(new Color(34, 139, 34));
-        decorationLayerBtn.setForeground(Color.WHITE);
-        decorationLayerBtn.setOpaque(true);
-        decorationLayerBtn.setBorderPainted(true);
-        decorationLayerBtn.addActionListener(e -> {
-            currentLayer = LAYER_DECORATION;
-            layerLabel.setText("Layer: Decoration");
-            layerLabel.setForeground(new Color(34, 139, 34));
-            mapPanel.repaint();
-        });
-        
-        JButton objectsLayerBtn = new JButton("Objects");
-        objectsLayerBtn.setBackground(new Color(70, 130, 180));
-        objectsLayerBtn.setForeground(Color.WHITE);
-        objectsLayerBtn.setOpaque(true);
-        objectsLayerBtn.setBorderPainted(true);
-        objectsLayerBtn.addActionListener(e -> {
-            currentLayer = LAYER_OBJECTS;
-            layerLabel.setText("Layer: Objects");
-            layerLabel.setForeground(new Color(70, 130, 180));
-            mapPanel.repaint();
-        });
+        // Layer stack on the right
+        layerPanel = new LayerPanel();
+        layerPanel.refresh();
+        add(layerPanel, BorderLayout.EAST);
         
         JButton walkableBtn = new JButton("Walkable (0)");
         walkableBtn.setBackground(Color.GREEN);
@@ -171,12 +332,35 @@ public class TileMapMaker extends JFrame {
             miniMapPanel.repaint();
         });
         
+        JButton loadTilesetBtn = new JButton("Load Tileset...");
+        loadTilesetBtn.addActionListener(e -> loadTileset());
+        
+        JButton clearTilesetBtn = new JButton("Clear Tileset");
+        clearTilesetBtn.addActionListener(e -> {
+            tileAtlas = null;
+            mapPanel.repaint();
+        });
+        
         JButton saveBtn = new JButton("Save as TXT");
         saveBtn.addActionListener(e -> saveMap());
         
         JButton saveJsonBtn = new JButton("Save as JSON");
         saveJsonBtn.addActionListener(e -> saveMapAsJson());
         
+        // Collision rectangles are always exported; outlines only on request
+        exportOutlinesBox = new JCheckBox("Export Outlines");
+        
+        exportDistanceBox = new JCheckBox("Export Distance");
+        exportDistanceBox.setToolTipText("Write the distance-to-solid field with JSON saves");
+        
+        exportPvsBox = new JCheckBox("Export PVS");
+        exportPvsBox.setToolTipText("Write the chunks visible from each chunk with saves");
+        exportPvsBox.addActionListener(e -> {
+            if (exportPvsBox.isSelected() && !askViewRadius()) {
+                exportPvsBox.setSelected(false);
+            }
+        });
+        
         JButton loadBtn = new JButton("Load Map");
         loadBtn.addActionListener(e -> loadMap());
         
@@ -186,15 +370,15 @@ public class TileMapMaker extends JFrame {
                 "Are you sure you want to clear the current layer?", 
                 "Confirm Clear", 
                 JOptionPane.YES_NO_OPTION);
-            if (confirm == JOptionPane.YES_OPTION) {
-                for (int i = 0; i < mapHeight; i++) {
-                    for (int j = 0; j < mapWidth; j++) {
-                        tileLayers[currentLayer][i][j] = 0;
-                    }
-                }
-                undoStack.clear();
-                mapPanel.repaint();
-                miniMapPanel.repaint();
+            if (confirm == JOptionPane.YES_OPTION && checkUnlocked()) {
+                // A fresh storage of the same type is the cheapest clear
+                MapLayer layer = layers.get(currentLayer);
+                tileMap.restructure(() -> {
+                    layer.setStorage(layer.getStorage().getType().create(mapWidth, mapHeight));
+                    layer.getEntities().clear();
+                });
+                tileMap.clearHistory();
+                tileMap.structureChanged();
             }
         });
         
@@ -205,33 +389,131 @@ public class TileMapMaker extends JFrame {
                 "Confirm Clear All", 
                 JOptionPane.YES_NO_OPTION);
             if (confirm == JOptionPane.YES_OPTION) {
-                for (int layer = 0; layer < NUM_LAYERS; layer++) {
-                    for (int i = 0; i < mapHeight; i++) {
-                        for (int j = 0; j < mapWidth; j++) {
-                            tileLayers[layer][i][j] = 0;
+                // Locked layers are left alone
+                tileMap.restructure(() -> {
+                    for (MapLayer layer : layers) {
+                        if (!layer.isLocked()) {
+                            layer.setStorage(layer.getStorage().getType().create(mapWidth, mapHeight));
+                            layer.getEntities().clear();
                         }
                     }
-                }
-                undoStack.clear();
-                mapPanel.repaint();
-                miniMapPanel.repaint();
+                });
+                tileMap.clearHistory();
+                tileMap.structureChanged();
             }
         });
         
         JButton resizeBtn = new JButton("Resize Map");
         resizeBtn.addActionListener(e -> resizeMap());
         
+        JButton validateBtn = new JButton("Validate...");
+        validateBtn.addActionListener(e -> showValidation());
+        
+        JButton statsBtn = new JButton("Statistics...");
+        statsBtn.addActionListener(e -> showStatistics());
+        
+        JButton replaceBtn = new JButton("Find/Replace...");
+        replaceBtn.addActionListener(e -> showReplaceDialog());
+        
+        JCheckBox autoTileBox = new JCheckBox("Auto-Tile Edges");
+        autoTileBox.addActionListener(e -> {
+            showAutoTiles = autoTileBox.isSelected();
+            mapPanel.repaint();
+        });
+        
+        JButton gridBtn = new JButton("Grid...");
+        gridBtn.addActionListener(e -> showGridDialog());
+        
+        JCheckBox activeRenderingBox = new JCheckBox("Active Rendering");
+        activeRenderingBox.setToolTipText("Draw through a back buffer at most once per display refresh");
+        activeRenderingBox.addActionListener(e -> mapPanel.setActiveRendering(activeRenderingBox.isSelected()));
+        
+        JCheckBox perfHudBox = new JCheckBox("Perf HUD");
+        perfHudBox.setToolTipText("Show paint times, tiles drawn, event queue latency, memory and file I/O");
+        perfHudBox.addActionListener(e -> {
+            showPerfHud = perfHudBox.isSelected();
+            // The HUD sticks to the corner of the view, so scrolling cannot blit it along
+            scrollPane.getViewport().setScrollMode(showPerfHud ? JViewport.SIMPLE_SCROLL_MODE
+                : JViewport.BLIT_SCROLL_MODE);
+            mapPanel.repaint();
+        });
+        
+        JButton generateBtn = new JButton("Generate...");
+        generateBtn.addActionListener(e -> showGenerateDialog());
+        
+        isolatedBox = new JCheckBox("Isolated Areas");
+        isolatedBox.setToolTipText("Highlight walkable tiles that cannot reach the largest walkable area");
+        isolatedBox.addActionListener(e -> {
+            derived.trackConnectivity(isolatedBox.isSelected());
+            updateIsolatedLabel();
+            mapPanel.repaint();
+        });
+        
+        JCheckBox distanceBox = new JCheckBox("Distance Field");
+        distanceBox.setToolTipText("Heatmap of the distance from each tile to the nearest solid tile");
+        overlayTimer = new Timer(150, e -> {
+            if (distanceField != null) {
+                distanceField = DistanceField.compute(derived.combinedSolid(), mapWidth, mapHeight);
+            }
+            updateFov();
+            mapPanel.repaint();
+        });
+        overlayTimer.setRepeats(false);
+        distanceBox.addActionListener(e -> {
+            distanceField = distanceBox.isSelected()
+                ? DistanceField.compute(derived.combinedSolid(), mapWidth, mapHeight) : null;
+            mapPanel.repaint();
+        });
+        
+        JToggleButton pathBtn = new JToggleButton("Path Preview");
+        JToggleButton fovBtn = new JToggleButton("Field of View");
+        pathBtn.setToolTipText("Click two walkable tiles to show the shortest path over all layers");
+        pathBtn.addActionListener(e -> {
+            deselectOtherModes(pathBtn);
+            pathMode = pathBtn.isSelected();
+            if (!pathMode) {
+                pathStart = null;
+                pathGoal = null;
+                pathChanged();
+            }
+            pathLabel.setText(pathMode ? "Path: pick start" : " ");
+        });
+        pathLabel = new JLabel(" ");
+        pathLabel.setFont(new Font("Monospaced", Font.BOLD, 12));
+        pathTimer = new Timer(150, e -> startPathSearch());
+        pathTimer.setRepeats(false);
+        
+        fovBtn.setToolTipText("Click or drag to see what is visible from a tile; right-click sets the radius");
+        fovBtn.addActionListener(e -> {
+            deselectOtherModes(fovBtn);
+            fovMode = fovBtn.isSelected();
+            if (!fovMode) {
+                fovOrigin = null;
+                updateFov();
+            }
+            mapPanel.repaint();
+        });
+        
+        JToggleButton objectBtn = new JToggleButton("Objects");
+        objectBtn.setToolTipText("Place, move and edit objects on the current layer");
+        objectBtn.addActionListener(e -> {
+            deselectOtherModes(objectBtn);
+            objectMode = objectBtn.isSelected();
+            draggedEntity = null;
+        });
+        entityTypeField = new JTextField("spawn", 8);
+        entityTypeField.setToolTipText("Type given to newly placed objects");
+        modeButtons.add(pathBtn);
+        modeButtons.add(fovBtn);
+        modeButtons.add(objectBtn);
+        
         JButton undoBtn = new JButton("Undo (Right-Click)");
         undoBtn.addActionListener(e -> undo());
         
         controlPanel.add(coordinateLabel);
+        controlPanel.add(zoomLabel);
         controlPanel.add(layerLabel);
         controlPanel.add(new JSeparator(SwingConstants.VERTICAL));
-        controlPanel.add(new JLabel("Layers:"));
-        controlPanel.add(groundLayerBtn);
-        controlPanel.add(decorationLayerBtn);
-        controlPanel.add(objectsLayerBtn);
-        controlPanel.add(new JSeparator(SwingConstants.VERTICAL));
         controlPanel.add(walkableBtn);
         controlPanel.add(solidBtn);
         controlPanel.add(new JSeparator(SwingConstants.VERTICAL));
@@ -239,14 +521,34 @@ public class TileMapMaker extends JFrame {
         controlPanel.add(new JSeparator(SwingConstants.VERTICAL));
         controlPanel.add(loadImageBtn);
         controlPanel.add(clearImageBtn);
+        controlPanel.add(loadTilesetBtn);
+        controlPanel.add(clearTilesetBtn);
         controlPanel.add(new JSeparator(SwingConstants.VERTICAL));
         controlPanel.add(saveBtn);
         controlPanel.add(saveJsonBtn);
+        controlPanel.add(exportOutlinesBox);
+        controlPanel.add(exportDistanceBox);
+        controlPanel.add(exportPvsBox);
         controlPanel.add(loadBtn);
         controlPanel.add(new JSeparator(SwingConstants.VERTICAL));
         controlPanel.add(clearBtn);
         controlPanel.add(clearAllBtn);
         controlPanel.add(resizeBtn);
+        controlPanel.add(generateBtn);
+        controlPanel.add(replaceBtn);
+        controlPanel.add(statsBtn);
+        controlPanel.add(validateBtn);
+        controlPanel.add(autoTileBox);
+        controlPanel.add(gridBtn);
+        controlPanel.add(activeRenderingBox);
+        controlPanel.add(perfHudBox);
+        controlPanel.add(isolatedBox);
+        controlPanel.add(distanceBox);
+        controlPanel.add(pathBtn);
+        controlPanel.add(pathLabel);
+        controlPanel.add(fovBtn);
+        controlPanel.add(objectBtn);
+        controlPanel.add(entityTypeField);
         
         add(controlPanel, BorderLayout.SOUTH);
         
@@ -255,14 +557,662 @@ public class TileMapMaker extends JFrame {
     }
     
     private void undo() {
-        if (!undoStack.isEmpty()) {
-            TileChange change = undoStack.pop();
-            tileLayers[change.layer][change.row][change.col] = change.oldValue;
+        if (tileMap.undo()) {
+            // Object edits do not go through the model
             mapPanel.repaint();
             miniMapPanel.repaint();
         }
     }
     
+    private TileStorage[] storagesOf(MapLayer[] mapLayers) {
+        TileStorage[] storages = new TileStorage[mapLayers.length];
+        for (int i = 0; i < mapLayers.length; i++) {
+            storages[i] = mapLayers[i].getStorage();
+        }
+        return storages;
+    }
+    
+    private void showStatistics() {
+        if (statsDialog == null) {
+            statsArea = new JTextArea(24, 56);
+            statsArea.setEditable(false);
+            statsArea.setFont(new Font("Monospaced", Font.PLAIN, 12));
+            statsDialog = new JDialog(this, "Map Statistics", false);
+            statsDialog.add(new JScrollPane(statsArea));
+            statsDialog.pack();
+            statsDialog.setLocationRelativeTo(this);
+            statsDialog.addWindowListener(new WindowAdapter() {
+                @Override
+                public void windowClosing(WindowEvent e) {
+                    derived.dropStats();
+                }
+            });
+            statsTimer = new Timer(100, e -> refreshStatistics());
+            statsTimer.setRepeats(false);
+        }
+        statsDialog.setVisible(true);
+        refreshStatistics();
+    }
+    
+    private void showValidation() {
+        if (validationDialog == null) {
+            issueModel = new DefaultListModel<>();
+            issueList = new JList<>(issueModel);
+            issueList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+            issueList.addListSelectionListener(e -> {
+                if (!e.getValueIsAdjusting() && issueList.getSelectedValue() != null) {
+                    scrollToIssue(issueList.getSelectedValue());
+                }
+            });
+            validationDialog = new JDialog(this, "Validation", false);
+            validationDialog.add(new JScrollPane(issueList));
+            validationDialog.setSize(480, 320);
+            validationDialog.setLocationRelativeTo(this);
+            validationDialog.addWindowListener(new WindowAdapter() {
+                @Override
+                public void windowClosing(WindowEvent e) {
+                    validator = null;
+                    validationDirty = null;
+                    issueModel.clear();
+                    issues = Collections.emptyList();
+                    mapPanel.repaint();
+                }
+            });
+            validationTimer = new Timer(200, e -> runValidation());
+            validationTimer.setRepeats(false);
+        }
+        validator = new Validator(ValidationRules.defaults());
+        validationDirty = null;
+        runValidation();
+        validationDialog.setVisible(true);
+    }
+    
+    private void validationChanged(Rectangle region) {
+        if (validator == null) return;
+        validationDirty = validationDirty == null ? new Rectangle(region) : validationDirty.union(region);
+        validationTimer.restart();
+    }
+    
+    private void objectChanged(MapEntity entity) {
+        validationChanged(new Rectangle((int) Math.floor(entity.getX()), (int) Math.floor(entity.getY()), 1, 1));
+    }
+    
+    // First run checks everything; later runs only what the dirty region can affect.
+    // Runs go one at a time on a worker against a snapshot. Edits made while one runs
+    // stay in validationDirty and start the next run when it is done.
+    private void runValidation() {
+        if (validator == null || validationWorker != null) return;
+        Validator running = validator;
+        Rectangle dirty = validationDirty;
+        validationDirty = null;
+        validationWorker = new SwingWorker<List<ValidationIssue>, Void>() {
+            @Override
+            protected List<ValidationIssue> doInBackground() {
+                MapData map = tileMap.snapshot();
+                return dirty == null ? running.validate(map) : running.revalidate(map, dirty);
+            }
+            
+            @Override
+            protected void done() {
+                validationWorker = null;
+                if (validator == running) {
+                    try {
+                        issues = get();
+                        issueModel.clear();
+                        issueModel.addAll(issues);
+                        validationDialog.setTitle("Validation (" + issues.size() + " issues)");
+                        mapPanel.repaint();
+                    } catch (InterruptedException | ExecutionException e) {
+                        // Its state may be half updated: drop the stale issues and start over
+                        // with a full run, unless that is what failed; then the next edit retries
+                        e.printStackTrace();
+                        Throwable cause = e.getCause() == null ? e : e.getCause();
+                        issues = Collections.emptyList();
+                        issueModel.clear();
+                        validationDialog.setTitle("Validation failed: " + cause);
+                        mapPanel.repaint();
+                        validator = new Validator(ValidationRules.defaults());
+                        validationDirty = null;
+                        if (dirty == null) return;
+                    }
+                }
+                // Edits made meanwhile, a failed run, or a validator opened again while this one ran
+                if (validator != null && (validator != running || validationDirty != null)) {
+                    runValidation();
+                }
+            }
+        };
+        validationWorker.execute();
+    }
+    
+    // Centres the issue's tile in the view
+    private void scrollToIssue(ValidationIssue issue) {
+        Rectangle view = scrollPane.getViewport().getViewRect();
+        int size = (int) Math.ceil(tilePixels());
+        Rectangle target = new Rectangle((int) (issue.col * tilePixels()), (int) (issue.row * tilePixels()), size, size);
+        target.grow(Math.max(0, (view.width - size) / 2), Math.max(0, (view.height - size) / 2));
+        mapPanel.scrollRectToVisible(target);
+        mapPanel.repaint();
+    }
+    
+    private void statsChanged() {
+        if (statsDialog != null && statsDialog.isVisible()) {
+            statsTimer.restart();
+        }
+    }
+    
+    // Counters are built (one parallel pass) the first time a layer is shown
+    private void refreshStatistics() {
+        if (statsDialog == null || !statsDialog.isVisible()) return;
+        long tiles = (long) mapWidth * mapHeight;
+        long totalBytes = 0;
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("Map %d x %d = %d tiles, %d layers%n", mapWidth, mapHeight, tiles, layers.size()));
+        for (MapLayer layer : layers) {
+            LayerStats stats = derived.stats(layer);
+            TileStorage storage = layer.getStorage();
+            long bytes = storage.memoryBytes();
+            totalBytes += bytes;
+            text.append(String.format("%n%s (%s, %s)%n", layer.getName(),
+                storage.getType().name().toLowerCase(), formatBytes(bytes)));
+            for (Map.Entry<Integer, Long> count : stats.counts().entrySet()) {
+                text.append(String.format("  value %-6d %10d  %6.2f%%%n",
+                    count.getKey(), count.getValue(), 100.0 * count.getValue() / tiles));
+            }
+            long solid = stats.count(1);
+            long walkable = stats.count(0);
+            text.append(String.format("  solid/walkable %d / %d (%s)%n", solid, walkable,
+                walkable == 0 ? "-" : String.format("%.3f", (double) solid / walkable)));
+            Rectangle bounds = stats.paintedBounds();
+            text.append(bounds == null ? "  painted bounds: none\n"
+                : String.format("  painted bounds: cols %d-%d, rows %d-%d (%d x %d)%n", bounds.x,
+                    bounds.x + bounds.width - 1, bounds.y, bounds.y + bounds.height - 1, bounds.width, bounds.height));
+            text.append(String.format("  objects: %d%n", layer.getEntities().size()));
+        }
+        text.append(String.format("%nTile storage total: %s%n", formatBytes(totalBytes)));
+        statsArea.setText(text.toString());
+        statsArea.setCaretPosition(0);
+    }
+    
+    // Run by the metrics probe on the EDT a few times a second
+    private void measureMemory() {
+        long tileStore = 0;
+        for (MapLayer layer : layers) {
+            tileStore += layer.getStorage().memoryBytes();
+        }
+        metrics.memoryMeasured(tileStore, tileMap.historyBytes());
+        if (showPerfHud) mapPanel.repaintHud();
+    }
+    
+    private static String formatBytes(long bytes) {
+        if (bytes < 1024) return bytes + " B";
+        if (bytes < 1024 * 1024) return String.format("%.1f KB", bytes / 1024.0);
+        return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+    
+    // Warns and returns false when the current layer is locked
+    private boolean checkUnlocked() {
+        MapLayer layer = layers.get(currentLayer);
+        if (layer.isLocked()) {
+            JOptionPane.showMessageDialog(this, 
+                "Layer '" + layer.getName() + "' is locked", 
+                "Layer Locked", JOptionPane.WARNING_MESSAGE);
+            return false;
+        }
+        return true;
+    }
+    
+    private void selectLayer(int index) {
+        currentLayer = index;
+        MapLayer layer = layers.get(index);
+        layerLabel.setText("Layer: " + layer.getName());
+        layerLabel.setForeground(layer.getColor().darker());
+        layerPanel.showLayer();
+        mapPanel.repaint();
+    }
+    
+    // What the renderer shows besides the tiles, as it stands now
+    private MapRenderer.View mapView() {
+        mapView.zoom = zoom;
+        mapView.currentLayer = currentLayer;
+        mapView.referenceImage = referenceImage;
+        mapView.tileAtlas = tileAtlas;
+        mapView.showAutoTiles = showAutoTiles;
+        mapView.selectedEntity = draggedEntity;
+        mapView.distanceField = distanceField;
+        mapView.fovOrigin = fovOrigin;
+        mapView.fovWindow = fovWindow;
+        mapView.fovVisible = fovVisible;
+        mapView.issues = validator != null ? issues : Collections.emptyList();
+        mapView.selectedIssue = validator != null ? issueList.getSelectedValue() : null;
+        mapView.path = path;
+        mapView.pathWidth = pathWidth;
+        mapView.pathStart = pathStart;
+        mapView.pathGoal = pathGoal;
+        Rectangle viewRect = scrollPane.getViewport().getViewRect();
+        mapView.viewport = new Rectangle2D.Double(viewRect.x / tilePixels(), viewRect.y / tilePixels(),
+            viewRect.width / tilePixels(), viewRect.height / tilePixels());
+        return mapView;
+    }
+    
+    // Size of one tile on screen
+    private double tilePixels() {
+        return TILE_SIZE * zoom;
+    }
+    
+    private void updateMapSize() {
+        mapPanel.setPreferredSize(new Dimension((int) Math.ceil(mapWidth * tilePixels()),
+            (int) Math.ceil(mapHeight * tilePixels())));
+        mapPanel.revalidate();
+    }
+    
+    // Scales the view by factor, keeping the map point under anchor (panel pixels) in place
+    private void zoomAt(Point anchor, double factor) {
+        double newZoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, zoom * factor));
+        if (newZoom == zoom) return;
+        JViewport viewport = scrollPane.getViewport();
+        Point view = viewport.getViewPosition();
+        double scale = newZoom / zoom;
+        zoom = newZoom;
+        updateMapSize();
+        scrollPane.validate();
+        
+        Dimension extent = viewport.getExtentSize();
+        int x = (int) Math.round(anchor.x * scale) - (anchor.x - view.x);
+        int y = (int) Math.round(anchor.y * scale) - (anchor.y - view.y);
+        x = Math.max(0, Math.min(x, mapPanel.getWidth() - extent.width));
+        y = Math.max(0, Math.min(y, mapPanel.getHeight() - extent.height));
+        viewport.setViewPosition(new Point(x, y));
+        zoomLabel.setText(String.format("Zoom: %.1f%%", zoom * 100));
+        mapPanel.repaint();
+        miniMapPanel.repaint();
+    }
+    
+    // Tiles currently inside the viewport, clipped to the map
+    private Rectangle visibleRegion() {
+        Rectangle viewRect = scrollPane.getViewport().getViewRect();
+        int col = (int) (viewRect.x / tilePixels());
+        int row = (int) (viewRect.y / tilePixels());
+        int endCol = (int) Math.ceil((viewRect.x + viewRect.width) / tilePixels());
+        int endRow = (int) Math.ceil((viewRect.y + viewRect.height) / tilePixels());
+        return new Rectangle(col, row, endCol - col, endRow - row)
+            .intersection(new Rectangle(0, 0, mapWidth, mapHeight));
+    }
+    
+    // Minor and major grid spacing in tiles; 0 hides that set of lines
+    private void showGridDialog() {
+        JPanel panel = new JPanel(new GridLayout(2, 2, 5, 5));
+        JTextField minorField = new JTextField(String.valueOf(renderer.grid().getMinor()), 10);
+        JTextField majorField = new JTextField(String.valueOf(renderer.grid().getMajor()), 10);
+        panel.add(new JLabel("Minor lines every (tiles):"));
+        panel.add(minorField);
+        panel.add(new JLabel("Major lines every (tiles):"));
+        panel.add(majorField);
+        
+        int result = JOptionPane.showConfirmDialog(this, panel, 
+            "Grid", JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        
+        if (result == JOptionPane.OK_OPTION) {
+            try {
+                renderer.grid().setSpacing(Integer.parseInt(minorField.getText().trim()),
+                    Integer.parseInt(majorField.getText().trim()));
+                mapPanel.repaint();
+            } catch (IllegalArgumentException e) {
+                JOptionPane.showMessageDialog(this, 
+                    "Invalid grid spacing: " + e.getMessage(), 
+                    "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        }
+    }
+    
+    private void showReplaceDialog() {
+        JPanel panel = new JPanel(new GridLayout(4, 2, 5, 5));
+        JTextField fromField = new JTextField(String.valueOf(currentTile), 10);
+        JTextField toField = new JTextField(String.valueOf(currentTile == 0 ? 1 : 0), 10);
+        JComboBox<String> scopeBox = new JComboBox<>(new String[] {
+            "Whole map", "Visible area"});
+        JPanel layerBoxes = new JPanel(new GridLayout(0, 3, 0, 0));
+        MapLayer[] targetLayers = layers.toArray(new MapLayer[0]);
+        JCheckBox[] layerChecks = new JCheckBox[targetLayers.length];
+        for (int layer = 0; layer < targetLayers.length; layer++) {
+            layerChecks[layer] = new JCheckBox(targetLayers[layer].getName(), layer == currentLayer);
+            // Locked layers are listed but cannot be selected
+            if (targetLayers[layer].isLocked()) {
+                layerChecks[layer].setSelected(false);
+                layerChecks[layer].setEnabled(false);
+            }
+            layerBoxes.add(layerChecks[layer]);
+        }
+        
+        panel.add(new JLabel("Find value:"));
+        panel.add(fromField);
+        panel.add(new JLabel("Replace with:"));
+        panel.add(toField);
+        panel.add(new JLabel("Layers:"));
+        panel.add(layerBoxes);
+        panel.add(new JLabel("Area:"));
+        panel.add(scopeBox);
+        
+        int result = JOptionPane.showConfirmDialog(this, panel, 
+            "Find and Replace", JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        
+        if (result == JOptionPane.OK_OPTION) {
+            try {
+                int from = Integer.parseInt(fromField.getText().trim());
+                int to = Integer.parseInt(toField.getText().trim());
+                int layerMask = 0;
+                for (int layer = 0; layer < targetLayers.length; layer++) {
+                    if (layerChecks[layer].isSelected()) layerMask |= 1 << layer;
+                }
+                Rectangle region = scopeBox.getSelectedIndex() == 1
+                    ? visibleRegion() : new Rectangle(0, 0, mapWidth, mapHeight);
+                
+                int mask = layerMask;
+                TileReplacer.Result[] counted = new TileReplacer.Result[1];
+                tileMap.write(region, () -> counted[0] = TileReplacer.replace(
+                    storagesOf(targetLayers), from, to, mask, region, true));
+                TileReplacer.Result replaced = counted[0];
+                if (replaced.total() > 0) {
+                    // One undo entry for the whole replace
+                    tileMap.push(new ReplaceChange(targetLayers, from, region, replaced));
+                    tileMap.transaction(() -> {
+                        for (int layer = 0; layer < targetLayers.length; layer++) {
+                            if (replaced.counts[layer] > 0) {
+                                tileMap.regionChanged(targetLayers[layer], region);
+                            }
+                        }
+                    });
+                }
+                
+                StringBuilder message = new StringBuilder("Replaced " + replaced.total() + " tile(s)");
+                for (int layer = 0; layer < targetLayers.length; layer++) {
+                    if ((layerMask & (1 << layer)) != 0) {
+                        message.append("\n  ").append(targetLayers[layer].getName()).append(": ")
+                            .append(replaced.counts[layer]);
+                    }
+                }
+                JOptionPane.showMessageDialog(this, message.toString());
+            } catch (NumberFormatException e) {
+                JOptionPane.showMessageDialog(this, 
+                    "Invalid number format", 
+                    "Invalid Input", JOptionPane.WARNING_MESSAGE);
+            } catch (IllegalArgumentException e) {
+                JOptionPane.showMessageDialog(this, 
+                    e.getMessage(), 
+                    "Invalid Input", JOptionPane.WARNING_MESSAGE);
+            }
+        }
+    }
+    
+    // Model listener: brings the derived data up to date after one batch of changes,
+    // then schedules the views and background work that follow it
+    private void mapChanged(TileMap.ChangeSet changes) {
+        if (changes.isStructural()) {
+            mapWidth = tileMap.getWidth();
+            mapHeight = tileMap.getHeight();
+            layers = tileMap.getLayers();
+            currentLayer = Math.min(currentLayer, layers.size() - 1);
+            rebuildDerived();
+            return;
+        }
+        derived.mapChanged(changes);
+        if (derived.connectivity() != null) {
+            updateIsolatedLabel();
+        }
+        if (distanceField != null || fovOrigin != null) {
+            overlayTimer.restart();
+        }
+        statsChanged();
+        validationChanged(changes.bounds());
+        pathChanged();
+    }
+    
+    // Rebuilds derived data after storages or the layer stack changed (load, resize, clear, reorder)
+    private void rebuildDerived() {
+        derived.rebuild();
+        statsChanged();
+        validationChanged(new Rectangle(0, 0, mapWidth, mapHeight));
+        if (derived.connectivity() != null) {
+            updateIsolatedLabel();
+        }
+        if (distanceField != null) {
+            distanceField = DistanceField.compute(derived.combinedSolid(), mapWidth, mapHeight);
+        }
+        if (fovOrigin != null && (fovOrigin.x >= mapWidth || fovOrigin.y >= mapHeight)) fovOrigin = null;
+        updateFov();
+        if (pathStart != null && (pathStart.x >= mapWidth || pathStart.y >= mapHeight)) pathStart = null;
+        if (pathGoal != null && (pathGoal.x >= mapWidth || pathGoal.y >= mapHeight)) pathGoal = null;
+        pathChanged();
+    }
+    
+    private void updateIsolatedLabel() {
+        Connectivity connectivity = derived.connectivity();
+        if (connectivity == null) {
+            isolatedBox.setText("Isolated Areas");
+        } else {
+            isolatedBox.setText("Isolated Areas (" + Math.max(0, connectivity.regionCount() - 1) + ")");
+        }
+    }
+    
+    private void deselectOtherModes(JToggleButton selected) {
+        if (!selected.isSelected()) return;
+        for (JToggleButton button : modeButtons) {
+            if (button != selected && button.isSelected()) button.doClick();
+        }
+    }
+    
+    // Edits type and "key=value" property lines of an entity in a dialog
+    private void editEntity(MapLayer layer, MapEntity entity) {
+        JTextField typeField = new JTextField(entity.getType(), 16);
+        StringBuilder lines = new StringBuilder();
+        for (Map.Entry<String, String> property : entity.getProperties().entrySet()) {
+            lines.append(property.getKey()).append('=').append(property.getValue()).append('\n');
+        }
+        JTextArea propertiesArea = new JTextArea(lines.toString(), 8, 24);
+        
+        JPanel panel = new JPanel(new BorderLayout(5, 5));
+        JPanel typePanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        typePanel.add(new JLabel("Type:"));
+        typePanel.add(typeField);
+        panel.add(typePanel, BorderLayout.NORTH);
+        panel.add(new JScrollPane(propertiesArea), BorderLayout.CENTER);
+        panel.add(new JLabel("One key=value per line"), BorderLayout.SOUTH);
+        
+        int result = JOptionPane.showConfirmDialog(this, panel,
+            "Edit Object", JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        if (result != JOptionPane.OK_OPTION) return;
+        
+        Map<String, String> properties = new LinkedHashMap<>();
+        for (String line : propertiesArea.getText().split("\n")) {
+            if (line.trim().isEmpty()) continue;
+            int eq = line.indexOf('=');
+            if (eq <= 0) {
+                JOptionPane.showMessageDialog(this, "Not a key=value line: " + line,
+                    "Invalid Input", JOptionPane.WARNING_MESSAGE);
+                return;
+            }
+            properties.put(line.substring(0, eq).trim(), line.substring(eq + 1).trim());
+        }
+        tileMap.push(new EntityChange(layer, entity));
+        tileMap.write(() -> {
+            entity.setType(typeField.getText().trim());
+            entity.getProperties().clear();
+            entity.getProperties().putAll(properties);
+        });
+        objectChanged(entity);
+        mapPanel.repaint();
+    }
+    
+    // Shadowcasting never looks past the radius, so only the solid tiles in the window
+    // around the origin are gathered; cheap enough to redo on every change
+    private void updateFov() {
+        if (fovOrigin == null) {
+            fovVisible = null;
+            return;
+        }
+        fovWindow = new Rectangle(fovOrigin.x - viewRadius, fovOrigin.y - viewRadius,
+            2 * viewRadius + 1, 2 * viewRadius + 1).intersection(new Rectangle(0, 0, mapWidth, mapHeight));
+        long[] blocked = new long[SolidGrid.wordsPerRow(fovWindow.width) * fovWindow.height];
+        for (MapLayer layer : layers) {
+            derived.solidGrid(layer).orInto(blocked, fovWindow);
+        }
+        fovVisible = Visibility.fov(blocked, fovWindow.width, fovWindow.height,
+            fovOrigin.y - fovWindow.y, fovOrigin.x - fovWindow.x, viewRadius);
+    }
+    
+    // Asks for the view radius used by the field of view and the PVS export
+    private boolean askViewRadius() {
+        String input = JOptionPane.showInputDialog(this, "View radius in tiles:", viewRadius);
+        if (input == null) return false;
+        try {
+            int radius = Integer.parseInt(input.trim());
+            if (radius < 1 || radius > 256) throw new NumberFormatException();
+            viewRadius = radius;
+            updateFov();
+            mapPanel.repaint();
+            return true;
+        } catch (NumberFormatException e) {
+            JOptionPane.showMessageDialog(this, "Radius must be between 1 and 256",
+                "Error", JOptionPane.ERROR_MESSAGE);
+            return false;
+        }
+    }
+    
+    // Drops the current path and any running search; searches again once edits settle
+    private void pathChanged() {
+        if (pathWorker != null) {
+            pathWorker.cancel(false);
+            pathWorker = null;
+        }
+        path = null;
+        if (pathTimer == null) return;
+        if (pathStart != null && pathGoal != null) {
+            pathTimer.restart();
+        } else {
+            pathTimer.stop();
+        }
+    }
+    
+    private void setPathPoint(int row, int col) {
+        if (pathStart == null || pathGoal != null) {
+            pathStart = new Point(col, row);
+            pathGoal = null;
+            pathLabel.setText("Path: pick goal");
+        } else {
+            pathGoal = new Point(col, row);
+        }
+        pathChanged();
+        mapPanel.repaint();
+    }
+    
+    private void startPathSearch() {
+        if (pathStart == null || pathGoal == null) return;
+        
+        // Snapshot of the solid tiles of all layers; the worker never touches live data
+        PathFinder finder = new PathFinder(derived.combinedSolid(), mapWidth, mapHeight);
+        Point start = pathStart;
+        Point goal = pathGoal;
+        int width = mapWidth;
+        
+        pathLabel.setText("Path: searching...");
+        pathWorker = new SwingWorker<PathFinder.Path, Void>() {
+            @Override
+            protected PathFinder.Path doInBackground() {
+                return finder.find(start.y, start.x, goal.y, goal.x, this::isCancelled);
+            }
+            
+            @Override
+            protected void done() {
+                if (isCancelled() || pathWorker != this) return;
+                pathWorker = null;
+                try {
+                    path = get();
+                    pathWidth = width;
+                    pathLabel.setText(path == null ? "Path: unreachable"
+                        : String.format("Path: %d steps, cost %.1f", path.steps(width), path.cost));
+                } catch (InterruptedException | ExecutionException e) {
+                    pathLabel.setText("Path: failed");
+                }
+                mapPanel.repaint();
+            }
+        };
+        pathWorker.execute();
+    }
+    
+    private void showGenerateDialog() {
+        JPanel panel = new JPanel(new GridLayout(6, 2, 5, 5));
+        JComboBox<String> typeBox = new JComboBox<>(new String[] {
+            "Noise terrain", "Cellular caves", "BSP rooms"});
+        JComboBox<String> scopeBox = new JComboBox<>(new String[] {
+            "Whole layer", "Visible area"});
+        JTextField seedField = new JTextField(String.valueOf(System.nanoTime() & 0xFFFFFF), 10);
+        JTextField densityField = new JTextField("45", 10);
+        JTextField iterationsField = new JTextField("5", 10);
+        JTextField sizeField = new JTextField("8", 10);
+        
+        panel.add(new JLabel("Generator:"));
+        panel.add(typeBox);
+        panel.add(new JLabel("Area:"));
+        panel.add(scopeBox);
+        panel.add(new JLabel("Seed:"));
+        panel.add(seedField);
+        panel.add(new JLabel("Density (%):"));
+        panel.add(densityField);
+        panel.add(new JLabel("Iterations / Octaves:"));
+        panel.add(iterationsField);
+        panel.add(new JLabel("Feature / Room size:"));
+        panel.add(sizeField);
+        
+        int result = JOptionPane.showConfirmDialog(this, panel, 
+            "Generate Layer", JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        
+        if (result == JOptionPane.OK_OPTION && checkUnlocked()) {
+            try {
+                long seed = Long.parseLong(seedField.getText().trim());
+                double density = Integer.parseInt(densityField.getText().trim()) / 100.0;
+                int iterations = Integer.parseInt(iterationsField.getText().trim());
+                int size = Integer.parseInt(sizeField.getText().trim());
+                
+                if (density < 0 || density > 1 || iterations < 0 || size < 1) {
+                    JOptionPane.showMessageDialog(this, 
+                        "Density must be 0-100, iterations >= 0 and size >= 1", 
+                        "Invalid Input", JOptionPane.WARNING_MESSAGE);
+                    return;
+                }
+                
+                Rectangle region = scopeBox.getSelectedIndex() == 1
+                    ? visibleRegion() : new Rectangle(0, 0, mapWidth, mapHeight);
+                if (region.isEmpty()) {
+                    return;
+                }
+                
+                // The whole generated region is one undo step
+                MapLayer target = layers.get(currentLayer);
+                tileMap.push(new RegionChange(target, region));
+                TileStorage layer = target.getStorage();
+                int type = typeBox.getSelectedIndex();
+                tileMap.write(region, () -> {
+                    switch (type) {
+                        case 0:
+                            ProceduralGenerator.noise(layer, region, seed, density, size, Math.max(1, iterations));
+                            break;
+                        case 1:
+                            ProceduralGenerator.caves(layer, region, seed, density, iterations);
+                            break;
+                        default:
+                            ProceduralGenerator.rooms(layer, region, seed, size);
+                            break;
+                    }
+                });
+                tileMap.regionChanged(target, region);
+            } catch (NumberFormatException e) {
+                JOptionPane.showMessageDialog(this, 
+                    "Invalid number format", 
+                    "Invalid Input", JOptionPane.WARNING_MESSAGE);
+            }
+        }
+    }
+    
     private void showDimensionsDialog() {
         JPanel panel = new JPanel(new GridLayout(2, 2, 5, 5));
         JTextField widthField = new JTextField(String.valueOf(mapWidth), 10);
@@ -281,12 +1231,12 @@ public class TileMapMaker extends JFrame {
                 int newWidth = Integer.parseInt(widthField.getText().trim());
                 int newHeight = Integer.parseInt(heightField.getText().trim());
                 
-                if (newWidth > 0 && newWidth <= 200 && newHeight > 0 && newHeight <= 200) {
+                if (newWidth > 0 && newWidth <= MAX_DIMENSION && newHeight > 0 && newHeight <= MAX_DIMENSION) {
                     mapWidth = newWidth;
                     mapHeight = newHeight;
                 } else {
                     JOptionPane.showMessageDialog(this, 
-                        "Dimensions must be between 1 and 200", 
+                        "Dimensions must be between 1 and " + MAX_DIMENSION, 
                         "Invalid Input", JOptionPane.WARNING_MESSAGE);
                     mapWidth = 50;
                     mapHeight = 50;
@@ -302,14 +1252,28 @@ public class TileMapMaker extends JFrame {
     }
     
     private void resizeMap() {
-        JPanel panel = new JPanel(new GridLayout(2, 2, 5, 5));
+        JPanel panel = new JPanel(new GridLayout(3, 2, 5, 5));
         JTextField widthField = new JTextField(String.valueOf(mapWidth), 10);
         JTextField heightField = new JTextField(String.valueOf(mapHeight), 10);
         
+        // Nine-point anchor: the part of the map that stays in place
+        JPanel anchorPanel = new JPanel(new GridLayout(3, 3, 2, 2));
+        ButtonGroup anchorGroup = new ButtonGroup();
+        JToggleButton[] anchorButtons = new JToggleButton[9];
+        for (int i = 0; i < 9; i++) {
+            anchorButtons[i] = new JToggleButton();
+            anchorButtons[i].setPreferredSize(new Dimension(20, 20));
+            anchorGroup.add(anchorButtons[i]);
+            anchorPanel.add(anchorButtons[i]);
+        }
+        anchorButtons[0].setSelected(true);
+        
         panel.add(new JLabel("Map Width:"));
         panel.add(widthField);
         panel.add(new JLabel("Map Height:"));
         panel.add(heightField);
+        panel.add(new JLabel("Anchor:"));
+        panel.add(anchorPanel);
         
         int result = JOptionPane.showConfirmDialog(this, panel, 
             "Resize Map", JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
@@ -319,34 +1283,32 @@ public class TileMapMaker extends JFrame {
                 int newWidth = Integer.parseInt(widthField.getText().trim());
                 int newHeight = Integer.parseInt(heightField.getText().trim());
                 
-                if (newWidth > 0 && newWidth <= 200 && newHeight > 0 && newHeight <= 200) {
-                    // Create new tile layers with new dimensions
-                    int[][][] newTileLayers = new int[NUM_LAYERS][newHeight][newWidth];
-                    
-                    // Copy existing data for all layers
-                    for (int layer = 0; layer < NUM_LAYERS; layer++) {
-                        for (int i = 0; i < Math.min(mapHeight, newHeight); i++) {
-                            for (int j = 0; j < Math.min(mapWidth, newWidth); j++) {
-                                newTileLayers[layer][i][j] = tileLayers[layer][i][j];
-                            }
-                        }
+                if (newWidth > 0 && newWidth <= MAX_DIMENSION && newHeight > 0 && newHeight <= MAX_DIMENSION) {
+                    int anchor = 0;
+                    for (int i = 0; i < 9; i++) {
+                        if (anchorButtons[i].isSelected()) anchor = i;
                     }
+                    int offsetCol = MapResizer.offsetFor(anchor % 3, mapWidth, newWidth);
+                    int offsetRow = MapResizer.offsetFor(anchor / 3, mapHeight, newHeight);
                     
-                    mapWidth = newWidth;
-                    mapHeight = newHeight;
-                    tileLayers = newTileLayers;
-                    undoStack.clear();
-                    
-                    // Update panel
-                    mapPanel.setPreferredSize(new Dimension(mapWidth * TILE_SIZE, mapHeight * TILE_SIZE));
-                    mapPanel.revalidate();
-                    mapPanel.repaint();
-                    miniMapPanel.repaint();
+                    MapLayer[] resizedLayers = layers.toArray(new MapLayer[0]);
+                    MapResizer.Removed[] removedBands = new MapResizer.Removed[1];
+                    List<List<MapEntity>> removedEntities = new ArrayList<>();
+                    tileMap.restructure(() -> {
+                        removedBands[0] = MapResizer.resize(storagesOf(resizedLayers),
+                            mapWidth, mapHeight, newWidth, newHeight, offsetCol, offsetRow);
+                        for (MapLayer layer : resizedLayers) {
+                            removedEntities.add(layer.getEntities().shift(offsetCol, offsetRow, newWidth, newHeight));
+                        }
+                    });
+                    MapResizer.Removed removed = removedBands[0];
+                    tileMap.push(new ResizeChange(resizedLayers, removed, offsetCol, offsetRow, removedEntities));
+                    tileMap.resized(newWidth, newHeight);
                     
                     JOptionPane.showMessageDialog(this, "Map resized successfully!");
                 } else {
                     JOptionPane.showMessageDialog(this, 
-                        "Dimensions must be between 1 and 200", 
+                        "Dimensions must be between 1 and " + MAX_DIMENSION, 
                         "Invalid Input", JOptionPane.WARNING_MESSAGE);
                 }
             } catch (NumberFormatException e) {
@@ -379,6 +1341,30 @@ public class TileMapMaker extends JFrame {
         }
     }
     
+    // Atlas cells are numbered row by row; cell N is drawn for tile value N
+    private void loadTileset() {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setFileFilter(new FileNameExtensionFilter("Image files", "png", "gif", "bmp", "jpg", "jpeg"));
+        if (fileChooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        
+        String input = JOptionPane.showInputDialog(this, "Atlas cell size in pixels (32 or 32x16):", "32");
+        if (input == null) return;
+        try {
+            String[] parts = input.trim().toLowerCase().split("x");
+            int cellWidth = Integer.parseInt(parts[0].trim());
+            int cellHeight = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : cellWidth;
+            BufferedImage atlas = ImageIO.read(fileChooser.getSelectedFile());
+            if (atlas == null) throw new IOException("Unsupported image format");
+            tileAtlas = TileAtlas.slice(atlas, cellWidth, cellHeight, TILE_SIZE, mapPanel.getGraphicsConfiguration());
+            mapPanel.repaint();
+            JOptionPane.showMessageDialog(this, "Tileset loaded with " + tileAtlas.cellCount() + " cells.");
+        } catch (IOException | IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(this, 
+                "Error loading tileset: " + e.getMessage(), 
+                "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+    
     private void saveMap() {
         JFileChooser fileChooser = new JFileChooser();
         FileNameExtensionFilter filter = new FileNameExtensionFilter("Text files", "txt");
@@ -391,27 +1377,7 @@ public class TileMapMaker extends JFrame {
                 file = new File(file.getAbsolutePath() + ".txt");
             }
             
-            try (PrintWriter writer = new PrintWriter(file)) {
-                // Write width and height as first line
-                writer.println(mapWidth + " " + mapHeight);
-                
-                // Write each layer
-                for (int layer = 0; layer < NUM_LAYERS; layer++) {
-                    writer.println("LAYER:" + layer);
-                    for (int i = 0; i < mapHeight; i++) {
-                        for (int j = 0; j < mapWidth; j++) {
-                            writer.print(tileLayers[layer][i][j]);
-                            if (j < mapWidth - 1) writer.print(" ");
-                        }
-                        writer.println();
-                    }
-                }
-                JOptionPane.showMessageDialog(this, "Map saved successfully as TXT!");
-            } catch (IOException e) {
-                JOptionPane.showMessageDialog(this, 
-                    "Error saving map: " + e.getMessage(), 
-                    "Error", JOptionPane.ERROR_MESSAGE);
-            }
+            saveInBackground(file, MapFiles::writeTxt, "TXT");
         }
     }
     
@@ -427,44 +1393,69 @@ public class TileMapMaker extends JFrame {
                 file = new File(file.getAbsolutePath() + ".json");
             }
             
-            try (PrintWriter writer = new PrintWriter(file)) {
-                writer.println("{");
-                writer.println("  \"width\": " + mapWidth + ",");
-                writer.println("  \"height\": " + mapHeight + ",");
-                writer.println("  \"tileSize\": " + TILE_SIZE + ",");
-                writer.println("  \"layers\": {");
-                
-                String[] layerNames = {"ground", "decoration", "objects"};
-                
-                for (int layer = 0; layer < NUM_LAYERS; layer++) {
-                    writer.println("    \"" + layerNames[layer] + "\": [");
-                    
-                    for (int i = 0; i < mapHeight; i++) {
-                        writer.print("      [");
-                        for (int j = 0; j < mapWidth; j++) {
-                            writer.print(tileLayers[layer][i][j]);
-                            if (j < mapWidth - 1) writer.print(", ");
-                        }
-                        writer.print("]");
-                        if (i < mapHeight - 1) writer.println(",");
-                        else writer.println();
+            saveInBackground(file, MapFiles::writeJson, "JSON");
+        }
+    }
+    
+    private interface MapWriter {
+        void write(MapData map, File file) throws IOException;
+    }
+    
+    // Writes a snapshot of the map on a worker thread; editing goes on meanwhile
+    private void saveInBackground(File file, MapWriter writer, String format) {
+        MapData settings = currentMapData();
+        PvsCache pvsCache = settings.pvsRadius > 0 ? derived.pvsCache() : null;
+        SwingWorker<Void, Void> worker = new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() throws IOException, InterruptedException {
+                long start = System.nanoTime();
+                PvsCache.Update pvsUpdate = pvsCache == null ? null : pvsCache.begin(
+                    settings.width, settings.height, settings.pvsChunkSize, settings.pvsRadius);
+                MapData map;
+                try {
+                    map = tileMap.snapshot();
+                    map.tileSize = settings.tileSize;
+                    map.exportOutlines = settings.exportOutlines;
+                    map.exportDistance = settings.exportDistance;
+                    map.pvsRadius = settings.pvsRadius;
+                    map.pvsChunkSize = settings.pvsChunkSize;
+                    if (pvsUpdate != null) {
+                        map.pvs = pvsUpdate.compute(map.combinedSolid(), map.width, map.height,
+                            map.pvsChunkSize, map.pvsRadius);
                     }
-                    
-                    writer.print("    ]");
-                    if (layer < NUM_LAYERS - 1) writer.println(",");
-                    else writer.println();
+                } finally {
+                    if (pvsUpdate != null) pvsUpdate.end();
                 }
-                
-                writer.println("  }");
-                writer.println("}");
-                
-                JOptionPane.showMessageDialog(this, "Map saved successfully as JSON!");
-            } catch (IOException e) {
-                JOptionPane.showMessageDialog(this, 
-                    "Error saving map: " + e.getMessage(), 
-                    "Error", JOptionPane.ERROR_MESSAGE);
+                writer.write(map, file);
+                metrics.fileSaved(file.length(), System.nanoTime() - start);
+                return null;
             }
-        }
+            
+            @Override
+            protected void done() {
+                try {
+                    get();
+                    JOptionPane.showMessageDialog(TileMapMaker.this, "Map saved successfully as " + format + "!");
+                } catch (InterruptedException | ExecutionException e) {
+                    Throwable cause = e.getCause() == null ? e : e.getCause();
+                    JOptionPane.showMessageDialog(TileMapMaker.this, 
+                        "Error saving map: " + cause.getMessage(), 
+                        "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        };
+        worker.execute();
+    }
+    
+    // Wraps the editor state for MapFiles without copying the tile arrays
+    private MapData currentMapData() {
+        MapData map = tileMap.toMapData();
+        map.tileSize = TILE_SIZE;
+        map.exportOutlines = exportOutlinesBox.isSelected();
+        map.exportDistance = exportDistanceBox.isSelected();
+        map.pvsRadius = exportPvsBox.isSelected() ? viewRadius : 0;
+        map.pvsChunkSize = pvsChunkSize;
+        return map;
     }
     
     private void loadMap() {
@@ -489,48 +1480,12 @@ public class TileMapMaker extends JFrame {
     }
     
     private void loadMapFromTxt(File file) {
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            // Read width and height from first line
-            String firstLine = reader.readLine();
-            if (firstLine != null) {
-                String[] dimensions = firstLine.trim().split("\\s+");
-                int width = Integer.parseInt(dimensions[0]);
-                int height = Integer.parseInt(dimensions[1]);
-                
-                // Resize map to match loaded dimensions
-                mapWidth = width;
-                mapHeight = height;
-                tileLayers = new int[NUM_LAYERS][mapHeight][mapWidth];
-                undoStack.clear();
-                
-                // Read layer data
-                String line;
-                int currentLoadLayer = -1;
-                int row = 0;
-                
-                while ((line = reader.readLine()) != null) {
-                    line = line.trim();
-                    
-                    if (line.startsWith("LAYER:")) {
-                        currentLoadLayer = Integer.parseInt(line.substring(6));
-                        row = 0;
-                    } else if (currentLoadLayer >= 0 && currentLoadLayer < NUM_LAYERS && row < height) {
-                        String[] tokens = line.split("\\s+");
-                        for (int col = 0; col < Math.min(tokens.length, width); col++) {
-                            tileLayers[currentLoadLayer][row][col] = Integer.parseInt(tokens[col]);
-                        }
-                        row++;
-                    }
-                }
-                
-                // Update panel
-                mapPanel.setPreferredSize(new Dimension(mapWidth * TILE_SIZE, mapHeight * TILE_SIZE));
-                mapPanel.revalidate();
-                mapPanel.repaint();
-                miniMapPanel.repaint();
-                
-                JOptionPane.showMessageDialog(this, "Map loaded successfully from TXT!");
-            }
+        try {
+            long start = System.nanoTime();
+            MapData data = MapFiles.readTxt(file);
+            metrics.fileLoaded(file.length(), System.nanoTime() - start);
+            applyLoadedMap(data);
+            JOptionPane.showMessageDialog(this, "Map loaded successfully from TXT!");
         } catch (IOException | NumberFormatException e) {
             JOptionPane.showMessageDialog(this, 
                 "Error loading map: " + e.getMessage(), 
@@ -539,124 +1494,304 @@ public class TileMapMaker extends JFrame {
     }
     
     private void loadMapFromJson(File file) {
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            StringBuilder jsonContent = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                jsonContent.append(line.trim());
-            }
-            
-            String json = jsonContent.toString();
+        try {
+            long start = System.nanoTime();
+            MapData data = MapFiles.readJson(file);
+            metrics.fileLoaded(file.length(), System.nanoTime() - start);
+            applyLoadedMap(data);
+            JOptionPane.showMessageDialog(this, "Map loaded successfully from JSON!");
+        } catch (IOException | NumberFormatException e) {
+            JOptionPane.showMessageDialog(this, 
+                "Error loading JSON map: " + e.getMessage(), 
+                "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+    
+    private void applyLoadedMap(MapData data) {
+        currentLayer = 0;
+        exportOutlinesBox.setSelected(data.exportOutlines);
+        exportDistanceBox.setSelected(data.exportDistance);
+        exportPvsBox.setSelected(data.pvsRadius > 0);
+        if (data.pvsRadius > 0) viewRadius = data.pvsRadius;
+        pvsChunkSize = data.pvsChunkSize;
+        tileMap.replace(data.width, data.height, data.layers);
+        layerPanel.refresh();
+    }
+    
+    // Layer stack editor: list (top layer first), per-layer flags and storage, add/remove/reorder
+    private class LayerPanel extends JPanel {
+        private final DefaultListModel<MapLayer> model = new DefaultListModel<>();
+        private final JList<MapLayer> list = new JList<>(model);
+        private final JCheckBox visibleBox = new JCheckBox("Visible");
+        private final JCheckBox lockedBox = new JCheckBox("Locked");
+        private final JSlider opacitySlider = new JSlider(0, 100, 100);
+        private final JComboBox<TileStorage.Type> storageBox = new JComboBox<>(TileStorage.Type.values());
+        private boolean updating = false; // set while the controls are filled from the model
+        
+        LayerPanel() {
+            super(new BorderLayout(5, 5));
+            setBorder(BorderFactory.createTitledBorder("Layers"));
+            setPreferredSize(new Dimension(220, 0));
             
-            // Parse JSON manually (simple parsing without external libraries)
-            int width = extractJsonInt(json, "width");
-            int height = extractJsonInt(json, "height");
+            list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+            list.setCellRenderer(new DefaultListCellRenderer() {
+                @Override
+                public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                              boolean isSelected, boolean cellHasFocus) {
+                    super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+                    MapLayer layer = (MapLayer) value;
+                    String flags = (layer.isVisible() ? "" : " (hidden)") + (layer.isLocked() ? " (locked)" : "");
+                    setText(layer.getName() + flags);
+                    setIcon(new ColorIcon(layer.getColor(), layer.getSolidColor()));
+                    return this;
+                }
+            });
+            list.addListSelectionListener(e -> {
+                if (!updating && !e.getValueIsAdjusting() && list.getSelectedIndex() >= 0) {
+                    selectLayer(toLayerIndex(list.getSelectedIndex()));
+                }
+            });
+            add(new JScrollPane(list), BorderLayout.CENTER);
             
-            // Resize map to match loaded dimensions
-            mapWidth = width;
-            mapHeight = height;
-            tileLayers = new int[NUM_LAYERS][mapHeight][mapWidth];
-            undoStack.clear();
+            JPanel controls = new JPanel(new GridLayout(0, 1, 2, 2));
             
-            // Extract each layer
-            String[] layerNames = {"ground", "decoration", "objects"};
+            JPanel flags = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+            flags.add(visibleBox);
+            flags.add(lockedBox);
+            controls.add(flags);
+            // Layer settings are copied by snapshots, so they change under the write lock
+            visibleBox.addActionListener(e -> {
+                MapLayer layer = layers.get(currentLayer);
+                tileMap.write(() -> layer.setVisible(visibleBox.isSelected()));
+                layerUpdated();
+            });
+            lockedBox.addActionListener(e -> {
+                MapLayer layer = layers.get(currentLayer);
+                tileMap.write(() -> layer.setLocked(lockedBox.isSelected()));
+                layerUpdated();
+            });
             
-            for (int layer = 0; layer < NUM_LAYERS; layer++) {
-                String layerKey = "\"" + layerNames[layer] + "\":";
-                int layerStart = json.indexOf(layerKey);
-                
-                if (layerStart != -1) {
-                    int arrayStart = json.indexOf("[", layerStart);
-                    int arrayEnd = findMatchingBracket(json, arrayStart);
-                    
-                    if (arrayStart != -1 && arrayEnd != -1) {
-                        String layerContent = json.substring(arrayStart + 1, arrayEnd);
-                        
-                        // Parse each row
-                        int row = 0;
-                        int currentPos = 0;
-                        
-                        while (currentPos < layerContent.length() && row < height) {
-                            int rowStart = layerContent.indexOf("[", currentPos);
-                            if (rowStart == -1) break;
-                            
-                            int rowEnd = layerContent.indexOf("]", rowStart);
-                            if (rowEnd == -1) break;
-                            
-                            String rowContent = layerContent.substring(rowStart + 1, rowEnd);
-                            String[] values = rowContent.split(",");
-                            
-                            for (int col = 0; col < Math.min(values.length, width); col++) {
-                                tileLayers[layer][row][col] = Integer.parseInt(values[col].trim());
-                            }
-                            
-                            row++;
-                            currentPos = rowEnd + 1;
-                        }
-                    }
+            JPanel opacityRow = new JPanel(new BorderLayout());
+            opacityRow.add(new JLabel("Opacity "), BorderLayout.WEST);
+            opacityRow.add(opacitySlider, BorderLayout.CENTER);
+            controls.add(opacityRow);
+            opacitySlider.addChangeListener(e -> {
+                if (!updating) {
+                    MapLayer layer = layers.get(currentLayer);
+                    tileMap.write(() -> layer.setOpacity(opacitySlider.getValue() / 100f));
+                    mapPanel.repaint();
+                    miniMapPanel.repaint();
                 }
-            }
+            });
             
-            // Update panel
-            mapPanel.setPreferredSize(new Dimension(mapWidth * TILE_SIZE, mapHeight * TILE_SIZE));
-            mapPanel.revalidate();
+            JPanel storageRow = new JPanel(new BorderLayout());
+            storageRow.add(new JLabel("Storage "), BorderLayout.WEST);
+            storageRow.add(storageBox, BorderLayout.CENTER);
+            controls.add(storageRow);
+            storageBox.addActionListener(e -> {
+                if (!updating) convertStorage((TileStorage.Type) storageBox.getSelectedItem());
+            });
+            
+            JPanel buttons = new JPanel(new GridLayout(0, 3, 2, 2));
+            JButton addBtn = new JButton("Add");
+            addBtn.addActionListener(e -> addLayer());
+            JButton removeBtn = new JButton("Remove");
+            removeBtn.addActionListener(e -> removeLayer());
+            JButton renameBtn = new JButton("Rename");
+            renameBtn.addActionListener(e -> renameLayer());
+            JButton upBtn = new JButton("Up");
+            upBtn.addActionListener(e -> moveLayer(1));
+            JButton downBtn = new JButton("Down");
+            downBtn.addActionListener(e -> moveLayer(-1));
+            buttons.add(addBtn);
+            buttons.add(removeBtn);
+            buttons.add(renameBtn);
+            buttons.add(upBtn);
+            buttons.add(downBtn);
+            controls.add(buttons);
+            
+            add(controls, BorderLayout.SOUTH);
+        }
+        
+        // The list shows the top layer first
+        private int toLayerIndex(int listIndex) {
+            return layers.size() - 1 - listIndex;
+        }
+        
+        // Rebuilds the list after the layer stack itself changed
+        void refresh() {
+            updating = true;
+            model.clear();
+            for (int i = layers.size() - 1; i >= 0; i--) {
+                model.addElement(layers.get(i));
+            }
+            updating = false;
+            selectLayer(Math.min(currentLayer, layers.size() - 1));
+            statsChanged();
+        }
+        
+        // Fills the controls from the current layer
+        void showLayer() {
+            MapLayer layer = layers.get(currentLayer);
+            updating = true;
+            list.setSelectedIndex(toLayerIndex(currentLayer));
+            visibleBox.setSelected(layer.isVisible());
+            lockedBox.setSelected(layer.isLocked());
+            opacitySlider.setValue(Math.round(layer.getOpacity() * 100));
+            storageBox.setSelectedItem(layer.getStorage().getType());
+            updating = false;
+        }
+        
+        private void layerUpdated() {
+            list.repaint();
             mapPanel.repaint();
             miniMapPanel.repaint();
+        }
+        
+        private void convertStorage(TileStorage.Type type) {
+            MapLayer layer = layers.get(currentLayer);
+            if (layer.getStorage().getType() == type) return;
+            try {
+                TileStorage converted = TileStorage.convert(layer.getStorage(), type);
+                tileMap.restructure(() -> layer.setStorage(converted));
+                // Older undo entries may hold values the new storage cannot take
+                tileMap.clearHistory();
+                tileMap.structureChanged();
+                layerUpdated();
+            } catch (IllegalArgumentException e) {
+                JOptionPane.showMessageDialog(TileMapMaker.this, 
+                    "Cannot convert layer '" + layer.getName() + "': " + e.getMessage(), 
+                    "Conversion Failed", JOptionPane.ERROR_MESSAGE);
+                showLayer();
+            }
+        }
+        
+        private void addLayer() {
+            if (layers.size() >= MapLayer.MAX_LAYERS) {
+                JOptionPane.showMessageDialog(TileMapMaker.this, 
+                    "A map can have at most " + MapLayer.MAX_LAYERS + " layers", 
+                    "Too Many Layers", JOptionPane.WARNING_MESSAGE);
+                return;
+            }
+            String name = askLayerName("New layer name:", "layer" + layers.size());
+            if (name == null) return;
             
-            JOptionPane.showMessageDialog(this, "Map loaded successfully from JSON!");
+            int index = currentLayer + 1;
+            MapLayer layer = MapLayer.create(name, layers.size(), TileStorage.Type.DENSE.create(mapWidth, mapHeight));
+            tileMap.restructure(() -> layers.add(index, layer));
+            currentLayer = index;
+            tileMap.clearHistory();
+            refresh();
+            layerUpdated();
+        }
+        
+        private void removeLayer() {
+            if (layers.size() == 1) {
+                JOptionPane.showMessageDialog(TileMapMaker.this, 
+                    "The map needs at least one layer", 
+                    "Remove Layer", JOptionPane.WARNING_MESSAGE);
+                return;
+            }
+            MapLayer layer = layers.get(currentLayer);
+            int confirm = JOptionPane.showConfirmDialog(TileMapMaker.this, 
+                "Remove layer '" + layer.getName() + "' and all its tiles?", 
+                "Confirm Remove", 
+                JOptionPane.YES_NO_OPTION);
+            if (confirm != JOptionPane.YES_OPTION) return;
             
-        } catch (IOException | NumberFormatException e) {
-            JOptionPane.showMessageDialog(this, 
-                "Error loading JSON map: " + e.getMessage(), 
-                "Error", JOptionPane.ERROR_MESSAGE);
+            tileMap.restructure(() -> layers.remove(layer));
+            currentLayer = Math.max(0, currentLayer - 1);
+            tileMap.clearHistory();
+            tileMap.structureChanged();
+            refresh();
+            layerUpdated();
         }
-    }
-    
-    private int findMatchingBracket(String str, int openPos) {
-        int count = 1;
-        for (int i = openPos + 1; i < str.length(); i++) {
-            if (str.charAt(i) == '[') count++;
-            else if (str.charAt(i) == ']') {
-                count--;
-                if (count == 0) return i;
+        
+        private void renameLayer() {
+            MapLayer layer = layers.get(currentLayer);
+            String name = askLayerName("Layer name:", layer.getName());
+            if (name == null || name.equals(layer.getName())) return;
+            tileMap.write(() -> layer.setName(name));
+            selectLayer(currentLayer);
+            layerUpdated();
+        }
+        
+        // direction 1 moves the current layer up (towards the top of the stack)
+        private void moveLayer(int direction) {
+            int target = currentLayer + direction;
+            if (target < 0 || target >= layers.size()) return;
+            int from = currentLayer;
+            tileMap.restructure(() -> layers.add(target, layers.remove(from)));
+            currentLayer = target;
+            if (Math.min(currentLayer, target - direction) == 0) {
+                tileMap.structureChanged(); // the bottom layer changed
+            }
+            refresh();
+            layerUpdated();
+        }
+        
+        // Names end up in files as keys and header tokens, so keep them simple and unique
+        private String askLayerName(String prompt, String initial) {
+            String input = JOptionPane.showInputDialog(TileMapMaker.this, prompt, initial);
+            if (input == null) return null;
+            String name = MapLayer.sanitizeName(input);
+            if (name.isEmpty()) {
+                JOptionPane.showMessageDialog(TileMapMaker.this, 
+                    "Layer name cannot be empty", 
+                    "Invalid Input", JOptionPane.WARNING_MESSAGE);
+                return null;
+            }
+            for (MapLayer other : layers) {
+                if (other.getName().equals(name) && other != layers.get(currentLayer)) {
+                    JOptionPane.showMessageDialog(TileMapMaker.this, 
+                        "A layer named '" + name + "' already exists", 
+                        "Invalid Input", JOptionPane.WARNING_MESSAGE);
+                    return null;
+                }
             }
+            return name;
         }
-        return -1;
     }
     
-    private int extractJsonInt(String json, String key) {
-        String searchKey = "\"" + key + "\":";
-        int keyIndex = json.indexOf(searchKey);
-        if (keyIndex == -1) {
-            throw new NumberFormatException("Key '" + key + "' not found in JSON");
-        }
+    // Two-tone swatch: walkable colour on the left, solid colour on the right
+    private static class ColorIcon implements Icon {
+        private final Color color, solidColor;
         
-        int valueStart = keyIndex + searchKey.length();
-        int valueEnd = valueStart;
+        ColorIcon(Color color, Color solidColor) {
+            this.color = color;
+            this.solidColor = solidColor;
+        }
         
-        // Skip whitespace
-        while (valueEnd < json.length() && Character.isWhitespace(json.charAt(valueEnd))) {
-            valueEnd++;
+        @Override
+        public void paintIcon(Component c, Graphics g, int x, int y) {
+            g.setColor(color);
+            g.fillRect(x, y, 7, 14);
+            g.setColor(solidColor);
+            g.fillRect(x + 7, y, 7, 14);
+            g.setColor(Color.DARK_GRAY);
+            g.drawRect(x, y, 13, 13);
         }
-        valueStart = valueEnd;
         
-        // Find end of number
-        while (valueEnd < json.length() && Character.isDigit(json.charAt(valueEnd))) {
-            valueEnd++;
+        @Override
+        public int getIconWidth() {
+            return 14;
         }
         
-        return Integer.parseInt(json.substring(valueStart, valueEnd));
+        @Override
+        public int getIconHeight() {
+            return 14;
+        }
     }
     
     private class MiniMapPanel extends JPanel {
         private static final int MINIMAP_MAX_SIZE = 200;
-        private double scale;
         
         public MiniMapPanel() {
             setPreferredSize(new Dimension(MINIMAP_MAX_SIZE + 10, MINIMAP_MAX_SIZE + 10));
             setOpaque(true);
             setBackground(new Color(255, 255, 255, 230));
             setBorder(BorderFactory.createLineBorder(Color.GRAY, 2));
+            tileMap.addListener(changes -> repaint());
             
             addMouseListener(new MouseAdapter() {
                 @Override
@@ -676,7 +1811,7 @@ public class TileMapMaker extends JFrame {
         private void handleMiniMapClick(MouseEvent e) {
             int miniWidth = Math.min(mapWidth, MINIMAP_MAX_SIZE);
             int miniHeight = Math.min(mapHeight, MINIMAP_MAX_SIZE);
-            scale = Math.min((double) MINIMAP_MAX_SIZE / mapWidth, (double) MINIMAP_MAX_SIZE / mapHeight);
+            double scale = Math.min((double) MINIMAP_MAX_SIZE / mapWidth, (double) MINIMAP_MAX_SIZE / mapHeight);
             
             int offsetX = (MINIMAP_MAX_SIZE - (int)(mapWidth * scale)) / 2 + 5;
             int offsetY = (MINIMAP_MAX_SIZE - (int)(mapHeight * scale)) / 2 + 5;
@@ -685,8 +1820,8 @@ public class TileMapMaker extends JFrame {
             int clickY = e.getY() - offsetY;
             
             if (clickX >= 0 && clickY >= 0) {
-                int mapX = (int)(clickX / scale * TILE_SIZE);
-                int mapY = (int)(clickY / scale * TILE_SIZE);
+                int mapX = (int)(clickX / scale * tilePixels());
+                int mapY = (int)(clickY / scale * tilePixels());
                 
                 Rectangle viewRect = scrollPane.getViewport().getViewRect();
                 int centerX = mapX - viewRect.width / 2;
@@ -702,94 +1837,149 @@ public class TileMapMaker extends JFrame {
         @Override
         protected void paintComponent(Graphics g) {
             super.paintComponent(g);
-            Graphics2D g2d = (Graphics2D) g;
+            Graphics2D g2d = (Graphics2D) g.create();
             g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-            
-            scale = Math.min((double) MINIMAP_MAX_SIZE / mapWidth, (double) MINIMAP_MAX_SIZE / mapHeight);
-            int miniWidth = (int)(mapWidth * scale);
-            int miniHeight = (int)(mapHeight * scale);
-            
-            int offsetX = (MINIMAP_MAX_SIZE - miniWidth) / 2 + 5;
-            int offsetY = (MINIMAP_MAX_SIZE - miniHeight) / 2 + 5;
-            
-            // Draw reference image if loaded
-            if (referenceImage != null) {
-                g2d.drawImage(referenceImage, offsetX, offsetY, miniWidth, miniHeight, this);
-            }
-            
-            // Draw all layers with different transparencies
-            Color[] layerColors = {
-                new Color(139, 69, 19, 120),    // Ground - brown
-                new Color(34, 139, 34, 120),    // Decoration - green
-                new Color(70, 130, 180, 120)    // Objects - blue
-            };
-            
-            for (int layer = 0; layer < NUM_LAYERS; layer++) {
-                for (int row = 0; row < mapHeight; row++) {
-                    for (int col = 0; col < mapWidth; col++) {
-                        if (tileLayers[layer][row][col] != 0) {
-                            int x = offsetX + (int)(col * scale);
-                            int y = offsetY + (int)(row * scale);
-                            int w = Math.max(1, (int)scale);
-                            int h = Math.max(1, (int)scale);
-                            
-                            g2d.setColor(layerColors[layer]);
-                            g2d.fillRect(x, y, w, h);
-                        }
-                    }
-                }
-            }
-            
-            // Draw viewport rectangle
-            Rectangle viewRect = scrollPane.getViewport().getViewRect();
-            int viewX = offsetX + (int)(viewRect.x / TILE_SIZE * scale);
-            int viewY = offsetY + (int)(viewRect.y / TILE_SIZE * scale);
-            int viewW = (int)(viewRect.width / TILE_SIZE * scale);
-            int viewH = (int)(viewRect.height / TILE_SIZE * scale);
-            
-            g2d.setColor(new Color(0, 0, 255, 100));
-            g2d.fillRect(viewX, viewY, viewW, viewH);
-            g2d.setColor(Color.BLUE);
-            g2d.setStroke(new BasicStroke(2));
-            g2d.drawRect(viewX, viewY, viewW, viewH);
+            g2d.translate(5, 5);
+            renderer.paintMiniMap(g2d, mapView(), MINIMAP_MAX_SIZE);
+            g2d.dispose();
         }
     }
     
     private class MapPanel extends JPanel {
+        private static final int FRAME_MILLIS = 16;
+        
+        private ActiveRenderer activeRenderer; // null while Swing schedules the paints
+        
+        // Painting drags are queued as raw samples and applied once per frame
+        private int[] dragSamples = new int[64]; // x, y in panel pixels
+        private int dragSampleCount;
+        private final Timer dragTimer = new Timer(FRAME_MILLIS, e -> applyDragSamples());
+        private PaintStroke stroke;            // undo entry of the stroke being painted
+        private final StringBuilder labelText = new StringBuilder();
+        
         public MapPanel() {
             setPreferredSize(new Dimension(mapWidth * TILE_SIZE, mapHeight * TILE_SIZE));
+            dragTimer.setRepeats(false);
+            tileMap.addListener(this::mapChanged);
+            
+            // Ctrl+wheel zooms about the cursor; the plain wheel still scrolls
+            addMouseWheelListener(e -> {
+                if (e.isControlDown()) {
+                    zoomAt(e.getPoint(), Math.pow(1.1, -e.getPreciseWheelRotation()));
+                } else {
+                    scrollPane.dispatchEvent(SwingUtilities.convertMouseEvent(this, e, scrollPane));
+                }
+            });
             
             MouseAdapter mouseAdapter = new MouseAdapter() {
                 @Override
                 public void mousePressed(MouseEvent e) {
-                    if (SwingUtilities.isRightMouseButton(e)) {
+                    if (objectMode) {
+                        objectPressed(e);
+                    } else if (SwingUtilities.isRightMouseButton(e) && fovMode) {
+                        askViewRadius();
+                    } else if (SwingUtilities.isRightMouseButton(e)) {
                         undo();
+                    } else if (SwingUtilities.isLeftMouseButton(e) && fovMode) {
+                        setFovOrigin(e);
+                    } else if (SwingUtilities.isLeftMouseButton(e) && pathMode) {
+                        int col = (int) (e.getX() / tilePixels());
+                        int row = (int) (e.getY() / tilePixels());
+                        if (row >= 0 && row < mapHeight && col >= 0 && col < mapWidth) {
+                            setPathPoint(row, col);
+                        }
                     } else if (SwingUtilities.isLeftMouseButton(e)) {
-                        handleMouseEvent(e);
+                        stroke = null;
+                        addDragSample(e);
+                        applyDragSamples();
                     }
                 }
                 
                 @Override
                 public void mouseDragged(MouseEvent e) {
-                    if (SwingUtilities.isLeftMouseButton(e)) {
-                        handleMouseEvent(e);
+                    if (SwingUtilities.isLeftMouseButton(e) && objectMode) {
+                        objectDragged(e);
+                    } else if (SwingUtilities.isLeftMouseButton(e) && fovMode) {
+                        setFovOrigin(e);
+                    } else if (SwingUtilities.isLeftMouseButton(e) && !pathMode) {
+                        addDragSample(e);
+                    }
+                }
+                
+                @Override
+                public void mouseReleased(MouseEvent e) {
+                    if (dragSampleCount > 0) {
+                        applyDragSamples();
+                    }
+                    stroke = null;
+                    if (draggedEntity != null) {
+                        if (draggedEntity.getX() != dragChange.x || draggedEntity.getY() != dragChange.y) {
+                            tileMap.push(dragChange);
+                        }
+                        draggedEntity = null;
+                        dragChange = null;
                     }
                 }
                 
-                private void handleMouseEvent(MouseEvent e) {
-                    int col = e.getX() / TILE_SIZE;
-                    int row = e.getY() / TILE_SIZE;
+                // Objects sit on tile centres
+                private void objectPressed(MouseEvent e) {
+                    MapLayer layer = layers.get(currentLayer);
+                    int col = (int) (e.getX() / tilePixels());
+                    int row = (int) (e.getY() / tilePixels());
+                    if (row < 0 || row >= mapHeight || col < 0 || col >= mapWidth) return;
+                    MapEntity hit = layer.getEntities().hitTest(
+                        e.getX() / tilePixels(), e.getY() / tilePixels(), 0.4);
                     
-                    if (row >= 0 && row < mapHeight && col >= 0 && col < mapWidth) {
-                        int oldValue = tileLayers[currentLayer][row][col];
-                        if (oldValue != currentTile) {
-                            undoStack.push(new TileChange(currentLayer, row, col, oldValue, currentTile));
-                            tileLayers[currentLayer][row][col] = currentTile;
-                            coordinateLabel.setText(String.format("Tile: (%d, %d)", col, row));
-                            repaint();
-                            miniMapPanel.repaint();
+                    if (SwingUtilities.isRightMouseButton(e)) {
+                        if (hit == null) {
+                            undo();
+                        } else if (checkUnlocked()) {
+                            tileMap.push(new EntityChange(layer, hit));
+                            tileMap.write(() -> layer.getEntities().remove(hit));
+                            objectChanged(hit);
+                        }
+                    } else if (SwingUtilities.isLeftMouseButton(e) && checkUnlocked()) {
+                        if (hit != null && e.getClickCount() == 2) {
+                            editEntity(layer, hit);
+                        } else if (hit != null) {
+                            draggedEntity = hit;
+                            dragChange = new EntityChange(layer, hit);
+                        } else {
+                            String type = entityTypeField.getText().trim();
+                            MapEntity entity = new MapEntity(col + 0.5, row + 0.5, type.isEmpty() ? "object" : type);
+                            tileMap.push(new EntityChange(layer, entity));
+                            tileMap.write(() -> layer.getEntities().add(entity));
+                            objectChanged(entity);
                         }
                     }
+                    coordinateLabel.setText(String.format("Tile: (%d, %d)  Objects: %d",
+                        col, row, layer.getEntities().size()));
+                    repaint();
+                }
+                
+                private void objectDragged(MouseEvent e) {
+                    if (draggedEntity == null) return;
+                    int col = (int) (e.getX() / tilePixels());
+                    int row = (int) (e.getY() / tilePixels());
+                    if (row < 0 || row >= mapHeight || col < 0 || col >= mapWidth) return;
+                    if (draggedEntity.getX() != col + 0.5 || draggedEntity.getY() != row + 0.5) {
+                        objectChanged(draggedEntity);
+                        EntityIndex entities = layers.get(currentLayer).getEntities();
+                        tileMap.write(() -> entities.move(draggedEntity, col + 0.5, row + 0.5));
+                        objectChanged(draggedEntity);
+                        repaint();
+                    }
+                }
+                
+                private void setFovOrigin(MouseEvent e) {
+                    int col = (int) (e.getX() / tilePixels());
+                    int row = (int) (e.getY() / tilePixels());
+                    if (row >= 0 && row < mapHeight && col >= 0 && col < mapWidth
+                            && (fovOrigin == null || fovOrigin.x != col || fovOrigin.y != row)) {
+                        fovOrigin = new Point(col, row);
+                        updateFov();
+                        repaint();
+                    }
                 }
             };
             
@@ -797,75 +1987,125 @@ public class TileMapMaker extends JFrame {
             addMouseMotionListener(mouseAdapter);
         }
         
-        @Override
-        protected void paintComponent(Graphics g) {
-            super.paintComponent(g);
-            Graphics2D g2d = (Graphics2D) g;
-            
-            // Draw reference image if loaded
-            if (referenceImage != null) {
-                g2d.drawImage(referenceImage, 0, 0, 
-                    mapWidth * TILE_SIZE, mapHeight * TILE_SIZE, this);
+        private void addDragSample(MouseEvent e) {
+            if (dragSampleCount * 2 == dragSamples.length) {
+                dragSamples = Arrays.copyOf(dragSamples, dragSamples.length * 2);
+            }
+            dragSamples[dragSampleCount * 2] = e.getX();
+            dragSamples[dragSampleCount * 2 + 1] = e.getY();
+            dragSampleCount++;
+            if (!dragTimer.isRunning()) dragTimer.start();
+        }
+        
+        // Paints every tile sampled since the last frame as one model transaction, so
+        // derived data and the repaint are updated once for all of them
+        private void applyDragSamples() {
+            dragTimer.stop();
+            int count = dragSampleCount;
+            dragSampleCount = 0;
+            MapLayer layer = layers.get(currentLayer);
+            if (layer.isLocked()) {
+                return;
             }
             
-            // Define colors for each layer
-            Color[] layerColors = {
-                new Color(139, 69, 19, 150),    // Ground - brown
-                new Color(34, 139, 34, 150),    // Decoration - green
-                new Color(70, 130, 180, 150)    // Objects - blue
-            };
-            
-            Color[] layerSolidColors = {
-                new Color(178, 34, 34, 150),    // Ground solid - dark red
-                new Color(255, 0, 0, 150),      // Decoration solid - red
-                new Color(139, 0, 0, 150)       // Objects solid - darker red
-            };
-            
-            // Draw all layers
-            for (int layer = 0; layer < NUM_LAYERS; layer++) {
-                boolean isCurrentLayer = (layer == currentLayer);
-                int alpha = isCurrentLayer ? 180 : 80; // Current layer more visible
-                
-                for (int row = 0; row < mapHeight; row++) {
-                    for (int col = 0; col < mapWidth; col++) {
-                        int x = col * TILE_SIZE;
-                        int y = row * TILE_SIZE;
-                        
-                        int tileValue = tileLayers[layer][row][col];
-                        
-                        if (tileValue != 0) {
-                            if (tileValue == 1) {
-                                // Solid tile
-                                Color baseColor = layerSolidColors[layer];
-                                g2d.setColor(new Color(
-                                    baseColor.getRed(), 
-                                    baseColor.getGreen(), 
-                                    baseColor.getBlue(), 
-                                    alpha
-                                ));
-                            } else {
-                                // Walkable tile
-                                Color baseColor = layerColors[layer];
-                                g2d.setColor(new Color(
-                                    baseColor.getRed(), 
-                                    baseColor.getGreen(), 
-                                    baseColor.getBlue(), 
-                                    alpha
-                                ));
-                            }
-                            g2d.fillRect(x, y, TILE_SIZE, TILE_SIZE);
-                        }
-                    }
-                }
+            if (stroke == null || !stroke.continues(layer, currentTile)) {
+                stroke = new PaintStroke(tileMap, layer, currentTile);
             }
+            if (!stroke.apply(dragSamples, count, tilePixels())) return;
             
-            // Draw grid
-            g2d.setColor(Color.BLACK);
-            for (int i = 0; i <= mapHeight; i++) {
-                g2d.drawLine(0, i * TILE_SIZE, mapWidth * TILE_SIZE, i * TILE_SIZE);
+            labelText.setLength(0);
+            labelText.append("Tile: (").append(stroke.lastCol()).append(", ").append(stroke.lastRow()).append(')');
+            coordinateLabel.setText(labelText.toString());
+        }
+        
+        // Repaints the tiles a batch of model changes touched
+        private void mapChanged(TileMap.ChangeSet changes) {
+            Rectangle dirty = changes.bounds();
+            if (changes.isStructural()) {
+                updateMapSize();
+                repaint();
+            } else if (derived.connectivity() != null) {
+                repaint(); // closing a wall can isolate tiles anywhere
+            } else {
+                // One tile of margin for the auto-tile outlines of the neighbours
+                int x = (int) Math.floor((dirty.x - 1) * tilePixels());
+                int y = (int) Math.floor((dirty.y - 1) * tilePixels());
+                repaint(x, y, (int) Math.ceil((dirty.x + dirty.width + 1) * tilePixels()) - x,
+                    (int) Math.ceil((dirty.y + dirty.height + 1) * tilePixels()) - y);
+            }
+        }
+        
+        // Active rendering: repaint() only marks the frame dirty and the renderer draws
+        // at most once per display refresh
+        void setActiveRendering(boolean active) {
+            if (active == (activeRenderer != null)) return;
+            if (active) {
+                activeRenderer = new ActiveRenderer(this, this::paintMap);
+                activeRenderer.start();
+            } else {
+                activeRenderer.stop();
+                activeRenderer = null;
+            }
+            repaint();
+        }
+        
+        @Override
+        public void repaint(long time, int x, int y, int width, int height) {
+            if (activeRenderer != null) {
+                activeRenderer.invalidate();
+            } else {
+                super.repaint(time, x, y, width, height);
+            }
+        }
+        
+        @Override
+        protected void paintComponent(Graphics g) {
+            if (activeRenderer != null) {
+                activeRenderer.paint(g);
+            } else {
+                super.paintComponent(g);
+                paintMap((Graphics2D) g);
             }
-            for (int i = 0; i <= mapWidth; i++) {
-                g2d.drawLine(i * TILE_SIZE, 0, i * TILE_SIZE, mapHeight * TILE_SIZE);
+        }
+        
+        // Draws the map, timing the frame for the metrics, and the HUD over it
+        private void paintMap(Graphics2D g2d) {
+            long start = System.nanoTime();
+            Graphics2D map = (Graphics2D) g2d.create();
+            renderer.paintMap(map, mapView());
+            map.dispose();
+            metrics.framePainted(System.nanoTime() - start, renderer.tilesDrawn(), renderer.chunksDrawn());
+            if (showPerfHud) drawPerfHud(g2d);
+        }
+        
+        // Refreshes only the HUD box, not the map around it
+        void repaintHud() {
+            Rectangle view = getVisibleRect();
+            repaint(view.x, view.y, HUD_WIDTH, HUD_HEIGHT);
+        }
+        
+        // Counters in the top-left corner of the view, in screen pixels
+        private void drawPerfHud(Graphics2D g2d) {
+            Rectangle view = getVisibleRect();
+            String[] lines = {
+                String.format("paint  %.1f / %.1f / %.1f ms", metrics.getLastPaintMillis(),
+                    metrics.getAveragePaintMillis(), metrics.getP99PaintMillis()),
+                String.format("drawn  %d tiles, %d chunks", metrics.getLastTilesDrawn(), metrics.getLastChunksDrawn()),
+                String.format("EDT    %.1f ms (max %.1f)", metrics.getEventQueueLatencyMillis(),
+                    metrics.getMaxEventQueueLatencyMillis()),
+                String.format("heap   tiles %s, undo %s", formatBytes(metrics.getTileStoreBytes()),
+                    formatBytes(metrics.getUndoLogBytes())),
+                String.format("load   %.0f ms, %s/s", metrics.getLastLoadMillis(),
+                    formatBytes((long) metrics.getLastLoadBytesPerSecond())),
+                String.format("save   %.0f ms, %s/s", metrics.getLastSaveMillis(),
+                    formatBytes((long) metrics.getLastSaveBytesPerSecond()))
+            };
+            g2d.setColor(new Color(0, 0, 0, 170));
+            g2d.fillRect(view.x, view.y, HUD_WIDTH, HUD_HEIGHT);
+            g2d.setColor(Color.GREEN);
+            g2d.setFont(new Font("Monospaced", Font.PLAIN, 11));
+            for (int i = 0; i < lines.length; i++) {
+                g2d.drawString(lines[i], view.x + 6, view.y + 15 + i * 14);
             }
         }
     }
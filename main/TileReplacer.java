@@ -0,0 +1,140 @@
+package dev.main;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+// Rewrites every occurrence of one tile value with another across a set of layers.
+// Rows are scanned in parallel bands; each band keeps its own list of changed cells
+// so the editor can undo the whole operation as one step.
+public final class TileReplacer {
+    
+    public static class Result {
+        public final int[] counts;   // replaced tiles per layer
+        public final int[][] changed; // [layer] cell indices (row * width + col), null if not recorded
+        
+        Result(int layers, boolean recordChanges) {
+            counts = new int[layers];
+            changed = recordChanges ? new int[layers][] : null;
+        }
+        
+        public int total() {
+            int total = 0;
+            for (int count : counts) {
+                total += count;
+            }
+            return total;
+        }
+        
+        // Approximate heap held by the recorded cells
+        public long memoryBytes() {
+            long bytes = 16 + 4L * counts.length;
+            if (changed != null) {
+                for (int[] cells : changed) {
+                    if (cells != null) bytes += 16 + 4L * cells.length;
+                }
+            }
+            return bytes;
+        }
+    }
+    
+    private TileReplacer() {
+    }
+    
+    public static int allLayers(int layerCount) {
+        return layerCount >= 32 ? -1 : (1 << layerCount) - 1;
+    }
+    
+    // layerMask bit n selects layer n; region is in tiles (x = col, y = row)
+    public static Result replace(TileStorage[] layers, int from, int to,
+                                 int layerMask, Rectangle region, boolean recordChanges) {
+        Result result = new Result(layers.length, recordChanges);
+        if (recordChanges) {
+            Arrays.fill(result.changed, new int[0]);
+        }
+        if (from == to) {
+            return result;
+        }
+        for (int layer = 0; layer < layers.length; layer++) {
+            if ((layerMask & (1 << layer)) != 0 && !layers[layer].canStore(to)) {
+                throw new IllegalArgumentException("Layer " + layer + " cannot hold tile value " + to);
+            }
+        }
+        
+        for (int layer = 0; layer < layers.length; layer++) {
+            if ((layerMask & (1 << layer)) == 0) {
+                continue;
+            }
+            
+            TileStorage storage = layers[layer];
+            int width = storage.getWidth();
+            Rectangle area = region.intersection(new Rectangle(0, 0, width, storage.getHeight()));
+            if (area.isEmpty()) {
+                continue;
+            }
+            int bands = RowBands.bandCount(area.height);
+            int[] bandCounts = new int[bands];
+            int[][] bandChanges = recordChanges ? new int[bands][] : null;
+            
+            RowBands.forEach(area.height, (rowStart, rowEnd) -> {
+                int band = rowStart / RowBands.BAND_ROWS;
+                int count = 0;
+                int[] indices = recordChanges ? new int[16] : null;
+                int[] tiles = new int[area.width];
+                for (int r = rowStart; r < rowEnd; r++) {
+                    int row = area.y + r;
+                    storage.readSpan(row, area.x, tiles, area.width);
+                    int rowCount = 0;
+                    for (int i = 0; i < area.width; i++) {
+                        if (tiles[i] == from) {
+                            tiles[i] = to;
+                            if (recordChanges) {
+                                if (count == indices.length) {
+                                    indices = Arrays.copyOf(indices, count * 2);
+                                }
+                                indices[count] = row * width + area.x + i;
+                            }
+                            count++;
+                            rowCount++;
+                        }
+                    }
+                    if (rowCount > 0) {
+                        storage.writeSpan(row, area.x, tiles, area.width);
+                    }
+                }
+                bandCounts[band] = count;
+                if (recordChanges) {
+                    bandChanges[band] = indices;
+                }
+            });
+            
+            int total = 0;
+            for (int count : bandCounts) {
+                total += count;
+            }
+            result.counts[layer] = total;
+            
+            if (recordChanges) {
+                // Bands are in row order, so the merged list stays sorted
+                int[] merged = new int[total];
+                int pos = 0;
+                for (int band = 0; band < bands; band++) {
+                    System.arraycopy(bandChanges[band], 0, merged, pos, bandCounts[band]);
+                    pos += bandCounts[band];
+                }
+                result.changed[layer] = merged;
+            }
+        }
+        return result;
+    }
+    
+    // Puts the original value back on every cell recorded by replace()
+    public static void revert(TileStorage[] layers, Result result, int from) {
+        for (int layer = 0; layer < result.changed.length; layer++) {
+            TileStorage storage = layers[layer];
+            int width = storage.getWidth();
+            for (int index : result.changed[layer]) {
+                storage.set(index / width, index % width, from);
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package dev.main;
+
+// Backing store for one layer's tiles. Implementations must allow concurrent
+// writes to different rows, which the parallel row-band operations rely on.
+public interface TileStorage {
+    
+    enum Type {
+        DENSE("Dense"),
+        SPARSE("Sparse"),
+        BIT_PACKED("Bit-packed");
+        
+        private final String title;
+        
+        Type(String title) {
+            this.title = title;
+        }
+        
+        public TileStorage create(int width, int height) {
+            switch (this) {
+                case SPARSE: return new SparseTileStorage(width, height);
+                case BIT_PACKED: return new BitPackedTileStorage(width, height);
+                default: return new DenseTileStorage(width, height);
+            }
+        }
+        
+        @Override
+        public String toString() {
+            return title;
+        }
+    }
+    
+    Type getType();
+    
+    int getWidth();
+    
+    int getHeight();
+    
+    int get(int row, int col);
+    
+    void set(int row, int col, int value);
+    
+    // Copies a whole row into dst[0, width)
+    void readRow(int row, int[] dst);
+    
+    // Replaces a whole row from src[0, width)
+    void writeRow(int row, int[] src);
+    
+    // Copies columns [col, col + length) of a row into dst[0, length)
+    default void readSpan(int row, int col, int[] dst, int length) {
+        if (col == 0 && length == getWidth()) {
+            readRow(row, dst);
+            return;
+        }
+        int[] full = new int[getWidth()];
+        readRow(row, full);
+        System.arraycopy(full, col, dst, 0, length);
+    }
+    
+    // Writes src[0, length) to columns [col, col + length) of a row
+    default void writeSpan(int row, int col, int[] src, int length) {
+        if (col == 0 && length == getWidth()) {
+            writeRow(row, src);
+            return;
+        }
+        int[] full = new int[getWidth()];
+        readRow(row, full);
+        System.arraycopy(src, 0, full, col, length);
+        writeRow(row, full);
+    }
+    
+    boolean canStore(int value);
+    
+    // Old (r, c) moves to (r + offsetRow, c + offsetCol); tiles outside the new size are dropped
+    void resize(int newWidth, int newHeight, int offsetCol, int offsetRow);
+    
+    // Approximate heap used by the tiles
+    long memoryBytes();
+    
+    // Same tiles in another storage type, copied row by row
+    static TileStorage convert(TileStorage source, Type type) {
+        if (source.getType() == type) {
+            return source;
+        }
+        TileStorage target = type.create(source.getWidth(), source.getHeight());
+        int[] row = new int[source.getWidth()];
+        for (int r = 0; r < source.getHeight(); r++) {
+            source.readRow(r, row);
+            target.writeRow(r, row);
+        }
+        return target;
+    }
+}
@@ -0,0 +1,20 @@
+package dev.main;
+
+// One problem found by a validation rule, anchored at a tile
+public class ValidationIssue {
+    public final String rule;
+    public final String message;
+    public final int row, col;
+    
+    public ValidationIssue(String rule, String message, int row, int col) {
+        this.rule = rule;
+        this.message = message;
+        this.row = row;
+        this.col = col;
+    }
+    
+    @Override
+    public String toString() {
+        return "[" + rule + "] " + message + " at (" + col + ", " + row + ")";
+    }
+}
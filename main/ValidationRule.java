@@ -0,0 +1,28 @@
+package dev.main;
+
+import java.awt.Rectangle;
+import java.util.List;
+
+// A check run by Validator one chunk at a time, possibly on several chunks at once.
+// Local rules only look at their chunk and up to reach() tiles around it, so after
+// an edit they are re-run on the chunks near it; other rules are re-run everywhere.
+public interface ValidationRule {
+    String getName();
+    
+    // Adds the problems found inside chunk (x = col, y = row) to issues
+    void check(Validator.Context context, Rectangle chunk, List<ValidationIssue> issues);
+    
+    default boolean isLocal() {
+        return true;
+    }
+    
+    default int reach() {
+        return 1;
+    }
+    
+    // Rules that are not local: whether the result for a chunk checked on an earlier
+    // run can be different now. Chunks within reach of the edit are re-checked anyway.
+    default boolean isStale(Validator.Context context, Rectangle chunk) {
+        return true;
+    }
+}
@@ -0,0 +1,196 @@
+package dev.main;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// The built-in validation rules. Rules that can flag many tiles in one chunk
+// report the first one with a count, so a bad map does not bury the list.
+public final class ValidationRules {
+    public static final String SPAWN_TYPE = "spawn";
+    
+    private ValidationRules() {
+    }
+    
+    public static List<ValidationRule> defaults() {
+        List<ValidationRule> rules = new ArrayList<>();
+        rules.add(new EnclosedWalkable());
+        rules.add(new SpawnClear());
+        rules.add(new SolidBorder());
+        rules.add(new DecorationOnSolid());
+        return rules;
+    }
+    
+    // Rules from a comma-separated list of names, in the order given
+    public static List<ValidationRule> byName(String names) {
+        List<ValidationRule> rules = new ArrayList<>();
+        for (String name : names.split(",")) {
+            ValidationRule match = null;
+            for (ValidationRule rule : defaults()) {
+                if (rule.getName().equals(name.trim())) match = rule;
+            }
+            if (match == null) throw new IllegalArgumentException("Unknown rule: " + name.trim());
+            rules.add(match);
+        }
+        return rules;
+    }
+    
+    // Walkable tiles that cannot reach the largest walkable area; needs the whole map.
+    // A chunk's result only changes when one of the regions it reported changed, its
+    // tiles were split off into a new region, or another region became the largest.
+    static class EnclosedWalkable implements ValidationRule {
+        private final Map<Point, int[]> reportedByChunk = new ConcurrentHashMap<>();
+        
+        @Override
+        public String getName() {
+            return "enclosed-walkable";
+        }
+        
+        @Override
+        public boolean isLocal() {
+            return false;
+        }
+        
+        @Override
+        public int reach() {
+            return 0;
+        }
+        
+        @Override
+        public boolean isStale(Validator.Context context, Rectangle chunk) {
+            int[] reported = reportedByChunk.get(chunk.getLocation());
+            if (reported == null || context.mainRegionChanged()) return true;
+            Rectangle relabelled = context.relabelled();
+            if (relabelled != null && relabelled.intersects(chunk)) return true;
+            for (int region : reported) {
+                if (context.regionChanged(region)) return true;
+            }
+            return false;
+        }
+        
+        @Override
+        public void check(Validator.Context context, Rectangle chunk, List<ValidationIssue> issues) {
+            Connectivity connectivity = context.connectivity();
+            int main = context.mainRegion();
+            Set<Integer> reported = new LinkedHashSet<>();
+            for (int row = chunk.y; row < chunk.y + chunk.height; row++) {
+                for (int col = chunk.x; col < chunk.x + chunk.width; col++) {
+                    int region = connectivity.regionOf(row, col);
+                    if (region < 0 || region == main || !reported.add(region)) continue;
+                    issues.add(new ValidationIssue(getName(), "Enclosed walkable area of "
+                        + connectivity.regionSize(region) + " tiles", row, col));
+                }
+            }
+            reportedByChunk.put(chunk.getLocation(), reported.stream().mapToInt(Integer::intValue).toArray());
+        }
+    }
+    
+    // Objects of type "spawn" need their tile and the eight around it walkable
+    static class SpawnClear implements ValidationRule {
+        @Override
+        public String getName() {
+            return "spawn-clear";
+        }
+        
+        @Override
+        public void check(Validator.Context context, Rectangle chunk, List<ValidationIssue> issues) {
+            for (MapLayer layer : context.layers) {
+                layer.getEntities().forEachIn(chunk, entity -> {
+                    if (!SPAWN_TYPE.equals(entity.getType())) return;
+                    int row = (int) Math.floor(entity.getY());
+                    int col = (int) Math.floor(entity.getX());
+                    int blocked = 0;
+                    for (int r = row - 1; r <= row + 1; r++) {
+                        for (int c = col - 1; c <= col + 1; c++) {
+                            boolean outside = r < 0 || r >= context.height || c < 0 || c >= context.width;
+                            if (outside || context.isSolid(r, c)) blocked++;
+                        }
+                    }
+                    if (blocked > 0) {
+                        issues.add(new ValidationIssue(getName(), "Spawn on " + layer.getName()
+                            + " has " + blocked + " blocked tiles around it", row, col));
+                    }
+                });
+            }
+        }
+    }
+    
+    // The outermost ring of tiles must be solid on some layer
+    static class SolidBorder implements ValidationRule {
+        @Override
+        public String getName() {
+            return "solid-border";
+        }
+        
+        @Override
+        public int reach() {
+            return 0;
+        }
+        
+        @Override
+        public void check(Validator.Context context, Rectangle chunk, List<ValidationIssue> issues) {
+            boolean touchesEdge = chunk.x == 0 || chunk.y == 0
+                || chunk.x + chunk.width == context.width || chunk.y + chunk.height == context.height;
+            if (!touchesEdge) return;
+            int open = 0, firstRow = -1, firstCol = -1;
+            for (int row = chunk.y; row < chunk.y + chunk.height; row++) {
+                boolean edgeRow = row == 0 || row == context.height - 1;
+                for (int col = chunk.x; col < chunk.x + chunk.width; col++) {
+                    boolean edge = edgeRow || col == 0 || col == context.width - 1;
+                    if (!edge || context.isSolid(row, col)) continue;
+                    if (open++ == 0) {
+                        firstRow = row;
+                        firstCol = col;
+                    }
+                }
+            }
+            if (open > 0) {
+                issues.add(new ValidationIssue(getName(), open + " open border tiles", firstRow, firstCol));
+            }
+        }
+    }
+    
+    // Decoration tiles painted over solid ground
+    static class DecorationOnSolid implements ValidationRule {
+        @Override
+        public String getName() {
+            return "decoration-on-solid";
+        }
+        
+        @Override
+        public int reach() {
+            return 0;
+        }
+        
+        @Override
+        public void check(Validator.Context context, Rectangle chunk, List<ValidationIssue> issues) {
+            MapLayer decoration = context.layer("decoration");
+            if (decoration == null || context.layers.isEmpty() || decoration == context.layers.get(0)) return;
+            TileStorage ground = context.layers.get(0).getStorage();
+            TileStorage decorations = decoration.getStorage();
+            int[] groundRow = new int[chunk.width];
+            int[] decorationRow = new int[chunk.width];
+            int count = 0, firstRow = -1, firstCol = -1;
+            for (int row = chunk.y; row < chunk.y + chunk.height; row++) {
+                ground.readSpan(row, chunk.x, groundRow, chunk.width);
+                decorations.readSpan(row, chunk.x, decorationRow, chunk.width);
+                for (int i = 0; i < chunk.width; i++) {
+                    if (groundRow[i] != 1 || decorationRow[i] == 0) continue;
+                    if (count++ == 0) {
+                        firstRow = row;
+                        firstCol = chunk.x + i;
+                    }
+                }
+            }
+            if (count > 0) {
+                issues.add(new ValidationIssue(getName(), count + " decoration tiles on solid ground",
+                    firstRow, firstCol));
+            }
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package dev.main;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+// Runs validation rules over a map in CHUNK x CHUNK tile chunks, all (rule, chunk)
+// pairs in parallel. Results are kept per rule and chunk, so after an edit only
+// the chunks near the dirty region are checked again by local rules; other rules
+// are asked which of their chunks the edit can have changed. The combined solid
+// bitset and the walkable regions are kept between runs and only brought up to
+// date inside the dirty region. Runs must not overlap.
+public class Validator {
+    public static final int CHUNK = 32;
+    private static final int REBUILD_TILES = 4096; // larger dirty regions are relabelled from scratch
+    
+    // What rules may read; shared by the chunks of one run and never written
+    public static class Context {
+        public final int width, height;
+        public final List<MapLayer> layers;
+        private final Validator validator;
+        private final boolean incremental; // false on a full run: nothing is known from before
+        private int mainRegion = -2;       // -2 until asked for
+        
+        Context(MapData map, Validator validator, boolean incremental) {
+            width = map.width;
+            height = map.height;
+            layers = map.layers;
+            this.validator = validator;
+            this.incremental = incremental;
+        }
+        
+        // Solid (1) on any layer; false outside the map
+        public boolean isSolid(int row, int col) {
+            if (row < 0 || row >= height || col < 0 || col >= width) return false;
+            return (validator.solid[row * validator.words + (col >>> 6)] & (1L << (col & 63))) != 0;
+        }
+        
+        public MapLayer layer(String name) {
+            for (MapLayer layer : layers) {
+                if (layer.getName().equals(name)) return layer;
+            }
+            return null;
+        }
+        
+        // Walkable regions over all layers, labelled on first use and kept across runs
+        public Connectivity connectivity() {
+            synchronized (validator) {
+                if (validator.connectivity == null) {
+                    validator.connectivity = new Connectivity(width, height);
+                    validator.connectivity.rebuild(validator.solid);
+                }
+                return validator.connectivity;
+            }
+        }
+        
+        // The largest walkable region, or -1; worked out once per run
+        public synchronized int mainRegion() {
+            if (mainRegion == -2) mainRegion = connectivity().largestRegion();
+            return mainRegion;
+        }
+        
+        // True if the largest region is another one than on the previous run
+        public boolean mainRegionChanged() {
+            Connectivity connectivity = connectivity();
+            return !incremental || validator.checkedMain < 0 || connectivity.rebuiltSince(validator.checkedAt)
+                || connectivity.currentRegion(validator.checkedMain) != mainRegion();
+        }
+        
+        // True if a region seen on the previous run changed size, merged or split since
+        public boolean regionChanged(int region) {
+            return !incremental || connectivity().regionChangedSince(region, validator.checkedAt);
+        }
+        
+        // Bounds of the tiles that splits moved to new regions since the previous run, or null
+        public Rectangle relabelled() {
+            return validator.relabelled;
+        }
+    }
+    
+    private final List<ValidationRule> rules;
+    private int width = -1, height = -1;
+    private int chunksX, chunksY;
+    private List<List<ValidationIssue>> results; // [rule * chunks + chunk]
+    private long[] solid;              // solid on any layer, SolidGrid layout
+    private int words;
+    private Connectivity connectivity; // null until a rule asks for it
+    private long checkedAt = -1;       // connectivity.changeCount() at the end of the last run
+    private int checkedMain = -1;      // largest region at the end of the last run
+    private Rectangle relabelled;      // split tiles since the last run
+    
+    public Validator(List<ValidationRule> rules) {
+        this.rules = new ArrayList<>(rules);
+    }
+    
+    public List<ValidationRule> getRules() {
+        return Collections.unmodifiableList(rules);
+    }
+    
+    public List<ValidationIssue> validate(MapData map) {
+        width = map.width;
+        height = map.height;
+        chunksX = (width + CHUNK - 1) / CHUNK;
+        chunksY = (height + CHUNK - 1) / CHUNK;
+        int chunks = chunksX * chunksY;
+        results = new ArrayList<>(Collections.nCopies(rules.size() * chunks, Collections.emptyList()));
+        solid = map.combinedSolid();
+        words = SolidGrid.wordsPerRow(width);
+        connectivity = null;
+        relabelled = null;
+        
+        int[] all = IntStream.range(0, rules.size() * chunks).toArray();
+        finish(run(new Context(map, this, false), all));
+        return issues();
+    }
+    
+    // Re-checks after tiles or objects inside dirty changed; falls back to a full
+    // run when the map size changed
+    public List<ValidationIssue> revalidate(MapData map, Rectangle dirty) {
+        if (results == null || map.width != width || map.height != height) {
+            return validate(map);
+        }
+        update(map, dirty.intersection(new Rectangle(0, 0, width, height)));
+        Context context = new Context(map, this, true);
+        int chunks = chunksX * chunksY;
+        List<Integer> tasks = new ArrayList<>();
+        for (int rule = 0; rule < rules.size(); rule++) {
+            ValidationRule validationRule = rules.get(rule);
+            int reach = validationRule.reach();
+            int firstCol = Math.max(0, (dirty.x - reach) / CHUNK);
+            int lastCol = Math.min(chunksX - 1, Math.max(0, dirty.x + dirty.width - 1 + reach) / CHUNK);
+            int firstRow = Math.max(0, (dirty.y - reach) / CHUNK);
+            int lastRow = Math.min(chunksY - 1, Math.max(0, dirty.y + dirty.height - 1 + reach) / CHUNK);
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                int cx = chunk % chunksX, cy = chunk / chunksX;
+                boolean near = cx >= firstCol && cx <= lastCol && cy >= firstRow && cy <= lastRow;
+                if (near || !validationRule.isLocal() && validationRule.isStale(context, chunkArea(chunk))) {
+                    tasks.add(rule * chunks + chunk);
+                }
+            }
+        }
+        finish(run(context, tasks.stream().mapToInt(Integer::intValue).toArray()));
+        return issues();
+    }
+    
+    // Brings the solid bitset and the regions up to date inside area
+    private void update(MapData map, Rectangle area) {
+        if (area.isEmpty()) return;
+        if ((long) area.width * area.height > REBUILD_TILES) {
+            solid = map.combinedSolid();
+            if (connectivity != null) connectivity.rebuild(solid);
+        } else {
+            int[] values = new int[area.width];
+            for (int row = area.y; row < area.y + area.height; row++) {
+                for (int col = area.x; col < area.x + area.width; col++) {
+                    solid[row * words + (col >>> 6)] &= ~(1L << (col & 63));
+                }
+                for (MapLayer layer : map.layers) {
+                    layer.getStorage().readSpan(row, area.x, values, area.width);
+                    for (int i = 0; i < area.width; i++) {
+                        int col = area.x + i;
+                        if (values[i] == 1) solid[row * words + (col >>> 6)] |= 1L << (col & 63);
+                    }
+                }
+                if (connectivity != null) {
+                    for (int col = area.x; col < area.x + area.width; col++) {
+                        connectivity.setSolid(row, col, (solid[row * words + (col >>> 6)] & (1L << (col & 63))) != 0);
+                    }
+                }
+            }
+        }
+        relabelled = connectivity == null ? null : connectivity.takeRelabelled();
+    }
+    
+    // Remembers where the regions stood, for the next run to compare against
+    private void finish(Context context) {
+        checkedAt = connectivity == null ? -1 : connectivity.changeCount();
+        checkedMain = connectivity == null ? -1 : context.mainRegion();
+        relabelled = null;
+    }
+    
+    private Rectangle chunkArea(int chunk) {
+        int cx = chunk % chunksX;
+        int cy = chunk / chunksX;
+        return new Rectangle(cx * CHUNK, cy * CHUNK, Math.min(CHUNK, width - cx * CHUNK), Math.min(CHUNK, height - cy * CHUNK));
+    }
+    
+    private Context run(Context context, int[] tasks) {
+        int chunks = chunksX * chunksY;
+        IntStream.of(tasks).parallel().forEach(task -> {
+            List<ValidationIssue> found = new ArrayList<>();
+            rules.get(task / chunks).check(context, chunkArea(task % chunks), found);
+            results.set(task, found.isEmpty() ? Collections.emptyList() : found);
+        });
+        return context;
+    }
+    
+    // Everything found so far, by rule and then chunk
+    public List<ValidationIssue> issues() {
+        List<ValidationIssue> issues = new ArrayList<>();
+        if (results != null) {
+            for (List<ValidationIssue> found : results) {
+                issues.addAll(found);
+            }
+        }
+        return issues;
+    }
+}
@@ -0,0 +1,181 @@
+package dev.main;
+
+import java.util.BitSet;
+import java.util.stream.IntStream;
+
+// Field of view by recursive shadowcasting (eight octants, Euclidean radius) over
+// a blocked-tile bitset in SolidGrid layout, and potentially-visible sets per
+// chunk built from it. Solid tiles block sight but are themselves visible; the
+// area outside the map blocks sight.
+public final class Visibility {
+    
+    public interface TileVisitor {
+        void visit(int row, int col);
+    }
+    
+    // Chunks visible from anywhere inside each chunk. Every chunk stores a window of
+    // (2 * reach + 1)^2 bits centred on itself, row-major, so the data stays small
+    // however large the map is; reach follows from the view radius.
+    public static class Pvs {
+        public final int chunkSize, radius, reach;
+        public final int chunksX, chunksY;
+        public final long[][] bits; // [chunkRow * chunksX + chunkCol] window bits
+        
+        Pvs(int chunkSize, int radius, int chunksX, int chunksY) {
+            this.chunkSize = chunkSize;
+            this.radius = radius;
+            this.reach = (radius + chunkSize - 1) / chunkSize;
+            this.chunksX = chunksX;
+            this.chunksY = chunksY;
+            int side = 2 * reach + 1;
+            this.bits = new long[chunksX * chunksY][(side * side + 63) >>> 6];
+        }
+        
+        public int windowSide() {
+            return 2 * reach + 1;
+        }
+        
+        public boolean canSee(int chunkRow, int chunkCol, int otherRow, int otherCol) {
+            int dr = otherRow - chunkRow + reach;
+            int dc = otherCol - chunkCol + reach;
+            int side = windowSide();
+            if (dr < 0 || dr >= side || dc < 0 || dc >= side) return false;
+            int bit = dr * side + dc;
+            return (bits[chunkRow * chunksX + chunkCol][bit >>> 6] & (1L << (bit & 63))) != 0;
+        }
+    }
+    
+    // Octant transforms: col = origin + dx * xx + dy * xy, row = origin + dx * yx + dy * yy
+    private static final int[] XX = {1, 0, 0, -1, -1, 0, 0, 1};
+    private static final int[] XY = {0, 1, -1, 0, 0, -1, 1, 0};
+    private static final int[] YX = {0, 1, 1, 0, 0, -1, -1, 0};
+    private static final int[] YY = {1, 0, 0, 1, -1, 0, 0, -1};
+    
+    private Visibility() {
+    }
+    
+    // Calls visitor once or more for every tile visible from (row, col) within radius
+    public static void fov(long[] blocked, int width, int height, int row, int col,
+                           int radius, TileVisitor visitor) {
+        Grid grid = new Grid(blocked, width, height);
+        visitor.visit(row, col);
+        for (int octant = 0; octant < 8; octant++) {
+            castLight(grid, row, col, radius, 1, 1.0, 0.0,
+                XX[octant], XY[octant], YX[octant], YY[octant], visitor);
+        }
+    }
+    
+    // Visible tiles from (row, col) as a bitset in SolidGrid layout
+    public static long[] fov(long[] blocked, int width, int height, int row, int col, int radius) {
+        int words = SolidGrid.wordsPerRow(width);
+        long[] visible = new long[words * height];
+        fov(blocked, width, height, row, col, radius,
+            (r, c) -> visible[r * words + (c >>> 6)] |= 1L << (c & 63));
+        return visible;
+    }
+    
+    private static class Grid {
+        final long[] blocked;
+        final int width, height, words;
+        
+        Grid(long[] blocked, int width, int height) {
+            this.blocked = blocked;
+            this.width = width;
+            this.height = height;
+            this.words = SolidGrid.wordsPerRow(width);
+        }
+        
+        boolean inside(int row, int col) {
+            return row >= 0 && row < height && col >= 0 && col < width;
+        }
+        
+        boolean blocks(int row, int col) {
+            return !inside(row, col) || (blocked[row * words + (col >>> 6)] & (1L << (col & 63))) != 0;
+        }
+    }
+    
+    // Scans one octant row by row between two slopes; a run of blockers splits the
+    // light into a recursive scan of the part before it
+    private static void castLight(Grid grid, int originRow, int originCol, int radius, int startDepth,
+                                  double start, double end, int xx, int xy, int yx, int yy,
+                                  TileVisitor visitor) {
+        if (start < end) return;
+        int radiusSquared = radius * radius;
+        double newStart = 0.0;
+        for (int depth = startDepth; depth <= radius; depth++) {
+            int dy = -depth;
+            boolean blocked = false;
+            for (int dx = -depth; dx <= 0; dx++) {
+                int col = originCol + dx * xx + dy * xy;
+                int row = originRow + dx * yx + dy * yy;
+                double leftSlope = (dx - 0.5) / (dy + 0.5);
+                double rightSlope = (dx + 0.5) / (dy - 0.5);
+                if (start < rightSlope) continue;
+                if (end > leftSlope) break;
+                
+                if (dx * dx + dy * dy <= radiusSquared && grid.inside(row, col)) {
+                    visitor.visit(row, col);
+                }
+                boolean solid = grid.blocks(row, col);
+                if (blocked) {
+                    if (solid) {
+                        newStart = rightSlope;
+                    } else {
+                        blocked = false;
+                        start = newStart;
+                    }
+                } else if (solid && depth < radius) {
+                    blocked = true;
+                    castLight(grid, originRow, originCol, radius, depth + 1, start, leftSlope,
+                        xx, xy, yx, yy, visitor);
+                    newStart = rightSlope;
+                }
+            }
+            if (blocked) break;
+        }
+    }
+    
+    // For every chunk, the union of what its walkable tiles can see, in parallel over chunks
+    public static Pvs computePvs(long[] blocked, int width, int height, int chunkSize, int radius) {
+        int chunksX = (width + chunkSize - 1) / chunkSize;
+        int chunksY = (height + chunkSize - 1) / chunkSize;
+        Pvs pvs = new Pvs(chunkSize, radius, chunksX, chunksY);
+        Grid grid = new Grid(blocked, width, height);
+        IntStream.range(0, chunksX * chunksY).parallel().forEach(chunk -> castChunk(pvs, grid, chunk));
+        return pvs;
+    }
+    
+    // Recasts the chunks set in chunks and shares the other windows with previous,
+    // which must have been computed for the same map size, chunk size and radius
+    public static Pvs updatePvs(Pvs previous, long[] blocked, int width, int height, BitSet chunks) {
+        Pvs pvs = new Pvs(previous.chunkSize, previous.radius, previous.chunksX, previous.chunksY);
+        Grid grid = new Grid(blocked, width, height);
+        for (int chunk = 0; chunk < pvs.bits.length; chunk++) {
+            if (!chunks.get(chunk)) pvs.bits[chunk] = previous.bits[chunk];
+        }
+        chunks.stream().filter(chunk -> chunk < pvs.bits.length).parallel()
+            .forEach(chunk -> castChunk(pvs, grid, chunk));
+        return pvs;
+    }
+    
+    private static void castChunk(Pvs pvs, Grid grid, int chunk) {
+        int chunkSize = pvs.chunkSize;
+        int chunkRow = chunk / pvs.chunksX;
+        int chunkCol = chunk % pvs.chunksX;
+        int side = pvs.windowSide();
+        long[] window = pvs.bits[chunk];
+        TileVisitor mark = (r, c) -> {
+            int bit = (r / chunkSize - chunkRow + pvs.reach) * side + (c / chunkSize - chunkCol + pvs.reach);
+            window[bit >>> 6] |= 1L << (bit & 63);
+        };
+        int rowEnd = Math.min(grid.height, (chunkRow + 1) * chunkSize);
+        int colEnd = Math.min(grid.width, (chunkCol + 1) * chunkSize);
+        for (int r = chunkRow * chunkSize; r < rowEnd; r++) {
+            for (int c = chunkCol * chunkSize; c < colEnd; c++) {
+                if (!grid.blocks(r, c)) {
+                    fov(grid.blocked, grid.width, grid.height, r, c, pvs.radius, mark);
+                }
+            }
+        }
+    }
+}